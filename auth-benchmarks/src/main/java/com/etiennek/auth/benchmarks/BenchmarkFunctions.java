@@ -0,0 +1,103 @@
+package com.etiennek.auth.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import com.etiennek.auth.core.model.AccessToken;
+import com.etiennek.auth.core.model.AuthCode;
+import com.etiennek.auth.core.model.Client;
+import com.etiennek.auth.core.model.RefreshToken;
+import com.etiennek.auth.core.model.RequiredFunctions;
+import com.etiennek.auth.core.model.User;
+
+// In-memory stand-ins that complete immediately so that only the engine itself is measured
+public class BenchmarkFunctions implements RequiredFunctions, RequiredFunctions.PasswordGrantType,
+    RequiredFunctions.ClientCredentialsGrantType, RequiredFunctions.AuthCodeGrantType,
+    RequiredFunctions.RefreshTokenGrantType {
+
+  public static final String CLIENT_ID = "benchmark-client";
+  public static final String CLIENT_SECRET = "benchmark-secret";
+  public static final String USERNAME = "benchmark-user";
+  public static final String PASSWORD = "benchmark-password";
+  public static final String AUTH_CODE = "benchmark-auth-code";
+  public static final String REFRESH_TOKEN = "benchmark-refresh-token";
+  public static final String ACCESS_TOKEN = "benchmark-access-token";
+  public static final String USER_ID = "1";
+
+  private final CompletableFuture<Void> done = CompletableFuture.completedFuture(null);
+  private final CompletableFuture<GetClientRes> client =
+      CompletableFuture.completedFuture(new GetClientRes(Optional.of(new Client(CLIENT_ID, CLIENT_SECRET))));
+  private final CompletableFuture<GetClientRes> noClient =
+      CompletableFuture.completedFuture(new GetClientRes(Optional.empty()));
+  private final CompletableFuture<IsGrantTypeAllowedRes> allowed =
+      CompletableFuture.completedFuture(new IsGrantTypeAllowedRes(true));
+  private final CompletableFuture<GetUserRes> user =
+      CompletableFuture.completedFuture(new GetUserRes(Optional.of(new User(USER_ID, USERNAME, PASSWORD))));
+  private final CompletableFuture<GetUserRes> noUser = CompletableFuture.completedFuture(new GetUserRes(Optional.empty()));
+  private final CompletableFuture<GetUserFromClientRes> clientUser =
+      CompletableFuture.completedFuture(new GetUserFromClientRes(Optional.of(new User(USER_ID, USERNAME, PASSWORD))));
+  private final CompletableFuture<GetAuthCodeRes> authCode =
+      CompletableFuture.completedFuture(new GetAuthCodeRes(Optional.of(new AuthCode(CLIENT_ID, USER_ID,
+          LocalDateTime.MAX))));
+  private final CompletableFuture<GetRefreshTokenRes> refreshToken =
+      CompletableFuture.completedFuture(new GetRefreshTokenRes(Optional.of(new RefreshToken(CLIENT_ID, USER_ID))));
+  private final CompletableFuture<GetAccessTokenRes> accessToken =
+      CompletableFuture.completedFuture(new GetAccessTokenRes(Optional.of(new AccessToken(ACCESS_TOKEN, CLIENT_ID,
+          USER_ID, LocalDateTime.MAX))));
+  private final CompletableFuture<GetAccessTokenRes> noAccessToken =
+      CompletableFuture.completedFuture(new GetAccessTokenRes(Optional.empty()));
+
+  @Override
+  public CompletableFuture<GetAccessTokenRes> getAccessToken(String bearerToken) {
+    return ACCESS_TOKEN.equals(bearerToken) ? accessToken : noAccessToken;
+  }
+
+  @Override
+  public CompletableFuture<GetClientRes> getClient(String clientId, String clientSecret) {
+    return CLIENT_ID.equals(clientId) && CLIENT_SECRET.equals(clientSecret) ? client : noClient;
+  }
+
+  @Override
+  public CompletableFuture<IsGrantTypeAllowedRes> isGrantTypeAllowed(String clientId, String grantType) {
+    return allowed;
+  }
+
+  @Override
+  public CompletableFuture<Void> saveAccessToken(String accessToken, String clientId, String userId,
+      Optional<LocalDateTime> expires) {
+    return done;
+  }
+
+  @Override
+  public CompletableFuture<GetUserRes> getUser(String username, String password) {
+    return USERNAME.equals(username) && PASSWORD.equals(password) ? user : noUser;
+  }
+
+  @Override
+  public CompletableFuture<GetUserFromClientRes> getUserFromClient(String clientId, String clientSecret) {
+    return clientUser;
+  }
+
+  @Override
+  public CompletableFuture<GetAuthCodeRes> getAuthCode(String code) {
+    return authCode;
+  }
+
+  @Override
+  public CompletableFuture<GetRefreshTokenRes> getRefreshToken(String token) {
+    return refreshToken;
+  }
+
+  @Override
+  public CompletableFuture<Void> revokeRefreshToken(String token) {
+    return done;
+  }
+
+  @Override
+  public CompletableFuture<Void> saveRefreshToken(String token, String clientId, String userId,
+      Optional<LocalDateTime> expires) {
+    return done;
+  }
+
+}
@@ -0,0 +1,22 @@
+package com.etiennek.auth.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the JMH suite with the GC profiler attached so that allocation rates are always reported.
+// Any standard JMH command line option (benchmark regex, -f, -wi, -t, ...) may be passed through.
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+    Options options = new OptionsBuilder().parent(new CommandLineOptions(args))
+                                          .addProfiler(GCProfiler.class)
+                                          .build();
+    new Runner(options).run();
+  }
+
+}
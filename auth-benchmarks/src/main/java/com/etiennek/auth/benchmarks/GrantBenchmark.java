@@ -0,0 +1,164 @@
+package com.etiennek.auth.benchmarks;
+
+import static com.etiennek.auth.benchmarks.BenchmarkFunctions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.etiennek.auth.core.FormBody;
+import com.etiennek.auth.core.FormRequest;
+import com.etiennek.auth.core.OAuth2Server;
+import com.etiennek.auth.core.OAuth2ServerConfiguration;
+import com.etiennek.auth.core.Response;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GrantBenchmark {
+
+  private OAuth2Server server;
+  private ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+
+  private FormRequest password;
+  private Map<String, String[]> passwordRawHeader;
+  private byte[] passwordRawBody;
+  private FormRequest clientCredentials;
+  private FormRequest authCode;
+  private FormRequest refreshToken;
+
+  private FormRequest invalidMethod;
+  private FormRequest invalidGrantType;
+  private FormRequest missingClientCredentials;
+  private FormRequest invalidClient;
+  private FormRequest invalidUser;
+
+  @Setup
+  public void setup() {
+    BenchmarkFunctions funcs = new BenchmarkFunctions();
+    server = new OAuth2Server(new OAuth2ServerConfiguration.Builder(funcs).withPasswordGrantTypeSupport(funcs)
+                                                                          .withClientCredentialsGrantTypeSupport(funcs)
+                                                                          .withAuthCodeGrantTypeSupport(funcs)
+                                                                          .withRefreshTokenGrantTypeSupport(funcs)
+                                                                          .build());
+
+    password = Requests.form(CLIENT_ID, CLIENT_SECRET, "grant_type", "password", "username", USERNAME, "password",
+        PASSWORD);
+    passwordRawHeader = Requests.header("application/x-www-form-urlencoded", CLIENT_ID, CLIENT_SECRET);
+    passwordRawBody = ("grant_type=password&username=" + USERNAME + "&password=" + PASSWORD).getBytes(
+        StandardCharsets.US_ASCII);
+    clientCredentials = Requests.form(CLIENT_ID, CLIENT_SECRET, "grant_type", "client_credentials");
+    authCode = Requests.form(CLIENT_ID, CLIENT_SECRET, "grant_type", "authorization_code", "code", AUTH_CODE);
+    refreshToken = Requests.form(CLIENT_ID, CLIENT_SECRET, "grant_type", "refresh_token", "refresh_token",
+        REFRESH_TOKEN);
+
+    invalidMethod = Requests.request("GET", "application/x-www-form-urlencoded", CLIENT_ID, CLIENT_SECRET,
+        "grant_type", "password");
+    invalidGrantType = Requests.form(CLIENT_ID, CLIENT_SECRET, "grant_type", "implicit");
+    missingClientCredentials = Requests.form(null, null, "grant_type", "client_credentials");
+    invalidClient = Requests.form(CLIENT_ID, "wrong-secret", "grant_type", "client_credentials");
+    invalidUser = Requests.form(CLIENT_ID, CLIENT_SECRET, "grant_type", "password", "username", USERNAME, "password",
+        "wrong-password");
+  }
+
+  @Benchmark
+  public Response passwordGrant() {
+    return server.grant(password)
+                 .join();
+  }
+
+  // From the raw body bytes the way the servlets now hand them over, including parsing them
+  @Benchmark
+  public Response passwordGrantRawBody() {
+    return server.grant(new FormRequest("POST", passwordRawHeader, FormBody.parse(passwordRawBody, 0,
+        passwordRawBody.length)))
+                 .join();
+  }
+
+  // Baseline for passwordGrantRawBody: a parameter map built per request the way a servlet container does
+  @Benchmark
+  public Response passwordGrantParameterMap() {
+    Map<String, String[]> body = new LinkedHashMap<>();
+    body.put("grant_type", new String[] {new String("password")});
+    body.put("username", new String[] {new String(USERNAME)});
+    body.put("password", new String[] {new String(PASSWORD)});
+    return server.grant(new FormRequest("POST", passwordRawHeader, body))
+                 .join();
+  }
+
+  // Including encoding the body the way the servlet does, into a reused buffer
+  @Benchmark
+  public int passwordGrantWriteBody() throws IOException {
+    body.reset();
+    server.grant(password)
+          .join()
+          .writeBody(body);
+    return body.size();
+  }
+
+  @Benchmark
+  public Response clientCredentialsGrant() {
+    return server.grant(clientCredentials)
+                 .join();
+  }
+
+  @Benchmark
+  public Response authCodeGrant() {
+    return server.grant(authCode)
+                 .join();
+  }
+
+  @Benchmark
+  public Response refreshTokenGrant() {
+    return server.grant(refreshToken)
+                 .join();
+  }
+
+  @Benchmark
+  public Response errorInvalidMethod() {
+    return server.grant(invalidMethod)
+                 .join();
+  }
+
+  @Benchmark
+  public Response errorInvalidGrantType() {
+    return server.grant(invalidGrantType)
+                 .join();
+  }
+
+  @Benchmark
+  public Response errorMissingClientCredentials() {
+    return server.grant(missingClientCredentials)
+                 .join();
+  }
+
+  @Benchmark
+  public Response errorInvalidClient() {
+    return server.grant(invalidClient)
+                 .join();
+  }
+
+  @Benchmark
+  public Response errorInvalidUser() {
+    return server.grant(invalidUser)
+                 .join();
+  }
+
+}
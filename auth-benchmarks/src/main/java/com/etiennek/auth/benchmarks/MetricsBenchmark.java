@@ -0,0 +1,78 @@
+package com.etiennek.auth.benchmarks;
+
+import static com.etiennek.auth.benchmarks.BenchmarkFunctions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.etiennek.auth.core.FormRequest;
+import com.etiennek.auth.core.OAuth2Server;
+import com.etiennek.auth.core.OAuth2ServerConfiguration;
+import com.etiennek.auth.core.Response;
+import com.etiennek.auth.core.metrics.DefaultMetrics;
+
+// Overhead of recording metrics on the token and verify endpoints, run with -t to see it under contention
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+  @Param({"disabled", "enabled"})
+  String metrics;
+
+  private OAuth2Server server;
+  private FormRequest password;
+  private FormRequest invalidUser;
+  private FormRequest verify;
+
+  @Setup
+  public void setup() {
+    BenchmarkFunctions funcs = new BenchmarkFunctions();
+    OAuth2ServerConfiguration.Builder builder =
+        new OAuth2ServerConfiguration.Builder(funcs).withPasswordGrantTypeSupport(funcs)
+                                                    .withRefreshTokenGrantTypeSupport(funcs);
+    if (metrics.equals("enabled")) {
+      builder.withMetrics(new DefaultMetrics());
+    }
+    server = new OAuth2Server(builder.build());
+
+    password = Requests.form(CLIENT_ID, CLIENT_SECRET, "grant_type", "password", "username", USERNAME, "password",
+        PASSWORD);
+    invalidUser = Requests.form(CLIENT_ID, CLIENT_SECRET, "grant_type", "password", "username", USERNAME, "password",
+        "wrong-password");
+    verify = Requests.bearer(ACCESS_TOKEN);
+  }
+
+  @Benchmark
+  public Response passwordGrant() {
+    return server.grant(password)
+                 .join();
+  }
+
+  @Benchmark
+  public Response passwordGrantInvalidUser() {
+    return server.grant(invalidUser)
+                 .join();
+  }
+
+  @Benchmark
+  public Response verify() {
+    return server.verify(verify)
+                 .join();
+  }
+
+}
@@ -0,0 +1,49 @@
+package com.etiennek.auth.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.etiennek.auth.core.FormRequest;
+
+public class Requests {
+
+  public static FormRequest form(String clientId, String clientSecret, String... keyValues) {
+    return request("POST", "application/x-www-form-urlencoded", clientId, clientSecret, keyValues);
+  }
+
+  public static FormRequest bearer(String token) {
+    Map<String, String[]> header = new LinkedHashMap<>();
+    header.put("authorization", new String[] {"Bearer " + token});
+    header.put("host", new String[] {"localhost:8080"});
+    header.put("user-agent", new String[] {"auth-benchmarks"});
+    header.put("accept", new String[] {"*/*"});
+    return new FormRequest("GET", header, new LinkedHashMap<>());
+  }
+
+  public static FormRequest request(String method, String contentType, String clientId, String clientSecret,
+      String... keyValues) {
+    Map<String, String[]> body = new LinkedHashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      body.put(keyValues[i], new String[] {keyValues[i + 1]});
+    }
+    return new FormRequest(method, header(contentType, clientId, clientSecret), body);
+  }
+
+  public static Map<String, String[]> header(String contentType, String clientId, String clientSecret) {
+    Map<String, String[]> header = new LinkedHashMap<>();
+    header.put("content-type", new String[] {contentType});
+    if (clientId != null) {
+      header.put("authorization",
+          new String[] {"Basic " + Base64.getEncoder()
+                                         .encodeToString((clientId + ":" + clientSecret).getBytes(
+                                             StandardCharsets.UTF_8))});
+    }
+    header.put("host", new String[] {"localhost:8080"});
+    header.put("user-agent", new String[] {"auth-benchmarks"});
+    header.put("accept", new String[] {"*/*"});
+    return header;
+  }
+
+}
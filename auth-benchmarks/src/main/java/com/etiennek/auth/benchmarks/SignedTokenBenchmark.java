@@ -0,0 +1,85 @@
+package com.etiennek.auth.benchmarks;
+
+import static com.etiennek.auth.benchmarks.BenchmarkFunctions.*;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.etiennek.auth.core.FormRequest;
+import com.etiennek.auth.core.OAuth2Server;
+import com.etiennek.auth.core.OAuth2ServerConfiguration;
+import com.etiennek.auth.core.Response;
+import com.etiennek.auth.core.SignedTokenCodec;
+import com.etiennek.auth.core.TokenGenerator;
+
+// Cost of issuing and verifying signed access tokens against opaque ones. The opaque lookup is served from memory,
+// so it is a lower bound: a real store adds its round trip to every verification.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignedTokenBenchmark {
+
+  @Param({"opaque", SignedTokenCodec.HS256, SignedTokenCodec.ES256})
+  String tokenType;
+
+  private SignedTokenCodec codec;
+  private OAuth2Server server;
+  private FormRequest valid;
+
+  @Setup
+  public void setup() throws Exception {
+    OAuth2ServerConfiguration.Builder builder = new OAuth2ServerConfiguration.Builder(new BenchmarkFunctions());
+    String token = ACCESS_TOKEN;
+    if (!tokenType.equals("opaque")) {
+      SignedTokenCodec.Key key;
+      if (tokenType.equals(SignedTokenCodec.HS256)) {
+        key = SignedTokenCodec.hmac(new byte[32]);
+      } else {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+        key = SignedTokenCodec.ecdsa(keyPair.getPublic(), keyPair.getPrivate());
+      }
+      codec = new SignedTokenCodec("benchmark", Collections.singletonMap("benchmark", key));
+      builder.withSignedAccessTokens(codec);
+      token = codec.sign(CLIENT_ID, USER_ID, Optional.empty());
+    }
+    server = new OAuth2Server(builder.build());
+    valid = Requests.bearer(token);
+  }
+
+  @Benchmark
+  public String issue() {
+    if (codec == null) {
+      return TokenGenerator.getDefault()
+                           .generate();
+    }
+    return codec.sign(CLIENT_ID, USER_ID, Optional.empty());
+  }
+
+  @Benchmark
+  public Response verify() {
+    return server.verify(valid)
+                 .join();
+  }
+
+}
@@ -0,0 +1,56 @@
+package com.etiennek.auth.benchmarks;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.etiennek.auth.core.TokenGenerator;
+
+// Tokens/sec. Run with "-t <n>" (e.g. -t 1 and -t <cores>) to see per core scaling.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenGeneratorBenchmark {
+
+  @Param({"32"})
+  int byteLength;
+
+  private TokenGenerator generator;
+
+  @Setup
+  public void setup() {
+    generator = new TokenGenerator(byteLength);
+  }
+
+  @Benchmark
+  public String tokenGenerator() {
+    return generator.generate();
+  }
+
+  // The per call SHA1PRNG lookup that generateToken used to do, kept as a baseline
+  @Benchmark
+  public String perCallSha1Prng() throws NoSuchAlgorithmException {
+    byte[] randomBytes = new byte[byteLength];
+    SecureRandom.getInstance("SHA1PRNG")
+                .nextBytes(randomBytes);
+    return Base64.getEncoder()
+                 .encodeToString(randomBytes);
+  }
+
+}
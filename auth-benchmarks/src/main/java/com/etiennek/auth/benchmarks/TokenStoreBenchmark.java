@@ -0,0 +1,101 @@
+package com.etiennek.auth.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.etiennek.auth.core.model.func.RevokeRefreshToken;
+import com.etiennek.auth.core.model.func.SaveTokens;
+import com.etiennek.auth.core.model.func.SaveTokens.SaveTokensReq;
+import com.etiennek.auth.core.store.InMemoryStore;
+import com.etiennek.auth.core.store.LogTokenStore;
+
+// Grants/sec written to a token store, each an access and a refresh token, and for refresh grants the revocation of
+// the old refresh token. Every write waits until the store has it, which for the log means fsynced. Run with
+// "-t <n>" to see the log's group commit spread an fsync over concurrent grants. Tokens expire after a second, so
+// the stores hold a steady working set instead of filling up over the run.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenStoreBenchmark {
+
+  @Param({"memory", "log"})
+  String store;
+
+  private final AtomicLong sequence = new AtomicLong();
+  private SaveTokens saveTokens;
+  private RevokeRefreshToken revokeRefreshToken;
+  private LogTokenStore log;
+  private Path directory;
+
+  @Setup
+  public void setup() throws IOException {
+    if (store.equals("log")) {
+      directory = Files.createTempDirectory("token-log");
+      log = new LogTokenStore.Builder(directory).open();
+      saveTokens = log;
+      revokeRefreshToken = log;
+    } else {
+      InMemoryStore memory = new InMemoryStore();
+      saveTokens = memory;
+      revokeRefreshToken = memory;
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (log != null) {
+      log.close();
+      try (Stream<Path> files = Files.list(directory)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          Files.delete(file);
+        }
+      }
+      Files.delete(directory);
+    }
+  }
+
+  @Benchmark
+  public Void grant() {
+    return save(sequence.incrementAndGet()).join();
+  }
+
+  @Benchmark
+  public Void refreshGrant() {
+    long n = sequence.incrementAndGet();
+    CompletableFuture<Void> revoke = revokeRefreshToken.revokeRefreshToken("refresh-" + (n - 1));
+    save(n).join();
+    return revoke.join();
+  }
+
+  private CompletableFuture<Void> save(long n) {
+    LocalDateTime now = LocalDateTime.now();
+    SaveTokensReq tokens = new SaveTokensReq(Optional.of("access-" + n), Optional.of(now.plusSeconds(1)), Optional.of(
+        "refresh-" + n), Optional.of(now.plusSeconds(1)), "client", "user");
+    return saveTokens.saveTokens(Collections.singletonList(tokens));
+  }
+
+}
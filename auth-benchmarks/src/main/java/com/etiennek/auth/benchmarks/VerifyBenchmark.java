@@ -0,0 +1,56 @@
+package com.etiennek.auth.benchmarks;
+
+import static com.etiennek.auth.benchmarks.BenchmarkFunctions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.etiennek.auth.core.FormRequest;
+import com.etiennek.auth.core.OAuth2Server;
+import com.etiennek.auth.core.OAuth2ServerConfiguration;
+import com.etiennek.auth.core.Response;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VerifyBenchmark {
+
+  private OAuth2Server server;
+
+  private FormRequest valid;
+  private FormRequest unknown;
+
+  @Setup
+  public void setup() {
+    server = new OAuth2Server(new OAuth2ServerConfiguration.Builder(new BenchmarkFunctions()).build());
+
+    valid = Requests.bearer(ACCESS_TOKEN);
+    unknown = Requests.bearer("unknown-access-token");
+  }
+
+  @Benchmark
+  public Response verify() {
+    return server.verify(valid)
+                 .join();
+  }
+
+  @Benchmark
+  public Response errorUnknownToken() {
+    return server.verify(unknown)
+                 .join();
+  }
+
+}
@@ -0,0 +1,162 @@
+package com.etiennek.auth.core;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.lang.reflect.Method;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import com.etiennek.auth.core.model.BlockingFunctions;
+import com.etiennek.auth.core.model.RequiredFunctions;
+import com.etiennek.auth.core.model.TokenType;
+
+// Runs BlockingFunctions on an executor and hands their results back as futures, so the grant and verify pipelines
+// treat them like any other pending function. A call made while already running on one of the dispatcher's tasks,
+// which is where a pipeline resumes after its first blocking call, runs inline instead of hopping to a new task.
+// A grant therefore occupies a single task from its first blocking call to its response.
+class BlockingDispatcher {
+  private static final ThreadLocal<BlockingDispatcher> CURRENT = new ThreadLocal<>();
+
+  private volatile Executor executor;
+
+  void setExecutor(Executor executor) {
+    this.executor = checkNotNull(executor);
+  }
+
+  boolean hasExecutor() {
+    return executor != null;
+  }
+
+  Executor getExecutor() {
+    return executor;
+  }
+
+  // Whether the calling thread is running one of a dispatcher's tasks
+  static boolean onTask() {
+    return CURRENT.get() != null;
+  }
+
+  <T> CompletableFuture<T> call(Supplier<T> blocking) {
+    if (CURRENT.get() == this) {
+      return CompletableFuture.completedFuture(blocking.get());
+    }
+    CompletableFuture<T> ret = new CompletableFuture<>();
+    executor.execute(() -> {
+      CURRENT.set(this);
+      try {
+        T value;
+        try {
+          value = blocking.get();
+        } catch (Throwable e) {
+          ret.completeExceptionally(e);
+          return;
+        }
+        ret.complete(value);
+      } finally {
+        CURRENT.remove();
+      }
+    });
+    return ret;
+  }
+
+  CompletableFuture<Void> run(Runnable blocking) {
+    return call(() -> {
+      blocking.run();
+      return null;
+    });
+  }
+
+  // One virtual thread per call where the JVM has them, otherwise a cached pool of daemon threads
+  static Executor defaultExecutor() {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (Executor) method.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool((runnable) -> {
+        Thread ret = new Thread(runnable, "oauth2-blocking");
+        ret.setDaemon(true);
+        return ret;
+      });
+    }
+  }
+
+  // Adapters
+
+  RequiredFunctions required(BlockingFunctions.Required funcs) {
+    checkNotNull(funcs);
+    return new RequiredFunctions() {
+      @Override
+      public CompletableFuture<GetAccessTokenRes> getAccessToken(String bearerToken) {
+        return call(() -> funcs.getAccessToken(bearerToken));
+      }
+
+      @Override
+      public CompletableFuture<GetClientRes> getClient(String clientId, String clientSecret) {
+        return call(() -> funcs.getClient(clientId, clientSecret));
+      }
+
+      @Override
+      public CompletableFuture<IsGrantTypeAllowedRes> isGrantTypeAllowed(String clientId, String grantType) {
+        return call(() -> funcs.isGrantTypeAllowed(clientId, grantType));
+      }
+
+      @Override
+      public CompletableFuture<Void> saveAccessToken(String accessToken, String clientId, String userId,
+          Optional<LocalDateTime> expires) {
+        return run(() -> funcs.saveAccessToken(accessToken, clientId, userId, expires));
+      }
+
+      @Override
+      public CompletableFuture<GenerateTokenRes> generateToken(TokenType tokenType) {
+        return call(() -> funcs.generateToken(tokenType));
+      }
+
+      // Only reads a clock, it is never dispatched
+      @Override
+      public LocalDateTime getNow() {
+        return funcs.getNow();
+      }
+    };
+  }
+
+  RequiredFunctions.AuthCodeGrantType authCode(BlockingFunctions.AuthCodeGrantType funcs) {
+    return funcs == null ? null : (authCode) -> call(() -> funcs.getAuthCode(authCode));
+  }
+
+  RequiredFunctions.PasswordGrantType password(BlockingFunctions.PasswordGrantType funcs) {
+    return funcs == null ? null : (username, password) -> call(() -> funcs.getUser(username, password));
+  }
+
+  RequiredFunctions.ClientCredentialsGrantType clientCreds(BlockingFunctions.ClientCredentialsGrantType funcs) {
+    return funcs == null ? null : (clientId, clientSecret) -> call(() -> funcs.getUserFromClient(clientId,
+        clientSecret));
+  }
+
+  RequiredFunctions.RefreshTokenGrantType refreshToken(BlockingFunctions.RefreshTokenGrantType funcs) {
+    if (funcs == null) {
+      return null;
+    }
+    return new RequiredFunctions.RefreshTokenGrantType() {
+      @Override
+      public CompletableFuture<Void> saveRefreshToken(String refreshToken, String clientId, String userId,
+          Optional<LocalDateTime> expires) {
+        return run(() -> funcs.saveRefreshToken(refreshToken, clientId, userId, expires));
+      }
+
+      @Override
+      public CompletableFuture<GetRefreshTokenRes> getRefreshToken(String refreshToken) {
+        return call(() -> funcs.getRefreshToken(refreshToken));
+      }
+
+      @Override
+      public CompletableFuture<Void> revokeRefreshToken(String refreshToken) {
+        return run(() -> funcs.revokeRefreshToken(refreshToken));
+      }
+    };
+  }
+
+}
@@ -0,0 +1,127 @@
+package com.etiennek.auth.core;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.etiennek.auth.core.model.func.SaveTokens;
+
+// Groups the saves of concurrent grants into batched calls to the delegate. A batch is written once it holds
+// maxBatchSize grants or once window has passed since its first grant, whichever comes first. Every grant in a
+// batch completes when the batch does, so a failed write fails all of them.
+// Windows are timed by one daemon thread shared by every instance, which only hands a batch whose window is up to
+// the executor to be written, so a delegate that blocks does not hold up other batches.
+class CoalescingSaveTokens implements SaveTokens {
+  // Only started once batching is configured
+  private static class SchedulerHolder {
+    static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(1, (runnable) -> {
+      Thread ret = new Thread(runnable, "oauth2-save-tokens");
+      ret.setDaemon(true);
+      return ret;
+    });
+    static {
+      SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+  }
+
+  private final SaveTokens delegate;
+  private final long windowNanos;
+  private final int maxBatchSize;
+  private final Executor executor;
+
+  private List<SaveTokensReq> batch;
+  private CompletableFuture<Void> batchResult;
+  private ScheduledFuture<?> batchTimeout;
+
+  // A batch that fills up is written on the thread that filled it, one whose window is up on the executor
+  CoalescingSaveTokens(SaveTokens delegate, Duration window, int maxBatchSize, Executor executor) {
+    this.delegate = checkNotNull(delegate);
+    this.windowNanos = checkNotNull(window).toNanos();
+    this.maxBatchSize = maxBatchSize;
+    this.executor = checkNotNull(executor);
+  }
+
+  @Override
+  public CompletableFuture<Void> saveTokens(List<SaveTokensReq> tokens) {
+    List<SaveTokensReq> full = null;
+    CompletableFuture<Void> fullResult = null;
+    CompletableFuture<Void> ret;
+    synchronized (this) {
+      if (batch == null) {
+        List<SaveTokensReq> started = new ArrayList<>();
+        batch = started;
+        batchResult = new CompletableFuture<>();
+        batchTimeout = windowNanos > 0 ? SchedulerHolder.SCHEDULER.schedule(() -> timedOut(started), windowNanos,
+            TimeUnit.NANOSECONDS) : null;
+      }
+      batch.addAll(tokens);
+      ret = batchResult;
+      if (batch.size() >= maxBatchSize || batchTimeout == null) {
+        full = batch;
+        fullResult = batchResult;
+        if (batchTimeout != null) {
+          batchTimeout.cancel(false);
+        }
+        batch = null;
+      }
+    }
+    if (full != null) {
+      write(full, fullResult);
+    }
+    return ret;
+  }
+
+  // Runs on the shared scheduler thread. An executor that refuses the write fails the batch, as nothing else would
+  // ever complete it.
+  private void timedOut(List<SaveTokensReq> expected) {
+    try {
+      executor.execute(() -> flush(expected));
+    } catch (Throwable e) {
+      CompletableFuture<Void> result = take(expected);
+      if (result != null) {
+        result.completeExceptionally(e);
+      }
+    }
+  }
+
+  private void flush(List<SaveTokensReq> expected) {
+    CompletableFuture<Void> result = take(expected);
+    if (result != null) {
+      write(expected, result);
+    }
+  }
+
+  // Ends the batch and returns its result, or null if it was already written because it filled up
+  private synchronized CompletableFuture<Void> take(List<SaveTokensReq> expected) {
+    if (batch != expected) {
+      return null;
+    }
+    batch = null;
+    return batchResult;
+  }
+
+  private void write(List<SaveTokensReq> tokens, CompletableFuture<Void> result) {
+    CompletableFuture<Void> written;
+    try {
+      written = delegate.saveTokens(tokens);
+    } catch (Throwable e) {
+      result.completeExceptionally(e);
+      return;
+    }
+    written.whenComplete((v, e) -> {
+      if (e != null) {
+        result.completeExceptionally(e);
+      } else {
+        result.complete(null);
+      }
+    });
+  }
+
+}
@@ -3,6 +3,7 @@ package com.etiennek.auth.core;
 public class Const {
 
   // Methods
+  public static final String METHOD_GET = "GET";
   public static final String METHOD_POST = "POST";
   
   // Media Types
@@ -11,6 +12,7 @@ public class Const {
 
   // Keys
   public static final String KEY_GRANT_TYPE = "grant_type";
+  public static final String KEY_ACCESS_TOKEN = "access_token";
 
   // Grant Types
   public static final String GRANT_AUTHORIZATION_CODE = "authorization_code";
@@ -0,0 +1,51 @@
+package com.etiennek.auth.core;
+
+import com.etiennek.auth.core.model.ErrorCode;
+
+// An error response as it is logged. It is the parameter of the LogRecord, so a handler can read its fields
+// instead of parsing the message.
+public class ErrorEvent {
+  private final ErrorCode errorCode;
+  private final String description;
+  private final boolean verify;
+  private final Throwable cause;
+  private final long suppressed;
+
+  ErrorEvent(ErrorCode errorCode, String description, boolean verify, Throwable cause, long suppressed) {
+    this.errorCode = errorCode;
+    this.description = description;
+    this.verify = verify;
+    this.cause = cause;
+    this.suppressed = suppressed;
+  }
+
+  public ErrorCode getErrorCode() {
+    return errorCode;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  // Whether the error was sent by the verify endpoint rather than the token endpoint
+  public boolean isVerify() {
+    return verify;
+  }
+
+  // The unexpected error behind a server error, otherwise null
+  public Throwable getCause() {
+    return cause;
+  }
+
+  // How many errors with the same code were not logged since the previous one that was
+  public long getSuppressed() {
+    return suppressed;
+  }
+
+  @Override
+  public String toString() {
+    return "ErrorEvent [errorCode=" + errorCode + ", description=" + description + ", verify=" + verify
+        + ", suppressed=" + suppressed + "]";
+  }
+
+}
@@ -0,0 +1,87 @@
+package com.etiennek.auth.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import com.etiennek.auth.core.model.ErrorCode;
+
+// Logs error responses without letting a flood of them, such as a credential stuffing attack, turn into a log line
+// each. Counting them is left to OAuth2Metrics, see DefaultMetrics. Nothing is formatted or allocated unless the
+// level is loggable, and then at most maxPerSecond errors of each code are logged per second. The next one logged
+// carries the number that were suppressed in between. Errors sent with a 5xx status are logged at SEVERE with their
+// cause, others at INFO.
+class ErrorLog {
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static class Window {
+    final AtomicLong start;
+    final AtomicInteger logged = new AtomicInteger();
+    final AtomicLong suppressed = new AtomicLong();
+
+    Window(long start) {
+      this.start = new AtomicLong(start);
+    }
+  }
+
+  private final Logger log;
+  private final int maxPerSecond;
+  private final LongSupplier nanoClock;
+  private final Window[] windows = new Window[ErrorCode.values().length];
+
+  ErrorLog(Logger log, int maxPerSecond) {
+    this(log, maxPerSecond, System::nanoTime);
+  }
+
+  ErrorLog(Logger log, int maxPerSecond, LongSupplier nanoClock) {
+    this.log = log;
+    this.maxPerSecond = maxPerSecond;
+    this.nanoClock = nanoClock;
+    long start = nanoClock.getAsLong() - WINDOW_NANOS;
+    for (int i = 0; i < windows.length; i++) {
+      windows[i] = new Window(start);
+    }
+  }
+
+  // The status is the one actually sent, which is not always that of the error code
+  void log(ErrorCode errorCode, int status, String description, boolean verify, Throwable cause) {
+    Level level = status >= 500 ? Level.SEVERE : Level.INFO;
+    if (!log.isLoggable(level)) {
+      return;
+    }
+    long suppressed = 0;
+    if (maxPerSecond > 0) {
+      suppressed = acquire(windows[errorCode.ordinal()]);
+      if (suppressed < 0) {
+        return;
+      }
+    }
+
+    ErrorEvent event = new ErrorEvent(errorCode, description, verify, cause, suppressed);
+    LogRecord record = new LogRecord(level, "{0}");
+    record.setLoggerName(log.getName());
+    record.setParameters(new Object[] {event});
+    record.setThrown(cause);
+    log.log(record);
+  }
+
+  // The number of errors suppressed since the last one logged, or -1 if this one is suppressed as well. The
+  // window is reset without a lock, so a few more than maxPerSecond may get through when it rolls over.
+  private long acquire(Window window) {
+    long now = nanoClock.getAsLong();
+    long start = window.start.get();
+    if (now - start >= WINDOW_NANOS && window.start.compareAndSet(start, now)) {
+      window.logged.set(0);
+    }
+    if (window.logged.incrementAndGet() > maxPerSecond) {
+      window.suppressed.incrementAndGet();
+      return -1;
+    }
+    return window.suppressed.getAndSet(0);
+  }
+
+}
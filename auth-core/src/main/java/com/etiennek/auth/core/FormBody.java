@@ -0,0 +1,195 @@
+package com.etiennek.auth.core;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A view over a raw application/x-www-form-urlencoded body that only knows the parameters the server reads.
+// The bytes are scanned once to find where the known parameters are; a value is only decoded when it is asked
+// for. Other parameters are skipped without being decoded, as section 3.1 of RFC 6749 allows. A known parameter
+// that is repeated (section 3.2) or longer than MAX_VALUE_LENGTH makes the whole body invalid, see getError().
+public class FormBody {
+  public static final int MAX_VALUE_LENGTH = 4096;
+
+  static final String[] KEYS = {Const.KEY_GRANT_TYPE, "username", "password", "code", "refresh_token",
+      Const.KEY_ACCESS_TOKEN};
+  private static final byte[][] KEY_BYTES = new byte[KEYS.length][];
+  static {
+    for (int i = 0; i < KEYS.length; i++) {
+      KEY_BYTES[i] = KEYS[i].getBytes(StandardCharsets.US_ASCII);
+    }
+  }
+
+  private final byte[] bytes;
+  // Start and end offset of each known value, a start of -1 when it is absent
+  private final int[] ranges = new int[KEYS.length * 2];
+  private final String[] values = new String[KEYS.length];
+  private String error;
+  private Map<String, String[]> map;
+
+  private FormBody(byte[] bytes) {
+    this.bytes = bytes;
+    Arrays.fill(ranges, -1);
+  }
+
+  // The bytes are not copied and must not be changed afterwards
+  public static FormBody parse(byte[] bytes, int offset, int length) {
+    checkNotNull(bytes);
+    FormBody ret = new FormBody(bytes);
+    ret.scan(offset, offset + length);
+    return ret;
+  }
+
+  // The decoded value of a known parameter, or null if it is absent or not a known parameter
+  public String get(String key) {
+    int index = indexOf(key);
+    if (index < 0 || ranges[index * 2] < 0) {
+      return null;
+    }
+    String ret = values[index];
+    if (ret == null) {
+      ret = decode(bytes, ranges[index * 2], ranges[index * 2 + 1]);
+      values[index] = ret;
+    }
+    return ret;
+  }
+
+  // Why the body can not be used, or null if it can
+  public String getError() {
+    return error;
+  }
+
+  // The known parameters as a map
+  public Map<String, String[]> toMap() {
+    if (map == null) {
+      Map<String, String[]> ret = new LinkedHashMap<>();
+      for (String key : KEYS) {
+        String value = get(key);
+        if (value != null) {
+          ret.put(key, new String[] {value});
+        }
+      }
+      map = Collections.unmodifiableMap(ret);
+    }
+    return map;
+  }
+
+  private void scan(int start, int end) {
+    int pos = start;
+    while (pos < end) {
+      int pairEnd = pos;
+      int equals = -1;
+      while (pairEnd < end && bytes[pairEnd] != '&') {
+        if (equals < 0 && bytes[pairEnd] == '=') {
+          equals = pairEnd;
+        }
+        pairEnd++;
+      }
+      int nameEnd = equals < 0 ? pairEnd : equals;
+      int index = keyIndex(pos, nameEnd);
+      if (index >= 0) {
+        if (ranges[index * 2] >= 0) {
+          error = "Parameter " + KEYS[index] + " was sent more than once.";
+          return;
+        }
+        int from = equals < 0 ? pairEnd : equals + 1;
+        if (pairEnd - from > MAX_VALUE_LENGTH) {
+          error = "Parameter " + KEYS[index] + " is too long.";
+          return;
+        }
+        ranges[index * 2] = from;
+        ranges[index * 2 + 1] = pairEnd;
+      }
+      pos = pairEnd + 1;
+    }
+  }
+
+  private int keyIndex(int start, int end) {
+    boolean encoded = false;
+    for (int i = start; i < end; i++) {
+      if (bytes[i] == '%' || bytes[i] == '+') {
+        encoded = true;
+        break;
+      }
+    }
+    if (encoded) {
+      // Rare, a name that is percent encoded is decoded before it is compared
+      return indexOf(decode(bytes, start, end));
+    }
+    int length = end - start;
+    for (int k = 0; k < KEY_BYTES.length; k++) {
+      byte[] key = KEY_BYTES[k];
+      if (key.length != length) {
+        continue;
+      }
+      int i = 0;
+      while (i < length && bytes[start + i] == key[i]) {
+        i++;
+      }
+      if (i == length) {
+        return k;
+      }
+    }
+    return -1;
+  }
+
+  private static int indexOf(String key) {
+    for (int i = 0; i < KEYS.length; i++) {
+      if (KEYS[i].equals(key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // Percent and '+' decoding as UTF-8. An invalid escape is kept as is.
+  static String decode(byte[] src, int start, int end) {
+    boolean plain = true;
+    for (int i = start; i < end; i++) {
+      if (src[i] == '%' || src[i] == '+') {
+        plain = false;
+        break;
+      }
+    }
+    if (plain) {
+      return new String(src, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    byte[] decoded = new byte[end - start];
+    int length = 0;
+    for (int i = start; i < end; i++) {
+      byte b = src[i];
+      if (b == '+') {
+        decoded[length++] = ' ';
+      } else if (b == '%' && hex(src, i + 1, end) >= 0 && hex(src, i + 2, end) >= 0) {
+        decoded[length++] = (byte) ((hex(src, i + 1, end) << 4) | hex(src, i + 2, end));
+        i += 2;
+      } else {
+        decoded[length++] = b;
+      }
+    }
+    return new String(decoded, 0, length, StandardCharsets.UTF_8);
+  }
+
+  private static int hex(byte[] src, int index, int end) {
+    if (index >= end) {
+      return -1;
+    }
+    byte b = src[index];
+    if (b >= '0' && b <= '9') {
+      return b - '0';
+    }
+    if (b >= 'a' && b <= 'f') {
+      return b - 'a' + 10;
+    }
+    if (b >= 'A' && b <= 'F') {
+      return b - 'A' + 10;
+    }
+    return -1;
+  }
+
+}
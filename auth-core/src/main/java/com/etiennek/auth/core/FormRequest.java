@@ -6,33 +6,86 @@ import java.util.Map;
 
 public class FormRequest {
   private String method;
+  private Headers headers;
   private Map<String, String[]> header;
   private Map<String, String[]> body;
+  private FormBody formBody;
+  private String remoteAddress;
 
   public FormRequest(String method, Map<String, String[]> header, Map<String, String[]> body) {
+    this(method, Headers.of(header), body);
+  }
+
+  // Backed by a raw body that is only decoded as far as the server reads it
+  public FormRequest(String method, Map<String, String[]> header, FormBody body) {
+    this(method, Headers.of(header), body);
+  }
+
+  public FormRequest(String method, Headers headers, Map<String, String[]> body) {
     this.method = checkNotNull(method);
     this.body = checkNotNull(body);
-    this.header = toCaseInsensitiveMap(header);
+    this.headers = checkNotNull(headers);
+  }
+
+  public FormRequest(String method, Headers headers, FormBody body) {
+    this.method = checkNotNull(method);
+    this.formBody = checkNotNull(body);
+    this.headers = checkNotNull(headers);
   }
 
   public String getMethod() {
     return method;
   }
 
+  // The address of the caller, as far as the server can tell, or null if it is unknown
+  public String getRemoteAddress() {
+    return remoteAddress;
+  }
+
+  public FormRequest withRemoteAddress(String remoteAddress) {
+    this.remoteAddress = remoteAddress;
+    return this;
+  }
+
   public Map<String, String[]> getHeader() {
+    if (header == null) {
+      header = headers.toMap();
+    }
     return header;
   }
 
+  // The first value of a header, or null if there is none. Unlike getHeader() this does not copy any headers.
+  public String getHeaderValue(String name) {
+    return headers.get(name);
+  }
+
   public Map<String, String[]> getBody() {
+    if (body == null) {
+      body = formBody.toMap();
+    }
     return body;
   }
 
+  // The first value of a body parameter, or null if there is none
+  public String getBodyParameter(String key) {
+    if (formBody != null) {
+      return formBody.get(key);
+    }
+    String[] values = body.get(key);
+    return isNullOrEmpty(values) ? null : values[0];
+  }
+
+  // Why the body can not be used, or null if it can
+  public String getBodyError() {
+    return formBody == null ? null : formBody.getError();
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
     int result = 1;
-    result = prime * result + ((body == null) ? 0 : body.hashCode());
-    result = prime * result + ((header == null) ? 0 : header.hashCode());
+    result = prime * result + getBody().hashCode();
+    result = prime * result + getHeader().hashCode();
     result = prime * result + ((method == null) ? 0 : method.hashCode());
     return result;
   }
@@ -46,15 +99,9 @@ public class FormRequest {
     if (getClass() != obj.getClass())
       return false;
     FormRequest other = (FormRequest) obj;
-    if (body == null) {
-      if (other.body != null)
-        return false;
-    } else if (!body.equals(other.body))
+    if (!getBody().equals(other.getBody()))
       return false;
-    if (header == null) {
-      if (other.header != null)
-        return false;
-    } else if (!header.equals(other.header))
+    if (!getHeader().equals(other.getHeader()))
       return false;
     if (method == null) {
       if (other.method != null)
@@ -66,6 +113,6 @@ public class FormRequest {
 
   @Override
   public String toString() {
-    return "FormRequest [method=" + method + ", header=" + header + ", body=" + body + "]";
+    return "FormRequest [method=" + method + ", header=" + getHeader() + ", body=" + getBody() + "]";
   }
 }
@@ -6,23 +6,50 @@ import static com.etiennek.auth.core.Util.*;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Map;
+import java.util.Collections;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
+import com.etiennek.auth.core.metrics.GrantStage;
+import com.etiennek.auth.core.metrics.OAuth2Metrics;
 import com.etiennek.auth.core.model.AuthCode;
 import com.etiennek.auth.core.model.RefreshToken;
 import com.etiennek.auth.core.model.RequiredFunctions;
 import com.etiennek.auth.core.model.TokenType;
 import com.etiennek.auth.core.model.RequiredFunctions.RefreshTokenGrantType;
+import com.etiennek.auth.core.model.func.GenerateToken.GenerateTokenRes;
+import com.etiennek.auth.core.model.func.GetAuthCode.GetAuthCodeRes;
+import com.etiennek.auth.core.model.func.GetClient.GetClientRes;
+import com.etiennek.auth.core.model.func.GetRefreshToken.GetRefreshTokenRes;
+import com.etiennek.auth.core.model.func.GetUser.GetUserRes;
+import com.etiennek.auth.core.model.func.GetUserFromClient.GetUserFromClientRes;
+import com.etiennek.auth.core.model.func.IsGrantTypeAllowed.IsGrantTypeAllowedRes;
+import com.etiennek.auth.core.model.func.SaveTokens.SaveTokensReq;
 import com.etiennek.auth.core.resp.AccessTokenResponse;
 
-class Grant {
-  private OAuth2ServerConfiguration config;
+// The grant pipeline is a small state machine. Each stage starts a call to the configured functions and then
+// handles its result. Stages whose future has already completed are handled inline on the calling thread, so a
+// grant backed by in-process functions needs no intermediate futures or lambdas. Only once a stage is actually
+// pending does the pipeline allocate a result future and resume from the completing thread.
+class Grant implements BiConsumer<Object, Throwable> {
+  private static final int CHECK_CLIENT = 0;
+  private static final int CHECK_GRANT_TYPE_ALLOWED = 1;
+  private static final int CHECK_GRANT_TYPE = 2;
+  private static final int REVOKE_REFRESH_TOKEN = 3;
+  private static final int GENERATE_ACCESS_TOKEN = 4;
+  private static final int SAVE_ACCESS_TOKEN = 5;
+  private static final int GENERATE_REFRESH_TOKEN = 6;
+  private static final int SAVE_REFRESH_TOKEN = 7;
+  private static final int DONE = 8;
+  private static final GrantStage[] STAGES = GrantStage.values();
 
-  private Map<String, String[]> body;
+  private OAuth2ServerConfiguration config;
 
   private RequiredFunctions requiredFuncs;
+  private OAuth2Metrics metrics;
 
   private FormRequest request;
 
@@ -35,43 +62,238 @@ class Grant {
 
   private String userId;
 
+  private String oldRefreshToken;
+  private boolean oldRefreshTokenExpired;
+
+  private CompletableFuture<?> grantTypeAllowedLookup;
+
+  private int stage;
+  private long stageStarted;
+  private CompletableFuture<Response> result;
+
   Grant(OAuth2ServerConfiguration config, FormRequest request) {
     this.config = config;
     this.request = request;
     this.requiredFuncs = config.getFuncs()
                                .getRequired();
+    this.metrics = config.getMetrics()
+                         .orElse(null);
+  }
+
+  CompletableFuture<Response> run() {
+    extractCredentials();
+    checkRateLimits();
+    Response response = proceed();
+    return response != null ? CompletableFuture.completedFuture(response) : result;
+  }
+
+  // Resumes the pipeline once a pending stage completes, on the CPU executor if there is one. A completion on a
+  // blocking task resumes right there, so that the grant's later blocking calls run inline on that same task.
+  @Override
+  public void accept(Object value, Throwable error) {
+    Optional<Executor> cpuExecutor = config.getCpuExecutor();
+    if (!cpuExecutor.isPresent() || BlockingDispatcher.onTask()) {
+      resume(value, error);
+      return;
+    }
+    try {
+      cpuExecutor.get()
+                 .execute(() -> resume(value, error));
+    } catch (Throwable e) {
+      result.completeExceptionally(e);
+    }
+  }
+
+  private void resume(Object value, Throwable error) {
+    try {
+      if (result.isDone()) {
+        // Already failed by a parallel lookup
+        return;
+      }
+      if (error != null) {
+        recordStage(stageStarted);
+        result.completeExceptionally(error);
+        return;
+      }
+      try {
+        finish(stage, value);
+      } finally {
+        recordStage(stageStarted);
+      }
+      stage++;
+      Response response = proceed();
+      if (response != null) {
+        result.complete(response);
+      }
+    } catch (Throwable e) {
+      result.completeExceptionally(e);
+    }
+  }
+
+  // Runs stages until either all of them are done, in which case the response is returned, or one is still
+  // pending, in which case null is returned and the pipeline continues in accept.
+  private Response proceed() {
+    // A stage is timed from the end of the one before it, which saves reading the clock twice per stage
+    long started = metrics != null ? System.nanoTime() : 0;
+    while (stage < DONE) {
+      CompletableFuture<?> future = start(stage);
+      if (future == null) {
+        stage++;
+      } else if (future.isDone()) {
+        try {
+          finish(stage, future.join());
+        } finally {
+          started = recordStage(started);
+        }
+        stage++;
+      } else {
+        if (result == null) {
+          result = new CompletableFuture<>();
+          if (stage == CHECK_CLIENT && grantTypeAllowedLookup != null) {
+            failOnError(grantTypeAllowedLookup, result);
+          }
+        }
+        stageStarted = started;
+        future.whenComplete(this);
+        return null;
+      }
+    }
+    return sendResponse();
+  }
+
+  // Stages that fail are recorded as well
+  private long recordStage(long started) {
+    if (metrics == null) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    GrantStage recorded = STAGES[stage];
+    if (stage == SAVE_REFRESH_TOKEN && config.getFuncs()
+                                             .getSaveTokens()
+                                             .isPresent()) {
+      recorded = GrantStage.SAVE_TOKENS;
+    }
+    metrics.recordStage(recorded, now - started);
+    return now;
+  }
+
+  // The requested grant type once it is known to be supported, otherwise null
+  String getGrantType() {
+    return grantType != null && config.isSupportedGrantType(grantType) ? grantType : null;
   }
 
-  CompletableFuture<Void> extractCredentials(Void v) {
-    CompletableFuture<Void> ret = new CompletableFuture<>();
-    String[] contentTypeArr = request.getHeader()
-                                     .get("Content-Type");
+  private CompletableFuture<?> start(int stage) {
+    switch (stage) {
+      case CHECK_CLIENT:
+        if (config.isParallelLookups()) {
+          startParallelLookups();
+        }
+        return config.getFuncs()
+                     .getClientLookup()
+                     .getClient(clientId, clientSecret);
+      case CHECK_GRANT_TYPE_ALLOWED:
+        if (grantTypeAllowedLookup != null) {
+          return grantTypeAllowedLookup;
+        }
+        return config.getFuncs()
+                     .getGrantTypeLookup()
+                     .isGrantTypeAllowed(clientId, grantType);
+      case CHECK_GRANT_TYPE:
+        return checkGrantType();
+      case REVOKE_REFRESH_TOKEN:
+        return revokeRefreshToken();
+      case GENERATE_ACCESS_TOKEN:
+        if (config.getSignedAccessTokens()
+                  .isPresent()) {
+          String signed = config.getSignedAccessTokens()
+                                .get()
+                                .sign(clientId, userId, expires(config.getAccessTokenLifetime()));
+          return CompletableFuture.completedFuture(new GenerateTokenRes(signed));
+        }
+        return requiredFuncs.generateToken(TokenType.ACCESS);
+      case SAVE_ACCESS_TOKEN:
+        return saveAccessToken();
+      case GENERATE_REFRESH_TOKEN:
+        return generateRefreshToken();
+      case SAVE_REFRESH_TOKEN:
+        return saveRefreshToken();
+    }
+    throw new IllegalStateException("Unknown grant stage " + stage);
+  }
+
+  private void finish(int stage, Object value) {
+    switch (stage) {
+      case CHECK_CLIENT:
+        checkClient((GetClientRes) value);
+        break;
+      case CHECK_GRANT_TYPE_ALLOWED:
+        checkGrantTypeAllowed((IsGrantTypeAllowedRes) value);
+        break;
+      case CHECK_GRANT_TYPE:
+        checkGrantTypeResult(value);
+        break;
+      case REVOKE_REFRESH_TOKEN:
+        if (oldRefreshTokenExpired) {
+          throw new OAuth2Exception(INVALID_GRANT, "Refresh token has expired.");
+        }
+        break;
+      case GENERATE_ACCESS_TOKEN:
+        accessToken = generatedToken((GenerateTokenRes) value);
+        break;
+      case GENERATE_REFRESH_TOKEN:
+        refreshToken = generatedToken((GenerateTokenRes) value);
+        break;
+    }
+  }
+
+  // Fires the grant type lookup together with the client lookup. Its result is still handled in stage order, so the
+  // first error reported is the same as when the lookups run one after the other. The grant specific lookup waits
+  // for the client to be authenticated: reading an authorization code may use it up, and checking a password is
+  // expensive work no unauthenticated caller should be able to start.
+  private void startParallelLookups() {
+    grantTypeAllowedLookup = config.getFuncs()
+                                   .getGrantTypeLookup()
+                                   .isGrantTypeAllowed(clientId, grantType);
+  }
+
+  // Fails the grant as soon as the parallel lookup does, rather than once the client lookup has completed
+  private static void failOnError(CompletableFuture<?> lookup, CompletableFuture<Response> result) {
+    lookup.whenComplete((value, error) -> {
+      if (error != null) {
+        result.completeExceptionally(error);
+      }
+    });
+  }
+
+  void extractCredentials() {
+    String contentType = request.getHeaderValue("Content-Type");
 
     // Only POST via application/x-www-form-urlencoded is acceptable
     if (!request.getMethod()
-                .equalsIgnoreCase(METHOD_POST) || isNullOrEmpty(contentTypeArr)
-        || !contentTypeArr[0].equals(MEDIA_X_WWW_FORM_URLENCODED)) {
+                .equalsIgnoreCase(METHOD_POST) || !MEDIA_X_WWW_FORM_URLENCODED.equals(contentType)) {
       throw new OAuth2Exception(INVALID_REQUEST, "Method must be POST with application/x-www-form-urlencoded encoding.");
     }
 
-    body = request.getBody();
+    if (request.getBodyError() != null) {
+      throw new OAuth2Exception(INVALID_REQUEST, request.getBodyError());
+    }
 
     // Grant type
-    grantType = !isNullOrEmpty(body.get(KEY_GRANT_TYPE)) ? body.get(KEY_GRANT_TYPE)[0].trim()
-                                                                                      .toLowerCase() : null;
+    grantType = request.getBodyParameter(KEY_GRANT_TYPE);
+    grantType = grantType != null ? grantType.trim()
+                                             .toLowerCase() : null;
     if (!config.isSupportedGrantType(grantType)) {
       throw new OAuth2Exception(INVALID_REQUEST, "Invalid or missing grant_type parameter.");
     }
 
     // Client Credentials
-    Optional<String[]> ccHeader = getBasicAuthCredentialsHeader(request.getHeader()
-                                                                       .get("Authorization"));
+    Optional<String[]> ccHeader = getBasicAuthCredentialsHeader(request.getHeaderValue("Authorization"));
     if (ccHeader.isPresent()) {
       String[] cc = ccHeader.get();
       clientId = cc[0];
-      if (clientId == null || !clientId.matches(config.getRegex()
-                                                      .getClientId()) || clientId.trim()
-                                                                                 .isEmpty()) {
+      if (clientId == null || !config.getRegex()
+                                     .isValidClientId(clientId) || clientId.trim()
+                                                                           .isEmpty()) {
         throw new OAuth2Exception(INVALID_CLIENT, "Missing client_id parameter.");
       }
       clientSecret = cc[1];
@@ -82,34 +304,44 @@ class Grant {
     } else {
       throw new OAuth2Exception(INVALID_CLIENT, "Invalid or missing client credentials.");
     }
+  }
+
+  // Sheds callers over their rate before any function is called. The remote address is checked first, as a flood
+  // of random client ids would otherwise each get a fresh bucket.
+  private void checkRateLimits() {
+    Optional<RateLimiter> byRemoteAddress = config.getRemoteAddressRateLimiter();
+    if (byRemoteAddress.isPresent() && request.getRemoteAddress() != null) {
+      checkRateLimit(byRemoteAddress.get(), request.getRemoteAddress());
+    }
+    Optional<RateLimiter> byClient = config.getClientRateLimiter();
+    if (byClient.isPresent()) {
+      checkRateLimit(byClient.get(), clientId);
+    }
+  }
 
-    ret.complete(null);
-    return ret;
+  private static void checkRateLimit(RateLimiter limiter, String key) {
+    long wait = limiter.tryAcquire(key);
+    if (wait > 0) {
+      // Rounded up to whole seconds for Retry-After
+      throw new RateLimitedException(TimeUnit.NANOSECONDS.toSeconds(wait - 1) + 1);
+    }
   }
 
-  CompletableFuture<Void> checkClient(Void v) {
-    return requiredFuncs.getClient(clientId, clientSecret)
-                        .thenAccept((result) -> {
-                          checkNotNull(result);
-                          if (!result.client.isPresent()) {
-                            throw new OAuth2Exception(INVALID_CLIENT, "Invalid client credentials.");
-                          }
-                        });
+  private void checkClient(GetClientRes result) {
+    checkNotNull(result);
+    if (!result.client.isPresent()) {
+      throw new OAuth2Exception(INVALID_CLIENT, "Invalid client credentials.");
+    }
   }
 
-  CompletableFuture<Void> checkGrantTypeAllowed(Void v) {
-    return requiredFuncs.isGrantTypeAllowed(clientId, grantType)
-                        .thenAccept(
-                            (result) -> {
-                              checkNotNull(result);
-                              if (result == null || !result.allowed) {
-                                throw new OAuth2Exception(INVALID_CLIENT,
-                                    "The grant type is unauthorised for this client_id.");
-                              }
-                            });
+  private void checkGrantTypeAllowed(IsGrantTypeAllowedRes result) {
+    checkNotNull(result);
+    if (!result.allowed) {
+      throw new OAuth2Exception(INVALID_CLIENT, "The grant type is unauthorised for this client_id.");
+    }
   }
 
-  CompletableFuture<Void> checkGrantType(Void v) {
+  private CompletableFuture<?> checkGrantType() {
     switch (grantType) {
       case GRANT_PASSWORD:
         return usePasswordGrant();
@@ -123,73 +355,115 @@ class Grant {
     throw new OAuth2Exception(INVALID_REQUEST, "Invalid grant_type parameter or parameter missing.");
   }
 
-  CompletableFuture<Void> generateAccessToken(Void v) {
-    return requiredFuncs.generateToken(TokenType.ACCESS)
-                        .thenAccept((result) -> {
-                          checkNotNull(result);
-                          checkNotNull(result.token);
-                          accessToken = result.token;
-                        });
+  private void checkGrantTypeResult(Object result) {
+    switch (grantType) {
+      case GRANT_PASSWORD:
+        checkPasswordGrant((GetUserRes) result);
+        break;
+      case GRANT_CLIENT_CREDENTIALS:
+        checkClientCredentialsGrant((GetUserFromClientRes) result);
+        break;
+      case GRANT_AUTHORIZATION_CODE:
+        checkAuthCodeGrant((GetAuthCodeRes) result);
+        break;
+      case GRANT_REFRESH_TOKEN:
+        checkRefreshTokenGrant((GetRefreshTokenRes) result);
+        break;
+    }
+  }
+
+  private CompletableFuture<Void> revokeRefreshToken() {
+    if (oldRefreshToken == null) {
+      return null;
+    }
+    return config.getFuncs()
+                 .getRefreshToken()
+                 .get()
+                 .revokeRefreshToken(oldRefreshToken);
   }
 
-  CompletableFuture<Void> saveAccessToken(Void v) {
-    Optional<LocalDateTime> expires;
-    Optional<Duration> lifeTime = config.getAccessTokenLifetime();
-    if (lifeTime.isPresent()) {
-      expires = Optional.of(requiredFuncs.getNow()
-                                         .plus(lifeTime.get()));
-    } else {
-      expires = Optional.empty();
+  private CompletableFuture<Void> saveAccessToken() {
+    if (config.getSignedAccessTokens()
+              .isPresent()) {
+      // Self-contained, there is nothing to save
+      return null;
+    }
+    if (config.getFuncs()
+              .getSaveTokens()
+              .isPresent()) {
+      // Saved together with the refresh token
+      return null;
     }
-    return requiredFuncs.saveAccessToken(accessToken, clientId, userId, expires);
+    return requiredFuncs.saveAccessToken(accessToken, clientId, userId, expires(config.getAccessTokenLifetime()));
   }
 
-  CompletableFuture<Void> generateRefreshToken(Void v) {
+  private CompletableFuture<GenerateTokenRes> generateRefreshToken() {
     if (!config.getFuncs()
                .getRefreshToken()
                .isPresent()) {
-      return CompletableFuture.completedFuture(null);
+      return null;
     }
 
-    return requiredFuncs.generateToken(TokenType.REFRESH)
-                        .thenAccept((result) -> {
-                          checkNotNull(result);
-                          checkNotNull(result.token);
-                          refreshToken = result.token;
-                        });
+    return requiredFuncs.generateToken(TokenType.REFRESH);
   }
 
-  CompletableFuture<Void> saveRefreshToken(Void v) {
+  private CompletableFuture<Void> saveRefreshToken() {
+    if (config.getFuncs()
+              .getSaveTokens()
+              .isPresent()) {
+      return saveTokens();
+    }
     if (!config.getFuncs()
                .getRefreshToken()
                .isPresent()) {
-      return CompletableFuture.completedFuture(null);
+      return null;
     }
 
-    Optional<LocalDateTime> expires;
-    Optional<Duration> lifeTime = config.getRefreshTokenLifetime();
-    if (lifeTime.isPresent()) {
-      expires = Optional.of(requiredFuncs.getNow()
-                                         .plus(lifeTime.get()));
-    } else {
-      expires = Optional.empty();
-    }
     return config.getFuncs()
                  .getRefreshToken()
                  .get()
-                 .saveRefreshToken(refreshToken, clientId, userId, expires);
+                 .saveRefreshToken(refreshToken, clientId, userId, expires(config.getRefreshTokenLifetime()));
+  }
+
+  private CompletableFuture<Void> saveTokens() {
+    Optional<String> refresh = refreshToken == null ? Optional.empty() : Optional.of(refreshToken);
+    boolean signed = config.getSignedAccessTokens()
+                           .isPresent();
+    if (signed && !refresh.isPresent()) {
+      return null;
+    }
+    SaveTokensReq req = new SaveTokensReq(signed ? Optional.empty() : Optional.of(accessToken),
+        signed ? Optional.empty() : expires(config.getAccessTokenLifetime()), refresh,
+        refresh.isPresent() ? expires(config.getRefreshTokenLifetime()) : Optional.empty(), clientId, userId);
+    return config.getFuncs()
+                 .getSaveTokens()
+                 .get()
+                 .saveTokens(Collections.singletonList(req));
+  }
+
+  private Optional<LocalDateTime> expires(Optional<Duration> lifeTime) {
+    if (lifeTime.isPresent()) {
+      return Optional.of(requiredFuncs.getNow()
+                                      .plus(lifeTime.get()));
+    }
+    return Optional.empty();
+  }
+
+  private Response sendResponse() {
+    return new AccessTokenResponse(accessToken, config.getAccessTokenLifetime(),
+        refreshToken == null ? Optional.empty() : Optional.of(refreshToken));
   }
 
-  CompletableFuture<Response> sendResponse(Void v) {
-    return CompletableFuture.completedFuture(new AccessTokenResponse(accessToken, config.getAccessTokenLifetime(),
-        refreshToken == null ? Optional.empty() : Optional.of(refreshToken)));
+  private static String generatedToken(GenerateTokenRes result) {
+    checkNotNull(result);
+    return checkNotNull(result.token);
   }
 
   // Grants
 
-  private CompletableFuture<Void> usePasswordGrant() {
-    String username = isNullOrEmpty(body.get("username")) ? null : body.get("username")[0];
-    String password = isNullOrEmpty(body.get("password")) ? null : body.get("password")[0];
+  private CompletableFuture<GetUserRes> usePasswordGrant() {
+    String username = request.getBodyParameter("username");
+    String password = request.getBodyParameter("password");
 
     if (username == null || password == null) {
       throw new OAuth2Exception(INVALID_CLIENT, "Ivalid values for 'username' or 'password'.");
@@ -198,36 +472,38 @@ class Grant {
     return config.getFuncs()
                  .getPassword()
                  .get()
-                 .getUser(username, password)
-                 .thenAccept((result) -> {
-                   checkNotNull(result);
-                   if (result.user.isPresent()) {
-                     userId = result.user.get()
-                                         .getId();
-                   } else {
-                     throw new OAuth2Exception(INVALID_GRANT, "User credentials are invalid.");
-                   }
-                 });
-  }
-
-  private CompletableFuture<Void> useClientCredentialsGrant() {
+                 .getUser(username, password);
+  }
+
+  private void checkPasswordGrant(GetUserRes result) {
+    checkNotNull(result);
+    if (result.user.isPresent()) {
+      userId = result.user.get()
+                          .getId();
+    } else {
+      throw new OAuth2Exception(INVALID_GRANT, "User credentials are invalid.");
+    }
+  }
+
+  private CompletableFuture<GetUserFromClientRes> useClientCredentialsGrant() {
     return config.getFuncs()
                  .getClientCreds()
                  .get()
-                 .getUserFromClient(clientId, clientSecret)
-                 .thenAccept((result) -> {
-                   checkNotNull(result);
-                   if (result.user.isPresent()) {
-                     userId = result.user.get()
-                                         .getId();
-                   } else {
-                     throw new OAuth2Exception(INVALID_GRANT, "Client credentials are invalid.");
-                   }
-                 });
-  }
-
-  private CompletableFuture<Void> useAuthCodeGrant() {
-    String code = isNullOrEmpty(body.get("code")) ? null : body.get("code")[0];
+                 .getUserFromClient(clientId, clientSecret);
+  }
+
+  private void checkClientCredentialsGrant(GetUserFromClientRes result) {
+    checkNotNull(result);
+    if (result.user.isPresent()) {
+      userId = result.user.get()
+                          .getId();
+    } else {
+      throw new OAuth2Exception(INVALID_GRANT, "Client credentials are invalid.");
+    }
+  }
+
+  private CompletableFuture<GetAuthCodeRes> useAuthCodeGrant() {
+    String code = request.getBodyParameter("code");
     if (code == null) {
       throw new OAuth2Exception(INVALID_REQUEST, "Ivalid or missing value for 'code'.");
     }
@@ -235,25 +511,26 @@ class Grant {
     return config.getFuncs()
                  .getAuthCode()
                  .get()
-                 .getAuthCode(code)
-                 .thenAccept((result) -> {
-                   checkNotNull(result);
-                   if (!result.authCode.isPresent() || !clientId.equals(result.authCode.get()
-                                                                                       .getClientId())) {
-                     throw new OAuth2Exception(INVALID_GRANT, "Invalid authorization code.");
-                   }
+                 .getAuthCode(code);
+  }
 
-                   AuthCode authCode = result.authCode.get();
-                   if (authCode.hasExpired(requiredFuncs.getNow())) {
-                     throw new OAuth2Exception(INVALID_GRANT, "Authorization code  has expired.");
-                   }
+  private void checkAuthCodeGrant(GetAuthCodeRes result) {
+    checkNotNull(result);
+    if (!result.authCode.isPresent() || !clientId.equals(result.authCode.get()
+                                                                        .getClientId())) {
+      throw new OAuth2Exception(INVALID_GRANT, "Invalid authorization code.");
+    }
+
+    AuthCode authCode = result.authCode.get();
+    if (authCode.hasExpired(requiredFuncs.getNow())) {
+      throw new OAuth2Exception(INVALID_GRANT, "Authorization code  has expired.");
+    }
 
-                   userId = checkNotNull(authCode.getUserId());
-                 });
+    userId = checkNotNull(authCode.getUserId());
   }
 
-  private CompletableFuture<Void> useRefreshTokenGrant() {
-    String token = isNullOrEmpty(body.get("refresh_token")) ? null : body.get("refresh_token")[0];
+  private CompletableFuture<GetRefreshTokenRes> useRefreshTokenGrant() {
+    String token = request.getBodyParameter("refresh_token");
     if (token == null) {
       throw new OAuth2Exception(INVALID_REQUEST, "Ivalid or missing value for 'refresh_token'.");
     }
@@ -262,24 +539,24 @@ class Grant {
                                         .getRefreshToken()
                                         .get();
 
-    return funcs.getRefreshToken(token)
-                .thenCompose((result) -> {
-                  checkNotNull(result);
-                  if (!result.refreshToken.isPresent() || !clientId.equals(result.refreshToken.get()
-                                                                                              .getClientId())) {
-                    throw new OAuth2Exception(INVALID_GRANT, "Invalid refresh token.");
-                  }
-
-                  RefreshToken refreshToken = result.refreshToken.get();
-                  if (refreshToken.hasExpired(requiredFuncs.getNow())) {
-                    return funcs.revokeRefreshToken(token)
-                                .thenAccept((v) -> {
-                                  throw new OAuth2Exception(INVALID_GRANT, "Refresh token has expired.");
-                                });
-                  }
-
-                  userId = checkNotNull(refreshToken.getUserId());
-                  return funcs.revokeRefreshToken(token);
-                });
+    oldRefreshToken = token;
+    return funcs.getRefreshToken(token);
+  }
+
+  private void checkRefreshTokenGrant(GetRefreshTokenRes result) {
+    checkNotNull(result);
+    if (!result.refreshToken.isPresent() || !clientId.equals(result.refreshToken.get()
+                                                                                .getClientId())) {
+      throw new OAuth2Exception(INVALID_GRANT, "Invalid refresh token.");
+    }
+
+    // Expired refresh tokens are still revoked before the grant is rejected
+    RefreshToken refreshToken = result.refreshToken.get();
+    if (refreshToken.hasExpired(requiredFuncs.getNow())) {
+      oldRefreshTokenExpired = true;
+      return;
+    }
+
+    userId = checkNotNull(refreshToken.getUserId());
   }
 }
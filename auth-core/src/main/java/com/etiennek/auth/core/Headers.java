@@ -0,0 +1,18 @@
+package com.etiennek.auth.core;
+
+import java.util.Map;
+
+// Read access to request headers without copying them. Names are compared case-insensitively.
+public interface Headers {
+
+  // The first value of the header, or null if it is absent
+  String get(String name);
+
+  // Every header as a case-insensitive map, only built when asked for
+  Map<String, String[]> toMap();
+
+  static Headers of(Map<String, String[]> map) {
+    return new MapHeaders(map);
+  }
+
+}
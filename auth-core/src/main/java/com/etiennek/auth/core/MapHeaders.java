@@ -0,0 +1,46 @@
+package com.etiennek.auth.core;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+// Headers over a caller supplied map. A lookup tries the exact name first and only then compares every name
+// case-insensitively, which for the handful of headers of a request is cheaper than copying them into a TreeMap.
+class MapHeaders implements Headers {
+  private final Map<String, String[]> map;
+  private final boolean caseInsensitive;
+  private Map<String, String[]> caseInsensitiveMap;
+
+  MapHeaders(Map<String, String[]> map) {
+    this.map = checkNotNull(map);
+    this.caseInsensitive = map instanceof SortedMap
+        && ((SortedMap<String, String[]>) map).comparator() == String.CASE_INSENSITIVE_ORDER;
+  }
+
+  @Override
+  public String get(String name) {
+    String[] values = map.get(name);
+    if (values == null && !caseInsensitive) {
+      for (Map.Entry<String, String[]> entry : map.entrySet()) {
+        if (name.equalsIgnoreCase(entry.getKey())) {
+          values = entry.getValue();
+          break;
+        }
+      }
+    }
+    return isNullOrEmpty(values) ? null : values[0];
+  }
+
+  @Override
+  public Map<String, String[]> toMap() {
+    if (caseInsensitive) {
+      return map;
+    }
+    if (caseInsensitiveMap == null) {
+      caseInsensitiveMap = toCaseInsensitiveMap(map);
+    }
+    return caseInsensitiveMap;
+  }
+
+}
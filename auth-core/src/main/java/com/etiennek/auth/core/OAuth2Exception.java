@@ -2,6 +2,7 @@ package com.etiennek.auth.core;
 
 import com.etiennek.auth.core.model.ErrorCode;
 
+// Rejects a request with the given error code. Thrown for every bad request, so it does not fill in a stack trace.
 class OAuth2Exception extends RuntimeException {
 
   private static final long serialVersionUID = 8964296846977980153L;
@@ -9,12 +10,12 @@ class OAuth2Exception extends RuntimeException {
   private ErrorCode errorCode;
 
   public OAuth2Exception(ErrorCode errorCode, String message) {
-    super(message);
+    super(message, null, false, false);
     this.errorCode = errorCode;
   }
 
   public OAuth2Exception(ErrorCode errorCode, String message, Throwable cause) {
-    super(message, cause);
+    super(message, cause, false, false);
     this.errorCode = errorCode;
   }
 
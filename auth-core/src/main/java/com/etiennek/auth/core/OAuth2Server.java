@@ -2,58 +2,121 @@ package com.etiennek.auth.core;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static com.etiennek.auth.core.model.ErrorCode.*;
 
+import com.etiennek.auth.core.metrics.OAuth2Metrics;
+import com.etiennek.auth.core.model.ErrorCode;
+import com.etiennek.auth.core.resp.BearerErrorResponse;
 import com.etiennek.auth.core.resp.ErrorResponse;
+import com.etiennek.auth.core.resp.RateLimitedResponse;
 
 public class OAuth2Server {
   private static final Logger LOG = Logger.getLogger(Grant.class.getName());
 
   OAuth2ServerConfiguration config;
+  private OAuth2Metrics metrics;
+  private ErrorLog errorLog;
 
   public OAuth2Server(OAuth2ServerConfiguration configuration) {
     this.config = configuration;
+    this.metrics = configuration.getMetrics()
+                                .orElse(null);
+    this.errorLog = new ErrorLog(LOG, configuration.getErrorLogRate());
   }
 
   public CompletableFuture<Response> grant(FormRequest request) {
+    if (metrics == null) {
+      return runGrant(new Grant(config, request));
+    }
+    long started = System.nanoTime();
     Grant grant = new Grant(config, request);
+    CompletableFuture<Response> ret = runGrant(grant);
+    if (ret.isDone()) {
+      metrics.recordGrant(grant.getGrantType(), System.nanoTime() - started);
+      return ret;
+    }
+    // Recorded before the caller sees the response
+    return ret.whenComplete((response, e) -> metrics.recordGrant(grant.getGrantType(), System.nanoTime() - started));
+  }
+
+  private CompletableFuture<Response> runGrant(Grant grant) {
     try {
-      return grant.extractCredentials(null)
-                  .thenCompose(grant::checkClient)
-                  .thenCompose(grant::checkGrantTypeAllowed)
-                  .thenCompose(grant::checkGrantType)
-                  .thenCompose(grant::generateAccessToken)
-                  .thenCompose(grant::saveAccessToken)
-                  .thenCompose(grant::generateRefreshToken)
-                  .thenCompose(grant::saveRefreshToken)
-                  .thenCompose(grant::sendResponse)
-                  .exceptionally(this::generateErrorResponse);
-    } catch (Exception e) {
+      CompletableFuture<Response> ret = grant.run();
+      if (ret.isDone() && !ret.isCompletedExceptionally()) {
+        return ret;
+      }
+      return ret.exceptionally(this::generateErrorResponse);
+    } catch (Throwable e) {
       return CompletableFuture.completedFuture(generateErrorResponse(e));
     }
   }
 
+  public CompletableFuture<Response> verify(FormRequest request) {
+    if (metrics == null) {
+      return runVerify(request);
+    }
+    long started = System.nanoTime();
+    CompletableFuture<Response> ret = runVerify(request);
+    if (ret.isDone()) {
+      metrics.recordVerify(System.nanoTime() - started);
+      return ret;
+    }
+    return ret.whenComplete((response, e) -> metrics.recordVerify(System.nanoTime() - started));
+  }
+
+  private CompletableFuture<Response> runVerify(FormRequest request) {
+    try {
+      CompletableFuture<Response> ret = new Verify(config, request).run();
+      if (ret.isDone() && !ret.isCompletedExceptionally()) {
+        return ret;
+      }
+      return ret.exceptionally(this::generateVerifyErrorResponse);
+    } catch (Throwable e) {
+      return CompletableFuture.completedFuture(generateVerifyErrorResponse(e));
+    }
+  }
+
   private ErrorResponse generateErrorResponse(Throwable e) {
+    return generateErrorResponse(e, false);
+  }
+
+  private ErrorResponse generateVerifyErrorResponse(Throwable e) {
+    return generateErrorResponse(e, true);
+  }
+
+  private ErrorResponse generateErrorResponse(Throwable e, boolean bearer) {
     ErrorResponse ret;
     Throwable cause = e.getCause();
+    OAuth2Exception oauth2Exception = null;
     if (e instanceof CompletionException && cause instanceof OAuth2Exception) {
-      String message = cause.getMessage();
-      ret = new ErrorResponse(((OAuth2Exception) cause).getErrorCode(), message);
+      oauth2Exception = (OAuth2Exception) cause;
     } else if (e instanceof OAuth2Exception) {
-      String message = e.getMessage();
-      ret = new ErrorResponse(((OAuth2Exception) e).getErrorCode(), message);
-    } else {
-      ret = new ErrorResponse(SERVER_ERROR, "An unknown error has occured.");
+      oauth2Exception = (OAuth2Exception) e;
     }
-
-    if (ret.getCode() >= 500) {
-      LOG.log(Level.SEVERE, String.format("%s", ret), e);
+    if (oauth2Exception instanceof RateLimitedException) {
+      // Load shedding, counted on its own rather than logged and counted as an error
+      if (metrics != null) {
+        metrics.recordRateLimited();
+      }
+      return RateLimitedResponse.of(((RateLimitedException) oauth2Exception).getRetryAfterSeconds());
+    }
+    ErrorCode errorCode;
+    String message;
+    if (oauth2Exception != null) {
+      errorCode = oauth2Exception.getErrorCode();
+      message = oauth2Exception.getMessage();
+      ret = bearer ? BearerErrorResponse.of(errorCode, message) : ErrorResponse.of(errorCode, message);
     } else {
-      LOG.log(Level.INFO, String.format("%s", ret));
+      errorCode = SERVER_ERROR;
+      message = "An unknown error has occured.";
+      ret = ErrorResponse.of(errorCode, message);
+    }
+    if (metrics != null) {
+      metrics.recordError(errorCode);
     }
+    errorLog.log(errorCode, ret.getCode(), message, bearer, oauth2Exception == null ? e : null);
 
     return ret;
   }
@@ -4,12 +4,24 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
 
 import static com.etiennek.auth.core.Const.*;
+import com.etiennek.auth.core.cache.AccessTokenCache;
+import com.etiennek.auth.core.cache.ClientCache;
+import com.etiennek.auth.core.metrics.OAuth2Metrics;
+import com.etiennek.auth.core.model.BlockingFunctions;
 import com.etiennek.auth.core.model.RequiredFunctions;
+import com.etiennek.auth.core.model.func.GetAccessToken;
+import com.etiennek.auth.core.model.func.GetClient;
+import com.etiennek.auth.core.model.func.IsGrantTypeAllowed;
+import com.etiennek.auth.core.model.func.SaveTokens;
 import static com.etiennek.auth.core.Util.*;
 
 public class OAuth2ServerConfiguration {
+  public static final String DEFAULT_CLIENT_ID_REGEX = "^[A-Za-z0-9-_]{3,40}$";
+  public static final int DEFAULT_ERROR_LOG_RATE = 10;
 
   private Regex regex;
   private Funcs funcs;
@@ -18,6 +30,15 @@ public class OAuth2ServerConfiguration {
   private Optional<Duration> refreshTokenLifetime;
   private Duration authCodeLifetime;
   private String[] supportedGrantTypes;
+  private boolean parallelLookups;
+  private int errorLogRate = DEFAULT_ERROR_LOG_RATE;
+  private Optional<AccessTokenCache> accessTokenCache = Optional.empty();
+  private Optional<ClientCache> clientCache = Optional.empty();
+  private Optional<SignedTokenCodec> signedAccessTokens = Optional.empty();
+  private Optional<Executor> cpuExecutor = Optional.empty();
+  private Optional<OAuth2Metrics> metrics = Optional.empty();
+  private Optional<RateLimiter> clientRateLimiter = Optional.empty();
+  private Optional<RateLimiter> remoteAddressRateLimiter = Optional.empty();
 
   private OAuth2ServerConfiguration() {
     regex = new Regex();
@@ -44,6 +65,47 @@ public class OAuth2ServerConfiguration {
     return authCodeLifetime;
   }
 
+  public Optional<AccessTokenCache> getAccessTokenCache() {
+    return accessTokenCache;
+  }
+
+  public Optional<ClientCache> getClientCache() {
+    return clientCache;
+  }
+
+  // When present access tokens are signed by this codec instead of generated, are not saved and are verified
+  // without calling getAccessToken
+  public Optional<SignedTokenCodec> getSignedAccessTokens() {
+    return signedAccessTokens;
+  }
+
+  // When present the grant and verify pipelines continue on this executor once a pending function completes,
+  // instead of on the thread that completed it
+  public Optional<Executor> getCpuExecutor() {
+    return cpuExecutor;
+  }
+
+  public Optional<RateLimiter> getClientRateLimiter() {
+    return clientRateLimiter;
+  }
+
+  public Optional<RateLimiter> getRemoteAddressRateLimiter() {
+    return remoteAddressRateLimiter;
+  }
+
+  public Optional<OAuth2Metrics> getMetrics() {
+    return metrics;
+  }
+
+  // The most error responses of each ErrorCode logged per second, 0 when all of them are
+  public int getErrorLogRate() {
+    return errorLogRate;
+  }
+
+  public boolean isParallelLookups() {
+    return parallelLookups;
+  }
+
   public boolean isSupportedGrantType(String toCheck) {
     for (String grantType : supportedGrantTypes) {
       if (grantType.equals(toCheck)) {
@@ -55,15 +117,43 @@ public class OAuth2ServerConfiguration {
 
   public class Regex {
     private String clientId;
+    private Pattern clientIdPattern;
 
     public String getClientId() {
       return clientId;
     }
 
+    public boolean isValidClientId(String toCheck) {
+      if (clientIdPattern == null) {
+        return isDefaultClientId(toCheck);
+      }
+      return clientIdPattern.matcher(toCheck)
+                            .matches();
+    }
+
+    // Equivalent to DEFAULT_CLIENT_ID_REGEX without going through the regex engine
+    private boolean isDefaultClientId(String toCheck) {
+      int length = toCheck.length();
+      if (length < 3 || length > 40) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        char c = toCheck.charAt(i);
+        if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_')) {
+          return false;
+        }
+      }
+      return true;
+    }
+
   }
 
   public class Funcs {
     private RequiredFunctions required;
+    private GetAccessToken accessTokenLookup;
+    private GetClient clientLookup;
+    private IsGrantTypeAllowed grantTypeLookup;
+    private Optional<SaveTokens> saveTokens = Optional.empty();
     private Optional<RequiredFunctions.AuthCodeGrantType> authCode = Optional.empty();
     private Optional<RequiredFunctions.PasswordGrantType> password = Optional.empty();
     private Optional<RequiredFunctions.RefreshTokenGrantType> refreshToken = Optional.empty();
@@ -73,6 +163,26 @@ public class OAuth2ServerConfiguration {
       return required;
     }
 
+    // The required getAccessToken, or the cache in front of it
+    public GetAccessToken getAccessTokenLookup() {
+      return accessTokenLookup;
+    }
+
+    // The required getClient, or the cache in front of it
+    public GetClient getClientLookup() {
+      return clientLookup;
+    }
+
+    // The required isGrantTypeAllowed, or the cache in front of it
+    public IsGrantTypeAllowed getGrantTypeLookup() {
+      return grantTypeLookup;
+    }
+
+    // Saves both tokens of a grant in one call instead of saveAccessToken and saveRefreshToken, possibly batched
+    public Optional<SaveTokens> getSaveTokens() {
+      return saveTokens;
+    }
+
     public Optional<RequiredFunctions.AuthCodeGrantType> getAuthCode() {
       return authCode;
     }
@@ -96,10 +206,33 @@ public class OAuth2ServerConfiguration {
 
     private List<String> supportedGrantTypes = new ArrayList<>();
 
+    private int accessTokenCacheSize;
+    private Duration accessTokenCacheTimeToLive;
+    private Duration accessTokenCacheNegativeTimeToLive;
+
+    private int clientCacheSize;
+    private Duration clientCacheTimeToLive;
+    private Duration clientCacheRefreshAfter;
+
+    private SaveTokens saveTokens;
+    private Duration saveTokensBatchWindow;
+    private int saveTokensMaxBatchSize;
+
+    private final BlockingDispatcher blocking = new BlockingDispatcher();
+    private boolean usesBlocking;
+    private Executor blockingExecutor;
+
     public Builder(RequiredFunctions requiredFunctions) {
       config.funcs.required = checkNotNull(requiredFunctions, "No requiredFunctions supplied to OAuth2Server Builder");
     }
 
+    // The required functions block and are called on the blocking executor, see withBlockingExecutor
+    public Builder(BlockingFunctions.Required requiredFunctions) {
+      checkNotNull(requiredFunctions, "No requiredFunctions supplied to OAuth2Server Builder");
+      config.funcs.required = blocking.required(requiredFunctions);
+      usesBlocking = true;
+    }
+
     public Builder withAccessTokenLifetime(Duration accessTokenLifetime) {
       config.accessTokenLifetime = accessTokenLifetime == null ? Optional.empty() : Optional.of(accessTokenLifetime);
       return this;
@@ -120,6 +253,111 @@ public class OAuth2ServerConfiguration {
       return this;
     }
 
+    // Runs the client and grant type lookups of a grant concurrently rather than one after the other. The grant
+    // type is then looked up before the client has been authenticated, the user, code or refresh token never is.
+    public Builder withParallelLookups(boolean parallelLookups) {
+      config.parallelLookups = parallelLookups;
+      return this;
+    }
+
+    public Builder withAccessTokenCache(int maximumSize, Duration timeToLive, Duration negativeTimeToLive) {
+      accessTokenCacheSize = maximumSize;
+      accessTokenCacheTimeToLive = timeToLive;
+      accessTokenCacheNegativeTimeToLive = negativeTimeToLive;
+      return this;
+    }
+
+    public Builder withClientCache(int maximumSize, Duration timeToLive, Duration refreshAfter) {
+      clientCacheSize = maximumSize;
+      clientCacheTimeToLive = timeToLive;
+      clientCacheRefreshAfter = refreshAfter;
+      return this;
+    }
+
+    public Builder withSignedAccessTokens(SignedTokenCodec codec) {
+      config.signedAccessTokens = codec == null ? Optional.empty() : Optional.of(codec);
+      return this;
+    }
+
+    public Builder withSaveTokens(SaveTokens saveTokens) {
+      this.saveTokens = saveTokens;
+      return this;
+    }
+
+    // Groups the saves of concurrent grants into one saveTokens call per window or per maxBatchSize grants. A batch
+    // whose window is up is written on the blocking executor, the default blocking one if none is configured.
+    public Builder withSaveTokensBatching(Duration window, int maxBatchSize) {
+      saveTokensBatchWindow = window;
+      saveTokensMaxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    // Where BlockingFunctions are called. Defaults to a virtual thread per call on JVMs that have them, otherwise
+    // to a cached pool of daemon threads.
+    public Builder withBlockingExecutor(Executor executor) {
+      blockingExecutor = executor;
+      return this;
+    }
+
+    // Token generation, signing, checks and responses then run on this executor, usually a pool sized to the cores,
+    // and the threads of asynchronous stores are released as soon as their call is done. A grant that has made a
+    // blocking call stays on its blocking task instead, see withBlockingExecutor.
+    public Builder withCpuExecutor(Executor executor) {
+      config.cpuExecutor = executor == null ? Optional.empty() : Optional.of(executor);
+      return this;
+    }
+
+    // Grants over the rate of their client id are rejected with 429 before any function is called. Up to
+    // maximumKeys client ids are tracked.
+    public Builder withClientRateLimit(double requestsPerSecond, int burst, int maximumKeys) {
+      config.clientRateLimiter =
+          requestsPerSecond > 0 ? Optional.of(new RateLimiter(requestsPerSecond, burst, maximumKeys)) : Optional.empty();
+      return this;
+    }
+
+    // As withClientRateLimit, per FormRequest.getRemoteAddress() for requests that have one
+    public Builder withRemoteAddressRateLimit(double requestsPerSecond, int burst, int maximumKeys) {
+      config.remoteAddressRateLimiter =
+          requestsPerSecond > 0 ? Optional.of(new RateLimiter(requestsPerSecond, burst, maximumKeys)) : Optional.empty();
+      return this;
+    }
+
+    // Errors over this rate are not logged, though the next one logged says how many were suppressed. 0 logs every
+    // one of them. Errors are only counted per ErrorCode with withMetrics.
+    public Builder withErrorLogRate(int maxPerErrorCodePerSecond) {
+      config.errorLogRate = maxPerErrorCodePerSecond;
+      return this;
+    }
+
+    // Records request counts, errors per ErrorCode and per stage latencies, and is handed the statistics of the
+    // configured caches, see DefaultMetrics. Without it nothing is counted, errors are only logged as
+    // withErrorLogRate allows.
+    public Builder withMetrics(OAuth2Metrics metrics) {
+      config.metrics = metrics == null ? Optional.empty() : Optional.of(metrics);
+      return this;
+    }
+
+    public Builder withBlockingAuthCodeGrantTypeSupport(BlockingFunctions.AuthCodeGrantType blockingFunctions) {
+      usesBlocking |= blockingFunctions != null;
+      return withAuthCodeGrantTypeSupport(blocking.authCode(blockingFunctions));
+    }
+
+    public Builder withBlockingPasswordGrantTypeSupport(BlockingFunctions.PasswordGrantType blockingFunctions) {
+      usesBlocking |= blockingFunctions != null;
+      return withPasswordGrantTypeSupport(blocking.password(blockingFunctions));
+    }
+
+    public Builder withBlockingClientCredentialsGrantTypeSupport(
+        BlockingFunctions.ClientCredentialsGrantType blockingFunctions) {
+      usesBlocking |= blockingFunctions != null;
+      return withClientCredentialsGrantTypeSupport(blocking.clientCreds(blockingFunctions));
+    }
+
+    public Builder withBlockingRefreshTokenGrantTypeSupport(BlockingFunctions.RefreshTokenGrantType blockingFunctions) {
+      usesBlocking |= blockingFunctions != null;
+      return withRefreshTokenGrantTypeSupport(blocking.refreshToken(blockingFunctions));
+    }
+
     public Builder withAuthCodeGrantTypeSupport(RequiredFunctions.AuthCodeGrantType requiredFunctions) {
       if (requiredFunctions == null) {
         config.funcs.authCode = Optional.empty();
@@ -175,11 +413,50 @@ public class OAuth2ServerConfiguration {
         config.authCodeLifetime = Duration.ofSeconds(30);
       }
       if (config.regex.clientId == null) {
-        config.regex.clientId = "^[A-Za-z0-9-_]{3,40}$";
+        config.regex.clientId = DEFAULT_CLIENT_ID_REGEX;
       }
+      config.regex.clientIdPattern =
+          config.regex.clientId.equals(DEFAULT_CLIENT_ID_REGEX) ? null : Pattern.compile(config.regex.clientId);
 
       config.supportedGrantTypes = supportedGrantTypes.toArray(new String[0]);
 
+      config.funcs.accessTokenLookup = config.funcs.required;
+      if (accessTokenCacheSize > 0 && accessTokenCacheTimeToLive != null) {
+        AccessTokenCache cache = new AccessTokenCache(config.funcs.required, config.funcs.required,
+            accessTokenCacheSize, accessTokenCacheTimeToLive, accessTokenCacheNegativeTimeToLive);
+        config.accessTokenCache = Optional.of(cache);
+        config.funcs.accessTokenLookup = cache;
+        config.metrics.ifPresent((metrics) -> metrics.registerCache(OAuth2Metrics.ACCESS_TOKEN_CACHE, cache::stats));
+      }
+
+      config.funcs.clientLookup = config.funcs.required;
+      config.funcs.grantTypeLookup = config.funcs.required;
+      if (clientCacheSize > 0 && clientCacheTimeToLive != null) {
+        ClientCache cache = new ClientCache(config.funcs.required, config.funcs.required, config.funcs.required,
+            clientCacheSize, clientCacheTimeToLive, clientCacheRefreshAfter);
+        config.clientCache = Optional.of(cache);
+        config.funcs.clientLookup = cache;
+        config.funcs.grantTypeLookup = cache;
+        config.metrics.ifPresent((metrics) -> metrics.registerCache(OAuth2Metrics.CLIENT_CACHE, cache::stats));
+      }
+
+      if (blockingExecutor != null) {
+        blocking.setExecutor(blockingExecutor);
+      } else if (usesBlocking && !blocking.hasExecutor()) {
+        blocking.setExecutor(BlockingDispatcher.defaultExecutor());
+      }
+
+      config.funcs.saveTokens = saveTokens == null ? Optional.empty() : Optional.of(saveTokens);
+      if (saveTokensMaxBatchSize > 1 && saveTokensBatchWindow != null) {
+        checkNotNull(saveTokens, "Batching token saves requires a SaveTokens function");
+        // Batches are written on the blocking executor, never the CPU one, as the delegate may well block
+        if (!blocking.hasExecutor()) {
+          blocking.setExecutor(BlockingDispatcher.defaultExecutor());
+        }
+        config.funcs.saveTokens = Optional.of(new CoalescingSaveTokens(saveTokens, saveTokensBatchWindow,
+            saveTokensMaxBatchSize, blocking.getExecutor()));
+      }
+
       return config;
     }
 
@@ -0,0 +1,20 @@
+package com.etiennek.auth.core;
+
+import static com.etiennek.auth.core.model.ErrorCode.*;
+
+class RateLimitedException extends OAuth2Exception {
+
+  private static final long serialVersionUID = -3117464541259807736L;
+
+  private final long retryAfterSeconds;
+
+  RateLimitedException(long retryAfterSeconds) {
+    super(TEMPORARILY_UNAVAILABLE, "Too many requests.");
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+
+}
@@ -0,0 +1,91 @@
+package com.etiennek.auth.core;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A token bucket per key, kept as the generic cell rate algorithm (GCRA): each bucket is a single AtomicLong
+// holding the time at which it will be full again, updated with compare and set. A key may send burst requests at
+// once and then permitsPerSecond on average.
+// A bucket whose full time has passed is the same as a missing one, so idle buckets are dropped whenever the map
+// reaches maximumKeys. Should it still be full, for instance under a flood of random keys, arbitrary buckets are
+// dropped as well, which gives their keys a fresh burst rather than letting the map grow.
+public class RateLimiter {
+  private final long interval;
+  private final long tolerance;
+  private final int maximumKeys;
+  private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  public RateLimiter(double permitsPerSecond, int burst, int maximumKeys) {
+    if (permitsPerSecond <= 0 || burst <= 0 || maximumKeys <= 0) {
+      throw new IllegalArgumentException("The rate, burst and maximum keys of a rate limiter must be positive.");
+    }
+    this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+    this.tolerance = interval * (burst - 1);
+    this.maximumKeys = maximumKeys;
+  }
+
+  // Takes a permit for the key. Returns 0 if there was one, otherwise the nanoseconds until there will be.
+  public long tryAcquire(String key) {
+    return tryAcquire(key, System.nanoTime());
+  }
+
+  long tryAcquire(String key, long now) {
+    checkNotNull(key);
+    AtomicLong bucket = buckets.get(key);
+    if (bucket == null) {
+      if (buckets.size() >= maximumKeys) {
+        evict(now);
+      }
+      bucket = buckets.computeIfAbsent(key, (k) -> new AtomicLong(now));
+    }
+    while (true) {
+      long full = bucket.get();
+      long base = full - now > 0 ? full : now;
+      long wait = base - now - tolerance;
+      if (wait > 0) {
+        return wait;
+      }
+      if (bucket.compareAndSet(full, base + interval)) {
+        return 0;
+      }
+    }
+  }
+
+  int size() {
+    return buckets.size();
+  }
+
+  private void evict(long now) {
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      Iterator<AtomicLong> it = buckets.values()
+                                       .iterator();
+      while (it.hasNext()) {
+        if (it.next()
+              .get() - now <= 0) {
+          it.remove();
+        }
+      }
+      // Leave room so that the next sweep is some inserts away
+      int target = maximumKeys - maximumKeys / 4 - 1;
+      it = buckets.values()
+                  .iterator();
+      while (buckets.size() > target && it.hasNext()) {
+        it.next();
+        it.remove();
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+}
@@ -2,6 +2,9 @@ package com.etiennek.auth.core;
 
 import static com.etiennek.auth.core.Util.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 public class Response {
@@ -16,6 +19,12 @@ public class Response {
     this.body = checkNotNull(body);
   }
 
+  // For responses that write their body straight to bytes and only build the String when asked for it
+  protected Response(int code, Map<String, String[]> header) {
+    this.code = code;
+    this.header = checkNotNull(header);
+  }
+
   public int getCode() {
     return code;
   }
@@ -28,11 +37,16 @@ public class Response {
     return body;
   }
 
+  // Writes the UTF-8 encoded body
+  public void writeBody(OutputStream out) throws IOException {
+    out.write(getBody().getBytes(StandardCharsets.UTF_8));
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
     int result = 1;
-    result = prime * result + ((body == null) ? 0 : body.hashCode());
+    result = prime * result + ((getBody() == null) ? 0 : getBody().hashCode());
     result = prime * result + code;
     result = prime * result + ((header == null) ? 0 : header.hashCode());
     return result;
@@ -47,10 +61,10 @@ public class Response {
     if (getClass() != obj.getClass())
       return false;
     Response other = (Response) obj;
-    if (body == null) {
-      if (other.body != null)
+    if (getBody() == null) {
+      if (other.getBody() != null)
         return false;
-    } else if (!body.equals(other.body))
+    } else if (!getBody().equals(other.getBody()))
       return false;
     if (code != other.code)
       return false;
@@ -64,7 +78,7 @@ public class Response {
 
   @Override
   public String toString() {
-    return "Response [code=" + code + ", header=" + header + ", body=" + body + "]";
+    return "Response [code=" + code + ", header=" + header + ", body=" + getBody() + "]";
   }
 
 }
@@ -0,0 +1,435 @@
+package com.etiennek.auth.core;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.etiennek.auth.core.model.AccessToken;
+
+// Issues and checks self-contained access tokens in the compact JWT format (header.payload.signature), signed with
+// HS256 or ES256. The payload carries the client id ("cid"), user id ("sub"), expiry ("exp", seconds since the
+// epoch with LocalDateTime taken as UTC) and a random id ("jti").
+// Every key has a key id ("kid") in the token header. New tokens are signed with the current signing key while
+// tokens signed by any other known key still verify, so keys can be rotated by adding the new key, switching the
+// signing key to it and removing the old key once its tokens have expired.
+// Only tokens issued by this codec are understood: the header is matched byte for byte against the headers of the
+// known keys rather than parsed.
+public class SignedTokenCodec {
+  public static final String HS256 = "HS256";
+  public static final String ES256 = "ES256";
+
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder()
+                                                      .withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+  private static final TokenGenerator JTI = new TokenGenerator(TokenGenerator.MIN_BYTE_LENGTH);
+  private static final int ES256_PART_LENGTH = 32;
+
+  public static abstract class Key {
+    private final String alg;
+
+    private Key(String alg) {
+      this.alg = alg;
+    }
+
+    public String getAlg() {
+      return alg;
+    }
+
+    abstract boolean canSign();
+
+    abstract byte[] sign(byte[] input) throws GeneralSecurityException;
+
+    abstract boolean verify(byte[] input, byte[] signature) throws GeneralSecurityException;
+  }
+
+  private static class KeySet {
+    final String signingKeyId;
+    final String signingHeader;
+    final Map<String, Key> keys;
+    final Map<String, Key> byHeader;
+
+    KeySet(String signingKeyId, Map<String, Key> keys) {
+      Key signingKey = checkNotNull(keys.get(signingKeyId), "Unknown signing key id " + signingKeyId);
+      if (!signingKey.canSign()) {
+        throw new IllegalArgumentException("Key " + signingKeyId + " can only verify.");
+      }
+      this.signingKeyId = signingKeyId;
+      this.keys = Collections.unmodifiableMap(new HashMap<>(keys));
+      this.byHeader = new HashMap<>();
+      for (Map.Entry<String, Key> key : keys.entrySet()) {
+        byHeader.put(encodedHeader(key.getKey(), key.getValue()), key.getValue());
+      }
+      this.signingHeader = encodedHeader(signingKeyId, signingKey);
+    }
+  }
+
+  private volatile KeySet keySet;
+
+  public SignedTokenCodec(String signingKeyId, Map<String, Key> keys) {
+    this.keySet = new KeySet(checkNotNull(signingKeyId), checkNotNull(keys));
+  }
+
+  // HMAC-SHA256 with a shared secret of at least 32 bytes
+  public static Key hmac(byte[] secret) {
+    checkNotNull(secret);
+    if (secret.length < 32) {
+      throw new IllegalArgumentException("HS256 secrets must be at least 32 bytes.");
+    }
+    SecretKeySpec keySpec = new SecretKeySpec(secret.clone(), "HmacSHA256");
+    ThreadLocal<Mac> mac = ThreadLocal.withInitial(() -> {
+      try {
+        Mac ret = Mac.getInstance("HmacSHA256");
+        ret.init(keySpec);
+        return ret;
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    return new Key(HS256) {
+      @Override
+      boolean canSign() {
+        return true;
+      }
+
+      @Override
+      byte[] sign(byte[] input) {
+        return mac.get()
+                  .doFinal(input);
+      }
+
+      @Override
+      boolean verify(byte[] input, byte[] signature) {
+        return MessageDigest.isEqual(sign(input), signature);
+      }
+    };
+  }
+
+  // ECDSA on P-256 with SHA-256. Without a private key the key can only verify, e.g. a key being retired or the
+  // key of another issuer.
+  public static Key ecdsa(PublicKey publicKey, PrivateKey privateKey) {
+    checkNotNull(publicKey);
+    ThreadLocal<Signature> signer = ThreadLocal.withInitial(SignedTokenCodec::newSignature);
+    ThreadLocal<Signature> verifier = ThreadLocal.withInitial(SignedTokenCodec::newSignature);
+    return new Key(ES256) {
+      @Override
+      boolean canSign() {
+        return privateKey != null;
+      }
+
+      @Override
+      byte[] sign(byte[] input) throws GeneralSecurityException {
+        Signature signature = signer.get();
+        signature.initSign(privateKey);
+        signature.update(input);
+        return derToConcat(signature.sign());
+      }
+
+      @Override
+      boolean verify(byte[] input, byte[] signature) throws GeneralSecurityException {
+        byte[] der = concatToDer(signature);
+        if (der == null) {
+          return false;
+        }
+        Signature ret = verifier.get();
+        ret.initVerify(publicKey);
+        ret.update(input);
+        return ret.verify(der);
+      }
+    };
+  }
+
+  public String getSigningKeyId() {
+    return keySet.signingKeyId;
+  }
+
+  public synchronized void addKey(String keyId, Key key) {
+    Map<String, Key> keys = new HashMap<>(keySet.keys);
+    keys.put(checkNotNull(keyId), checkNotNull(key));
+    keySet = new KeySet(keySet.signingKeyId, keys);
+  }
+
+  public synchronized void setSigningKey(String keyId) {
+    keySet = new KeySet(keyId, keySet.keys);
+  }
+
+  public synchronized void removeKey(String keyId) {
+    if (keyId.equals(keySet.signingKeyId)) {
+      throw new IllegalArgumentException("The signing key can not be removed.");
+    }
+    Map<String, Key> keys = new HashMap<>(keySet.keys);
+    keys.remove(keyId);
+    keySet = new KeySet(keySet.signingKeyId, keys);
+  }
+
+  public String sign(String clientId, String userId, Optional<LocalDateTime> expires) {
+    StringBuilder payload = new StringBuilder(128);
+    payload.append("{\"cid\":");
+    appendJsonString(payload, clientId);
+    payload.append(",\"sub\":");
+    appendJsonString(payload, userId);
+    if (expires.isPresent()) {
+      payload.append(",\"exp\":")
+             .append(expires.get()
+                            .toEpochSecond(ZoneOffset.UTC));
+    }
+    payload.append(",\"jti\":\"")
+           .append(JTI.generate())
+           .append("\"}");
+
+    byte[] payloadBytes = payload.toString()
+                                 .getBytes(StandardCharsets.UTF_8);
+    KeySet current = keySet;
+    String signingInput = current.signingHeader + '.' + ENCODER.encodeToString(payloadBytes);
+    try {
+      byte[] signature = current.keys.get(current.signingKeyId)
+                                     .sign(signingInput.getBytes(StandardCharsets.US_ASCII));
+      return signingInput + '.' + ENCODER.encodeToString(signature);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // Whether the token has the three segments of a signed token. Such tokens are never looked up in the store.
+  public static boolean isSignedToken(String token) {
+    int first = token.indexOf('.');
+    if (first < 0) {
+      return false;
+    }
+    int second = token.indexOf('.', first + 1);
+    return second >= 0 && token.indexOf('.', second + 1) < 0;
+  }
+
+  // The access token carried by a signed token, or empty if it was not issued by a known key or was tampered with.
+  // Expiry is left to the caller.
+  public Optional<AccessToken> verify(String token) {
+    if (!isSignedToken(token)) {
+      return Optional.empty();
+    }
+    int first = token.indexOf('.');
+    int second = token.indexOf('.', first + 1);
+
+    Key key = keySet.byHeader.get(token.substring(0, first));
+    if (key == null) {
+      return Optional.empty();
+    }
+
+    try {
+      byte[] signature = DECODER.decode(token.substring(second + 1));
+      if (!key.verify(token.substring(0, second)
+                           .getBytes(StandardCharsets.US_ASCII), signature)) {
+        return Optional.empty();
+      }
+      byte[] payload = DECODER.decode(token.substring(first + 1, second));
+      Map<String, Object> claims = new JsonObjectParser(new String(payload, StandardCharsets.UTF_8)).parse();
+      if (claims == null || !(claims.get("cid") instanceof String) || !(claims.get("sub") instanceof String)) {
+        return Optional.empty();
+      }
+      Object exp = claims.get("exp");
+      LocalDateTime expires = exp instanceof Long ? LocalDateTime.ofEpochSecond((Long) exp, 0, ZoneOffset.UTC) : null;
+      return Optional.of(new AccessToken(token, (String) claims.get("cid"), (String) claims.get("sub"), expires));
+    } catch (IllegalArgumentException | GeneralSecurityException | DateTimeException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static String encodedHeader(String keyId, Key key) {
+    StringBuilder header = new StringBuilder();
+    header.append("{\"alg\":\"")
+          .append(key.getAlg())
+          .append("\",\"typ\":\"JWT\",\"kid\":");
+    appendJsonString(header, keyId);
+    header.append('}');
+    return ENCODER.encodeToString(header.toString()
+                                        .getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void appendJsonString(StringBuilder sb, String value) {
+    sb.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\')
+          .append(c);
+      } else if (c < ' ') {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    sb.append('"');
+  }
+
+  private static Signature newSignature() {
+    try {
+      return Signature.getInstance("SHA256withECDSA");
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // JWS carries ES256 signatures as the concatenated 32 byte R and S values, the JCA uses DER
+
+  private static byte[] derToConcat(byte[] der) {
+    byte[] ret = new byte[ES256_PART_LENGTH * 2];
+    int offset = der[1] < 0 ? 3 : 2;
+    offset = copyDerInteger(der, offset, ret, 0);
+    copyDerInteger(der, offset, ret, ES256_PART_LENGTH);
+    return ret;
+  }
+
+  private static int copyDerInteger(byte[] der, int offset, byte[] dest, int destOffset) {
+    int length = der[offset + 1];
+    int start = offset + 2;
+    int skip = Math.max(0, length - ES256_PART_LENGTH);
+    int copy = length - skip;
+    System.arraycopy(der, start + skip, dest, destOffset + ES256_PART_LENGTH - copy, copy);
+    return start + length;
+  }
+
+  private static byte[] concatToDer(byte[] concat) {
+    if (concat.length != ES256_PART_LENGTH * 2) {
+      return null;
+    }
+    byte[] r = derInteger(concat, 0);
+    byte[] s = derInteger(concat, ES256_PART_LENGTH);
+    int length = r.length + s.length;
+    byte[] ret = new byte[2 + length];
+    ret[0] = 0x30;
+    ret[1] = (byte) length;
+    System.arraycopy(r, 0, ret, 2, r.length);
+    System.arraycopy(s, 0, ret, 2 + r.length, s.length);
+    return ret;
+  }
+
+  private static byte[] derInteger(byte[] concat, int offset) {
+    int start = offset;
+    int end = offset + ES256_PART_LENGTH;
+    while (start < end - 1 && concat[start] == 0) {
+      start++;
+    }
+    boolean pad = concat[start] < 0;
+    int length = end - start + (pad ? 1 : 0);
+    byte[] ret = new byte[2 + length];
+    ret[0] = 0x02;
+    ret[1] = (byte) length;
+    System.arraycopy(concat, start, ret, pad ? 3 : 2, end - start);
+    return ret;
+  }
+
+  // Just enough JSON for the flat claim objects written by sign(): string and integer values only
+  private static class JsonObjectParser {
+    private final String json;
+    private int pos;
+
+    JsonObjectParser(String json) {
+      this.json = json;
+    }
+
+    Map<String, Object> parse() {
+      Map<String, Object> ret = new HashMap<>();
+      if (!consume('{')) {
+        return null;
+      }
+      if (consume('}')) {
+        return ret;
+      }
+      do {
+        String key = string();
+        if (key == null || !consume(':')) {
+          return null;
+        }
+        Object value = peek() == '"' ? string() : number();
+        if (value == null) {
+          return null;
+        }
+        ret.put(key, value);
+      } while (consume(','));
+      return consume('}') && pos == json.length() ? ret : null;
+    }
+
+    private char peek() {
+      return pos < json.length() ? json.charAt(pos) : 0;
+    }
+
+    private boolean consume(char c) {
+      if (peek() == c) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+
+    private String string() {
+      if (!consume('"')) {
+        return null;
+      }
+      StringBuilder ret = new StringBuilder();
+      while (pos < json.length()) {
+        char c = json.charAt(pos++);
+        if (c == '"') {
+          return ret.toString();
+        }
+        if (c != '\\') {
+          ret.append(c);
+        } else if (pos < json.length()) {
+          char escaped = json.charAt(pos++);
+          switch (escaped) {
+            case 'u':
+              if (pos + 4 > json.length()) {
+                return null;
+              }
+              ret.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+              pos += 4;
+              break;
+            case 'n':
+              ret.append('\n');
+              break;
+            case 'r':
+              ret.append('\r');
+              break;
+            case 't':
+              ret.append('\t');
+              break;
+            case 'b':
+              ret.append('\b');
+              break;
+            case 'f':
+              ret.append('\f');
+              break;
+            default:
+              ret.append(escaped);
+          }
+        }
+      }
+      return null;
+    }
+
+    private Long number() {
+      int start = pos;
+      if (peek() == '-') {
+        pos++;
+      }
+      while (peek() >= '0' && peek() <= '9') {
+        pos++;
+      }
+      return pos == start ? null : Long.valueOf(json.substring(start, pos));
+    }
+  }
+
+}
@@ -0,0 +1,56 @@
+package com.etiennek.auth.core;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+// Generates random, URL-safe (unpadded Base64) tokens.
+// Every thread lazily creates and keeps its own seeded SecureRandom, so there is no provider lookup, reseeding or
+// lock contention per token.
+public class TokenGenerator {
+  public static final int DEFAULT_BYTE_LENGTH = 32;
+  public static final int MIN_BYTE_LENGTH = 16;
+
+  private static final TokenGenerator DEFAULT = new TokenGenerator(DEFAULT_BYTE_LENGTH);
+
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder()
+                                                      .withoutPadding();
+  private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(TokenGenerator::newSecureRandom);
+
+  private final int byteLength;
+
+  public TokenGenerator(int byteLength) {
+    if (byteLength < MIN_BYTE_LENGTH) {
+      throw new IllegalArgumentException("Tokens must contain at least " + MIN_BYTE_LENGTH + " random bytes.");
+    }
+    this.byteLength = byteLength;
+  }
+
+  public static TokenGenerator getDefault() {
+    return DEFAULT;
+  }
+
+  public int getByteLength() {
+    return byteLength;
+  }
+
+  public String generate() {
+    byte[] randomBytes = new byte[byteLength];
+    RANDOM.get()
+          .nextBytes(randomBytes);
+    return ENCODER.encodeToString(randomBytes);
+  }
+
+  private static SecureRandom newSecureRandom() {
+    SecureRandom ret;
+    try {
+      ret = SecureRandom.getInstance("SHA1PRNG");
+    } catch (NoSuchAlgorithmException e) {
+      ret = new SecureRandom();
+    }
+    // Force seeding now rather than on the first token
+    ret.nextBytes(new byte[1]);
+    return ret;
+  }
+
+}
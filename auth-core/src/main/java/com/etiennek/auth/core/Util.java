@@ -1,11 +1,20 @@
 package com.etiennek.auth.core;
 
-import java.util.Base64;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
 
 public class Util {
+  private static final byte[] BASE64_VALUES = new byte[128];
+  static {
+    Arrays.fill(BASE64_VALUES, (byte) -1);
+    String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    for (int i = 0; i < alphabet.length(); i++) {
+      BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+    }
+  }
 
   public static boolean isNullOrEmpty(Object[] arr) {
     return arr == null || arr.length == 0;
@@ -29,25 +38,91 @@ public class Util {
     return ret;
   }
 
+  // Parses "Basic base64(id:secret)" in a single pass: the Base64 payload is decoded straight from the header
+  // value and split on the decoded bytes. Like String.split(":"), trailing ':'s are dropped first, after which
+  // exactly one ':' and a non-empty secret are required.
   static Optional<String[]> getBasicAuthCredentialsHeader(String[] authHeaderValueArr) {
-    try {
-      String authHeaderValue = isNullOrEmpty(authHeaderValueArr) ? "" : authHeaderValueArr[0].trim();
-      if (!authHeaderValue.toLowerCase()
-                          .startsWith("basic ")) {
-        return Optional.empty();
-      }
-      authHeaderValue = authHeaderValue.substring(5)
-                                       .trim();
-      authHeaderValue = new String(Base64.getDecoder()
-                                         .decode(authHeaderValue));
-      String[] usernameAndPassword = authHeaderValue.split(":");
-      if (usernameAndPassword.length != 2) {
-        return Optional.empty();
+    return getBasicAuthCredentialsHeader(isNullOrEmpty(authHeaderValueArr) ? null : authHeaderValueArr[0]);
+  }
+
+  static Optional<String[]> getBasicAuthCredentialsHeader(String authHeaderValue) {
+    if (authHeaderValue == null) {
+      return Optional.empty();
+    }
+
+    int start = 0;
+    int end = authHeaderValue.length();
+    while (start < end && authHeaderValue.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && authHeaderValue.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    if (end - start < 6 || !authHeaderValue.regionMatches(true, start, "basic ", 0, 6)) {
+      return Optional.empty();
+    }
+    start += 6;
+    while (start < end && authHeaderValue.charAt(start) <= ' ') {
+      start++;
+    }
+
+    byte[] decoded = decodeBase64(authHeaderValue, start, end);
+    if (decoded == null) {
+      return Optional.empty();
+    }
+    int length = decoded.length;
+    while (length > 0 && decoded[length - 1] == ':') {
+      length--;
+    }
+    int separator = -1;
+    for (int i = 0; i < length; i++) {
+      if (decoded[i] == ':') {
+        if (separator >= 0) {
+          return Optional.empty();
+        }
+        separator = i;
       }
-      return Optional.of(usernameAndPassword);
-    } catch (RuntimeException e) {
+    }
+    if (separator < 0) {
       return Optional.empty();
     }
+    return Optional.of(new String[] {new String(decoded, 0, separator, StandardCharsets.UTF_8),
+        new String(decoded, separator + 1, length - separator - 1, StandardCharsets.UTF_8)});
+  }
+
+  // Decodes standard Base64 from a region of a String, returning null if it is malformed. Padding is optional, but
+  // when present it must complete the last group of four, as java.util.Base64 requires.
+  static byte[] decodeBase64(String src, int start, int end) {
+    int padded = end - start;
+    if (end > start && src.charAt(end - 1) == '=') {
+      end--;
+      if (end > start && src.charAt(end - 1) == '=') {
+        end--;
+      }
+    }
+    int length = end - start;
+    if (length == 0 || length % 4 == 1 || (padded > length && padded % 4 != 0)) {
+      return null;
+    }
+
+    byte[] ret = new byte[length / 4 * 3 + (length % 4 == 0 ? 0 : length % 4 - 1)];
+    int bits = 0;
+    int bitCount = 0;
+    int pos = 0;
+    for (int i = start; i < end; i++) {
+      char c = src.charAt(i);
+      int value = c < 128 ? BASE64_VALUES[c] : -1;
+      if (value < 0) {
+        return null;
+      }
+      bits = (bits << 6) | value;
+      bitCount += 6;
+      if (bitCount >= 8) {
+        bitCount -= 8;
+        ret[pos++] = (byte) (bits >> bitCount);
+      }
+    }
+    return ret;
   }
 
 }
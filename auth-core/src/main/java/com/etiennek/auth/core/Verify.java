@@ -1,19 +1,150 @@
 package com.etiennek.auth.core;
 
+import static com.etiennek.auth.core.Const.*;
+import static com.etiennek.auth.core.model.ErrorCode.*;
+import static com.etiennek.auth.core.Util.*;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import com.etiennek.auth.core.model.AccessToken;
 import com.etiennek.auth.core.model.RequiredFunctions;
+import com.etiennek.auth.core.model.func.GetAccessToken.GetAccessTokenRes;
+import com.etiennek.auth.core.resp.AuthorisedResponse;
 
+// Verifies the bearer token of a protected resource request, see RFC 6750
 public class Verify {
   private OAuth2ServerConfiguration config;
   private FormRequest request;
   private RequiredFunctions requiredFuncs;
 
+  private String bearerToken;
+
   Verify(OAuth2ServerConfiguration config, FormRequest request) {
     this.config = config;
     this.request = request;
     this.requiredFuncs = config.getFuncs()
                                .getRequired();
   }
-  
-  // TODO
+
+  CompletableFuture<Response> run() {
+    extractToken();
+    Optional<SignedTokenCodec> codec = config.getSignedAccessTokens();
+    if (codec.isPresent() && SignedTokenCodec.isSignedToken(bearerToken)) {
+      // Checked locally, a signed token that does not verify is never looked up
+      return CompletableFuture.completedFuture(checkToken(codec.get()
+                                                               .verify(bearerToken)));
+    }
+    CompletableFuture<GetAccessTokenRes> future = config.getFuncs()
+                                                        .getAccessTokenLookup()
+                                                        .getAccessToken(bearerToken);
+    if (future.isDone()) {
+      return CompletableFuture.completedFuture(checkToken(future.join()));
+    }
+    Optional<Executor> cpuExecutor = config.getCpuExecutor();
+    if (cpuExecutor.isPresent()) {
+      return future.thenApplyAsync(this::checkToken, cpuExecutor.get());
+    }
+    return future.thenApply(this::checkToken);
+  }
+
+  void extractToken() {
+    String headerToken = getBearerTokenHeader(request.getHeaderValue("Authorization"));
+    if (request.getBodyError() != null) {
+      throw new OAuth2Exception(INVALID_REQUEST, request.getBodyError());
+    }
+    String paramToken = request.getBodyParameter(KEY_ACCESS_TOKEN);
+
+    if (headerToken != null && paramToken != null) {
+      throw new OAuth2Exception(INVALID_REQUEST,
+          "Only one method may be used to authenticate at a time (Auth header, GET or POST).");
+    }
+
+    if (headerToken != null) {
+      bearerToken = headerToken;
+    } else if (paramToken != null) {
+      // A query parameter on GET, otherwise it has to be a form encoded body
+      if (!request.getMethod()
+                  .equalsIgnoreCase(METHOD_GET) && !isFormPost()) {
+        throw new OAuth2Exception(INVALID_REQUEST,
+            "Method must be POST with application/x-www-form-urlencoded encoding when the access token is in the body.");
+      }
+      bearerToken = paramToken;
+    } else {
+      throw new OAuth2Exception(INVALID_REQUEST, "The access token was not found.");
+    }
+
+    if (!isBearerToken(bearerToken)) {
+      throw new OAuth2Exception(INVALID_REQUEST, "Malformed access token.");
+    }
+  }
+
+  private Response checkToken(GetAccessTokenRes result) {
+    checkNotNull(result);
+    return checkToken(result.accessToken);
+  }
+
+  private Response checkToken(Optional<AccessToken> result) {
+    if (!result.isPresent()) {
+      throw new OAuth2Exception(INVALID_TOKEN, "The access token provided is invalid.");
+    }
+
+    AccessToken accessToken = result.get();
+    if (accessToken.hasExpired(requiredFuncs.getNow())) {
+      throw new OAuth2Exception(INVALID_TOKEN, "The access token provided has expired.");
+    }
+
+    return new AuthorisedResponse(accessToken);
+  }
+
+  private boolean isFormPost() {
+    return request.getMethod()
+                  .equalsIgnoreCase(METHOD_POST) && MEDIA_X_WWW_FORM_URLENCODED.equals(request.getHeaderValue(
+                      "Content-Type"));
+  }
+
+  // Returns the token of an "Authorization: Bearer <token>" header, or null if there is none
+  static String getBearerTokenHeader(String authHeaderValue) {
+    if (authHeaderValue == null) {
+      return null;
+    }
+
+    int start = 0;
+    int end = authHeaderValue.length();
+    while (start < end && authHeaderValue.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && authHeaderValue.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    if (end - start < 7 || !authHeaderValue.regionMatches(true, start, "bearer ", 0, 7)) {
+      return null;
+    }
+    start += 7;
+    while (start < end && authHeaderValue.charAt(start) <= ' ') {
+      start++;
+    }
+    return authHeaderValue.substring(start, end);
+  }
+
+  // b64token from section 2.1 of RFC 6750
+  static boolean isBearerToken(String token) {
+    int length = token.length();
+    while (length > 0 && token.charAt(length - 1) == '=') {
+      length--;
+    }
+    if (length == 0) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      char c = token.charAt(i);
+      if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '.'
+          || c == '_' || c == '~' || c == '+' || c == '/')) {
+        return false;
+      }
+    }
+    return true;
+  }
 
 }
@@ -0,0 +1,103 @@
+package com.etiennek.auth.core.cache;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.etiennek.auth.core.model.AccessToken;
+import com.etiennek.auth.core.model.func.GetAccessToken;
+import com.etiennek.auth.core.model.func.GetNow;
+
+// Caches GetAccessToken lookups. A found token is kept for at most timeToLive and never beyond its own expiry,
+// an unknown token is remembered for negativeTimeToLive (zero disables negative caching).
+// Revoked tokens must be passed to invalidate, lookups that were already in flight at that point are not cached.
+public class AccessTokenCache implements GetAccessToken {
+  private final GetAccessToken delegate;
+  private final GetNow clock;
+  private final Duration timeToLive;
+  private final Duration negativeTimeToLive;
+  private final BoundedCache<String, CompletableFuture<GetAccessTokenRes>> cache;
+  private final AtomicLong invalidations = new AtomicLong();
+
+  public AccessTokenCache(GetAccessToken delegate, GetNow clock, int maximumSize, Duration timeToLive,
+      Duration negativeTimeToLive) {
+    this.delegate = checkNotNull(delegate);
+    this.clock = checkNotNull(clock);
+    this.timeToLive = checkNotNull(timeToLive);
+    this.negativeTimeToLive = negativeTimeToLive == null ? Duration.ZERO : negativeTimeToLive;
+    this.cache = new BoundedCache<>(maximumSize);
+  }
+
+  @Override
+  public CompletableFuture<GetAccessTokenRes> getAccessToken(String bearerToken) {
+    CompletableFuture<GetAccessTokenRes> ret = cache.get(bearerToken, clock.getNow());
+    if (ret != null) {
+      return ret;
+    }
+
+    long invalidationsBefore = invalidations.get();
+    ret = delegate.getAccessToken(bearerToken);
+    if (ret.isDone()) {
+      store(bearerToken, ret, invalidationsBefore);
+    } else {
+      CompletableFuture<GetAccessTokenRes> pending = ret;
+      ret.thenRun(() -> store(bearerToken, pending, invalidationsBefore));
+    }
+    return ret;
+  }
+
+  public void invalidate(String bearerToken) {
+    invalidations.incrementAndGet();
+    cache.invalidate(bearerToken);
+  }
+
+  public void invalidateAll() {
+    invalidations.incrementAndGet();
+    cache.invalidateAll();
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  private void store(String bearerToken, CompletableFuture<GetAccessTokenRes> future, long invalidationsBefore) {
+    if (future.isCompletedExceptionally()) {
+      return;
+    }
+    GetAccessTokenRes result = future.join();
+    if (result == null) {
+      return;
+    }
+
+    LocalDateTime now = clock.getNow();
+    LocalDateTime expires;
+    if (result.accessToken.isPresent()) {
+      AccessToken accessToken = result.accessToken.get();
+      if (accessToken.hasExpired(now)) {
+        return;
+      }
+      expires = now.plus(timeToLive);
+      if (accessToken.getExpires() != null && accessToken.getExpires()
+                                                         .isBefore(expires)) {
+        expires = accessToken.getExpires();
+      }
+    } else {
+      if (negativeTimeToLive.isZero()) {
+        return;
+      }
+      expires = now.plus(negativeTimeToLive);
+    }
+
+    if (invalidations.get() != invalidationsBefore) {
+      return;
+    }
+    cache.put(bearerToken, future, expires, now);
+    if (invalidations.get() != invalidationsBefore) {
+      cache.invalidate(bearerToken);
+    }
+  }
+
+}
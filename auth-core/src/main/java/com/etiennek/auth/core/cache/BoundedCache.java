@@ -0,0 +1,153 @@
+package com.etiennek.auth.core.cache;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// A size bounded, concurrent cache whose entries each carry their own expiry time.
+// Reads never lock. When full, the oldest entry is the eviction candidate and a new entry is only admitted if it
+// has been requested more often than that candidate (TinyLFU), which keeps one-off keys from flushing out popular
+// ones. Expired entries stay in place until they are replaced or reach the front of the eviction queue.
+// Invalidating only marks a key's queue node as retired, eviction skips it. Retired nodes are swept out in one pass
+// once there are more of them than the cache holds entries.
+class BoundedCache<K, V> {
+
+  private static class Entry<V> {
+    final V value;
+    final LocalDateTime expires;
+
+    Entry(V value, LocalDateTime expires) {
+      this.value = value;
+      this.expires = expires;
+    }
+
+    boolean hasExpired(LocalDateTime now) {
+      return expires.isBefore(now);
+    }
+  }
+
+  // A key's place in the eviction queue. Replacing a value swaps the entry and keeps the place.
+  private static class Node<K, V> {
+    final K key;
+    volatile Entry<V> entry;
+    // Guarded by evictionLock
+    boolean retired;
+
+    Node(K key, Entry<V> entry) {
+      this.key = key;
+      this.entry = entry;
+    }
+  }
+
+  private final Map<K, Node<K, V>> map = new ConcurrentHashMap<>();
+  private final Queue<Node<K, V>> evictionQueue = new ConcurrentLinkedQueue<>();
+  private final Object evictionLock = new Object();
+  private final FrequencySketch sketch;
+  private final int maximumSize;
+  // Guarded by evictionLock
+  private int retired;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  BoundedCache(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("The maximum size of a cache must be positive.");
+    }
+    this.maximumSize = maximumSize;
+    this.sketch = new FrequencySketch(maximumSize);
+  }
+
+  V get(K key, LocalDateTime now) {
+    sketch.increment(key);
+    Entry<V> entry = entry(key);
+    if (entry == null || entry.hasExpired(now)) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return entry.value;
+  }
+
+  // Returns the entry without counting a hit or miss, or null if there is no live entry
+  V peek(K key, LocalDateTime now) {
+    Entry<V> entry = entry(key);
+    return entry == null || entry.hasExpired(now) ? null : entry.value;
+  }
+
+  void put(K key, V value, LocalDateTime expires, LocalDateTime now) {
+    Entry<V> entry = new Entry<>(value, expires);
+    Node<K, V> node = map.get(key);
+    if (node != null) {
+      node.entry = entry;
+      return;
+    }
+
+    synchronized (evictionLock) {
+      while (map.size() >= maximumSize) {
+        Node<K, V> victim = evictionQueue.poll();
+        if (victim == null) {
+          break;
+        }
+        if (victim.retired) {
+          retired--;
+          continue;
+        }
+        if (!victim.entry.hasExpired(now) && sketch.frequency(key) <= sketch.frequency(victim.key)) {
+          // The candidate is not popular enough, keep the victim and give it another round
+          evictionQueue.add(victim);
+          return;
+        }
+        map.remove(victim.key);
+        evictions.increment();
+      }
+      node = new Node<>(key, entry);
+      Node<K, V> existing = map.putIfAbsent(key, node);
+      if (existing == null) {
+        evictionQueue.add(node);
+      } else {
+        existing.entry = entry;
+      }
+    }
+  }
+
+  void invalidate(K key) {
+    synchronized (evictionLock) {
+      Node<K, V> node = map.remove(key);
+      if (node == null) {
+        return;
+      }
+      node.retired = true;
+      if (++retired > maximumSize) {
+        evictionQueue.removeIf((n) -> n.retired);
+        retired = 0;
+      }
+    }
+  }
+
+  void invalidateAll() {
+    synchronized (evictionLock) {
+      map.clear();
+      evictionQueue.clear();
+      retired = 0;
+    }
+  }
+
+  private Entry<V> entry(K key) {
+    Node<K, V> node = map.get(key);
+    return node == null ? null : node.entry;
+  }
+
+  int size() {
+    return map.size();
+  }
+
+  CacheStats stats() {
+    return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), map.size());
+  }
+
+}
@@ -0,0 +1,195 @@
+package com.etiennek.auth.core.cache;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.etiennek.auth.core.model.Client;
+import com.etiennek.auth.core.model.func.GetClient;
+import com.etiennek.auth.core.model.func.GetNow;
+import com.etiennek.auth.core.model.func.IsGrantTypeAllowed;
+
+// Caches GetClient and IsGrantTypeAllowed lookups per client id.
+// The client secret is never kept, only an HMAC of it under a key that is random per cache instance, and the cached
+// Client is stripped of its secret. A cached client is only returned for a request presenting the same secret,
+// any other secret goes to the delegate. Entries live for timeToLive. Once an entry is older than refreshAfter,
+// the next request still gets the cached entry while the client and its known grant types are reloaded.
+public class ClientCache implements GetClient, IsGrantTypeAllowed {
+  private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+  private static class Entry {
+    final byte[] secretHash;
+    final CompletableFuture<GetClientRes> client;
+    final Map<String, CompletableFuture<IsGrantTypeAllowedRes>> grantTypes;
+    final LocalDateTime refreshAt;
+    final AtomicBoolean refreshing = new AtomicBoolean();
+
+    Entry(byte[] secretHash, Client client, Map<String, CompletableFuture<IsGrantTypeAllowedRes>> grantTypes,
+        LocalDateTime refreshAt) {
+      this.secretHash = secretHash;
+      this.client = CompletableFuture.completedFuture(new GetClientRes(Optional.of(new Client(client.getId(), null))));
+      this.grantTypes = grantTypes;
+      this.refreshAt = refreshAt;
+    }
+  }
+
+  private final GetClient clientDelegate;
+  private final IsGrantTypeAllowed grantTypeDelegate;
+  private final GetNow clock;
+  private final Duration timeToLive;
+  private final Duration refreshAfter;
+  private final BoundedCache<String, Entry> cache;
+  private final AtomicLong invalidations = new AtomicLong();
+  private final ThreadLocal<Mac> mac;
+
+  public ClientCache(GetClient clientDelegate, IsGrantTypeAllowed grantTypeDelegate, GetNow clock, int maximumSize,
+      Duration timeToLive, Duration refreshAfter) {
+    this.clientDelegate = checkNotNull(clientDelegate);
+    this.grantTypeDelegate = checkNotNull(grantTypeDelegate);
+    this.clock = checkNotNull(clock);
+    this.timeToLive = checkNotNull(timeToLive);
+    this.refreshAfter = refreshAfter == null || refreshAfter.compareTo(timeToLive) > 0 ? timeToLive : refreshAfter;
+    this.cache = new BoundedCache<>(maximumSize);
+
+    byte[] key = new byte[32];
+    new SecureRandom().nextBytes(key);
+    SecretKeySpec keySpec = new SecretKeySpec(key, HMAC_ALGORITHM);
+    this.mac = ThreadLocal.withInitial(() -> {
+      try {
+        Mac ret = Mac.getInstance(HMAC_ALGORITHM);
+        ret.init(keySpec);
+        return ret;
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+  }
+
+  @Override
+  public CompletableFuture<GetClientRes> getClient(String clientId, String clientSecret) {
+    LocalDateTime now = clock.getNow();
+    byte[] secretHash = hash(clientSecret);
+    Entry entry = cache.get(clientId, now);
+    if (entry != null && MessageDigest.isEqual(entry.secretHash, secretHash)) {
+      if (!now.isBefore(entry.refreshAt) && entry.refreshing.compareAndSet(false, true)) {
+        refresh(clientId, clientSecret, entry);
+      }
+      return entry.client;
+    }
+
+    long invalidationsBefore = invalidations.get();
+    CompletableFuture<GetClientRes> ret = clientDelegate.getClient(clientId, clientSecret);
+    ret.thenAccept((result) -> {
+      if (result != null && result.client.isPresent()) {
+        store(clientId, new Entry(secretHash, result.client.get(), new ConcurrentHashMap<>(), nextRefresh()),
+            invalidationsBefore);
+      }
+    });
+    return ret;
+  }
+
+  @Override
+  public CompletableFuture<IsGrantTypeAllowedRes> isGrantTypeAllowed(String clientId, String grantType) {
+    // getClient already counted this grant's lookup of the client
+    Entry entry = cache.peek(clientId, clock.getNow());
+    if (entry != null) {
+      CompletableFuture<IsGrantTypeAllowedRes> cached = entry.grantTypes.get(grantType);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
+    long invalidationsBefore = invalidations.get();
+    CompletableFuture<IsGrantTypeAllowedRes> ret = grantTypeDelegate.isGrantTypeAllowed(clientId, grantType);
+    if (entry != null) {
+      ret.thenAccept((result) -> {
+        if (result != null && invalidations.get() == invalidationsBefore) {
+          entry.grantTypes.put(grantType, CompletableFuture.completedFuture(result));
+        }
+      });
+    }
+    return ret;
+  }
+
+  public void invalidate(String clientId) {
+    invalidations.incrementAndGet();
+    cache.invalidate(clientId);
+  }
+
+  public void invalidateAll() {
+    invalidations.incrementAndGet();
+    cache.invalidateAll();
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  private void refresh(String clientId, String clientSecret, Entry entry) {
+    long invalidationsBefore = invalidations.get();
+    Map<String, CompletableFuture<IsGrantTypeAllowedRes>> grantTypes = new ConcurrentHashMap<>();
+    List<CompletableFuture<?>> lookups = new ArrayList<>();
+    for (String grantType : entry.grantTypes.keySet()) {
+      lookups.add(grantTypeDelegate.isGrantTypeAllowed(clientId, grantType)
+                                   .thenAccept((result) -> {
+                                     if (result != null) {
+                                       grantTypes.put(grantType, CompletableFuture.completedFuture(result));
+                                     }
+                                   }));
+    }
+    CompletableFuture<GetClientRes> client = clientDelegate.getClient(clientId, clientSecret);
+    lookups.add(client);
+
+    CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0]))
+                     .whenComplete((v, e) -> {
+                       GetClientRes result = e == null ? client.join() : null;
+                       if (result == null) {
+                         // Keep serving the current entry and retry on a later request
+                         entry.refreshing.set(false);
+                       } else if (!result.client.isPresent()) {
+                         invalidate(clientId);
+                       } else {
+                         store(clientId, new Entry(entry.secretHash, result.client.get(), grantTypes, nextRefresh()),
+                             invalidationsBefore);
+                       }
+                     });
+  }
+
+  private void store(String clientId, Entry entry, long invalidationsBefore) {
+    if (invalidations.get() != invalidationsBefore) {
+      return;
+    }
+    LocalDateTime now = clock.getNow();
+    cache.put(clientId, entry, now.plus(timeToLive), now);
+    if (invalidations.get() != invalidationsBefore) {
+      cache.invalidate(clientId);
+    }
+  }
+
+  private LocalDateTime nextRefresh() {
+    return clock.getNow()
+                .plus(refreshAfter);
+  }
+
+  private byte[] hash(String clientSecret) {
+    return mac.get()
+              .doFinal(clientSecret.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
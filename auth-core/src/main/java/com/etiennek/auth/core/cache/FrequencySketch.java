@@ -0,0 +1,79 @@
+package com.etiennek.auth.core.cache;
+
+// Approximate access frequencies for TinyLFU admission: a count-min sketch of four rows of 4-bit counters that
+// are all halved once enough accesses have been recorded, so that old popularity ages out.
+// Updates are deliberately not atomic, a lost increment only makes an estimate slightly lower. Each increment checks
+// and adds to the same read of its long, so a race can lose it but never carry a saturated counter into the next.
+class FrequencySketch {
+  private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+      0xcbf29ce484222325L};
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  private final long[] table;
+  private final int tableMask;
+  private final int sampleSize;
+  private int additions;
+
+  FrequencySketch(int maximumSize) {
+    // Four longs (64 counters) per entry keeps collisions rare enough for the admission decision
+    int size = Integer.highestOneBit(Math.max(maximumSize, 16) * 4 - 1) << 1;
+    table = new long[size];
+    tableMask = size - 1;
+    sampleSize = 10 * Math.max(maximumSize, 16);
+  }
+
+  int frequency(Object key) {
+    int hash = spread(key.hashCode());
+    int ret = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      ret = Math.min(ret, counter(hash, i));
+    }
+    return ret;
+  }
+
+  void increment(Object key) {
+    int hash = spread(key.hashCode());
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      int index = index(hash, i);
+      int offset = offset(hash, i);
+      long value = table[index];
+      if (((value >>> offset) & 0xfL) != 0xfL) {
+        table[index] = value + (1L << offset);
+        added = true;
+      }
+    }
+    if (added && ++additions >= sampleSize) {
+      reset();
+    }
+  }
+
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    additions /= 2;
+  }
+
+  private int counter(int hash, int row) {
+    return (int) ((table[index(hash, row)] >>> offset(hash, row)) & 0xfL);
+  }
+
+  private int index(int hash, int row) {
+    long h = (hash + SEEDS[row]) * SEEDS[row];
+    h += h >>> 32;
+    return (int) h & tableMask;
+  }
+
+  // Each row uses its own group of four counters within a long
+  private static int offset(int hash, int row) {
+    return ((row << 2) + ((hash >>> (row << 3)) & 3)) << 2;
+  }
+
+  private static int spread(int hash) {
+    hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+    hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+    return (hash >>> 16) ^ hash;
+  }
+
+}
@@ -0,0 +1,94 @@
+package com.etiennek.auth.core.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.etiennek.auth.core.cache.CacheStats;
+import com.etiennek.auth.core.model.ErrorCode;
+
+// Keeps counts and latency histograms in memory, without any dependencies. Read them with snapshot().
+public class DefaultMetrics implements OAuth2Metrics {
+  // Grants that did not name a supported grant type
+  public static final String UNKNOWN_GRANT_TYPE = "unknown";
+
+  private final Map<String, LatencyHistogram> grants = new ConcurrentHashMap<>();
+  private final LatencyHistogram[] stages = new LatencyHistogram[GrantStage.values().length];
+  private final LatencyHistogram verify = new LatencyHistogram();
+  private final LongAdder[] errors = new LongAdder[ErrorCode.values().length];
+  private final LongAdder rateLimited = new LongAdder();
+  private final Map<String, Supplier<CacheStats>> caches = new ConcurrentHashMap<>();
+
+  public DefaultMetrics() {
+    for (int i = 0; i < stages.length; i++) {
+      stages[i] = new LatencyHistogram();
+    }
+    for (int i = 0; i < errors.length; i++) {
+      errors[i] = new LongAdder();
+    }
+  }
+
+  @Override
+  public void recordGrant(String grantType, long nanos) {
+    String key = grantType == null ? UNKNOWN_GRANT_TYPE : grantType;
+    LatencyHistogram histogram = grants.get(key);
+    if (histogram == null) {
+      histogram = grants.computeIfAbsent(key, (k) -> new LatencyHistogram());
+    }
+    histogram.record(nanos);
+  }
+
+  @Override
+  public void recordStage(GrantStage stage, long nanos) {
+    stages[stage.ordinal()].record(nanos);
+  }
+
+  @Override
+  public void recordVerify(long nanos) {
+    verify.record(nanos);
+  }
+
+  @Override
+  public void recordError(ErrorCode errorCode) {
+    errors[errorCode.ordinal()].increment();
+  }
+
+  @Override
+  public void recordRateLimited() {
+    rateLimited.increment();
+  }
+
+  @Override
+  public void registerCache(String name, Supplier<CacheStats> stats) {
+    caches.put(name, stats);
+  }
+
+  public MetricsSnapshot snapshot() {
+    Map<String, LatencySnapshot> grantSnapshots = new LinkedHashMap<>();
+    for (Map.Entry<String, LatencyHistogram> entry : grants.entrySet()) {
+      grantSnapshots.put(entry.getKey(), entry.getValue()
+                                              .snapshot());
+    }
+    Map<GrantStage, LatencySnapshot> stageSnapshots = new EnumMap<>(GrantStage.class);
+    for (GrantStage stage : GrantStage.values()) {
+      stageSnapshots.put(stage, stages[stage.ordinal()].snapshot());
+    }
+    Map<ErrorCode, Long> errorCounts = new EnumMap<>(ErrorCode.class);
+    for (ErrorCode errorCode : ErrorCode.values()) {
+      errorCounts.put(errorCode, errors[errorCode.ordinal()].sum());
+    }
+    Map<String, CacheStats> cacheStats = new LinkedHashMap<>();
+    for (Map.Entry<String, Supplier<CacheStats>> entry : caches.entrySet()) {
+      cacheStats.put(entry.getKey(), entry.getValue()
+                                          .get());
+    }
+    return new MetricsSnapshot(Collections.unmodifiableMap(grantSnapshots), Collections.unmodifiableMap(
+        stageSnapshots), verify.snapshot(), Collections.unmodifiableMap(errorCounts), rateLimited.sum(),
+        Collections.unmodifiableMap(cacheStats));
+  }
+
+}
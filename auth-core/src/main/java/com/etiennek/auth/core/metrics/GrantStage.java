@@ -0,0 +1,8 @@
+package com.etiennek.auth.core.metrics;
+
+// The steps of a grant, in the order they run. With a SaveTokens function both tokens are saved in one step,
+// SAVE_TOKENS, after the refresh token is generated, instead of SAVE_ACCESS_TOKEN and SAVE_REFRESH_TOKEN.
+public enum GrantStage {
+  CHECK_CLIENT, CHECK_GRANT_TYPE_ALLOWED, CHECK_GRANT_TYPE, REVOKE_REFRESH_TOKEN, GENERATE_ACCESS_TOKEN,
+  SAVE_ACCESS_TOKEN, GENERATE_REFRESH_TOKEN, SAVE_REFRESH_TOKEN, SAVE_TOKENS;
+}
@@ -0,0 +1,60 @@
+package com.etiennek.auth.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// A lock-free histogram of durations in nanoseconds with log-linear buckets, in the manner of HdrHistogram.
+// Every power of two is split into SUB_BUCKETS linear buckets, so a recorded value is known to within 1/16
+// (6.25%) whatever its magnitude, with a fixed footprint of under 8 KiB.
+public class LatencyHistogram {
+  static final int SUB_BUCKET_BITS = 4;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder total = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts.incrementAndGet(index(nanos));
+    total.add(nanos);
+    long currentMax = max.get();
+    while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+      currentMax = max.get();
+    }
+  }
+
+  // Not an atomic view, a value recorded during the snapshot may be missing from some of its figures
+  public LatencySnapshot snapshot() {
+    long[] copy = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      copy[i] = counts.get(i);
+      count += copy[i];
+    }
+    return new LatencySnapshot(copy, count, total.sum(), max.get());
+  }
+
+  static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  // The smallest value that falls into a bucket
+  static long lowerBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+  }
+
+}
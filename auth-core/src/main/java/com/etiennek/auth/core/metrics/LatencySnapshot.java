@@ -0,0 +1,63 @@
+package com.etiennek.auth.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+public class LatencySnapshot {
+  private final long[] counts;
+  private final long count;
+  private final long totalNanos;
+  private final long maxNanos;
+
+  LatencySnapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+    this.counts = counts;
+    this.count = count;
+    this.totalNanos = totalNanos;
+    this.maxNanos = maxNanos;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  public double getMeanNanos() {
+    return count == 0 ? 0 : (double) totalNanos / count;
+  }
+
+  // The duration that the given percentage (0 to 100) of the recorded values did not exceed, as the upper bound
+  // of its bucket
+  public long getNanosAtPercentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        long upper = i + 1 < LatencyHistogram.BUCKETS ? LatencyHistogram.lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+        return Math.min(upper, maxNanos);
+      }
+    }
+    return maxNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "LatencySnapshot [count=" + count + ", meanMicros=" + micros((long) getMeanNanos()) + ", p50Micros="
+        + micros(getNanosAtPercentile(50)) + ", p99Micros=" + micros(getNanosAtPercentile(99)) + ", maxMicros="
+        + micros(maxNanos) + "]";
+  }
+
+  private static long micros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+
+}
@@ -0,0 +1,59 @@
+package com.etiennek.auth.core.metrics;
+
+import java.util.Map;
+
+import com.etiennek.auth.core.cache.CacheStats;
+import com.etiennek.auth.core.model.ErrorCode;
+
+public class MetricsSnapshot {
+  private final Map<String, LatencySnapshot> grants;
+  private final Map<GrantStage, LatencySnapshot> stages;
+  private final LatencySnapshot verify;
+  private final Map<ErrorCode, Long> errors;
+  private final long rateLimited;
+  private final Map<String, CacheStats> caches;
+
+  MetricsSnapshot(Map<String, LatencySnapshot> grants, Map<GrantStage, LatencySnapshot> stages,
+      LatencySnapshot verify, Map<ErrorCode, Long> errors, long rateLimited, Map<String, CacheStats> caches) {
+    this.grants = grants;
+    this.stages = stages;
+    this.verify = verify;
+    this.errors = errors;
+    this.rateLimited = rateLimited;
+    this.caches = caches;
+  }
+
+  // Per grant type, the count of which is the number of requests
+  public Map<String, LatencySnapshot> getGrants() {
+    return grants;
+  }
+
+  public Map<GrantStage, LatencySnapshot> getStages() {
+    return stages;
+  }
+
+  public LatencySnapshot getVerify() {
+    return verify;
+  }
+
+  public Map<ErrorCode, Long> getErrors() {
+    return errors;
+  }
+
+  // Grants shed with 429, which are not counted in getErrors()
+  public long getRateLimited() {
+    return rateLimited;
+  }
+
+  // Per configured cache, by the names in OAuth2Metrics
+  public Map<String, CacheStats> getCaches() {
+    return caches;
+  }
+
+  @Override
+  public String toString() {
+    return "MetricsSnapshot [grants=" + grants + ", stages=" + stages + ", verify=" + verify + ", errors=" + errors
+        + ", rateLimited=" + rateLimited + ", caches=" + caches + "]";
+  }
+
+}
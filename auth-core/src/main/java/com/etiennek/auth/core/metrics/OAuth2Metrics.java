@@ -0,0 +1,38 @@
+package com.etiennek.auth.core.metrics;
+
+import java.util.function.Supplier;
+
+import com.etiennek.auth.core.cache.CacheStats;
+import com.etiennek.auth.core.model.ErrorCode;
+
+// Receives the timings and errors of the token and verify endpoints. Called on the request path, so
+// implementations must be thread safe and should not block. Nothing is measured when no metrics are configured.
+public interface OAuth2Metrics {
+  // The names caches are registered under
+  String ACCESS_TOKEN_CACHE = "accessToken";
+  String CLIENT_CACHE = "client";
+
+  // A grant request has been answered, successfully or not. The grant type is null when the request did not
+  // name a supported one.
+  void recordGrant(String grantType, long nanos);
+
+  // A step of a grant that did work, from calling the function to handling its result. Steps a grant skips, such
+  // as revoking a refresh token in a password grant, are not recorded.
+  void recordStage(GrantStage stage, long nanos);
+
+  // A verify request has been answered, successfully or not
+  void recordVerify(long nanos);
+
+  // An error response was sent by either endpoint
+  void recordError(ErrorCode errorCode);
+
+  // A grant was shed with 429 by a rate limiter. Load shedding rather than an error, so not passed to recordError.
+  default void recordRateLimited() {
+  }
+
+  // A cache was configured, once per cache when the configuration is built. The cache keeps its own statistics,
+  // stats reads them whenever they are wanted.
+  default void registerCache(String name, Supplier<CacheStats> stats) {
+  }
+
+}
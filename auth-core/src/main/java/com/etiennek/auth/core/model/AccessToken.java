@@ -22,6 +22,22 @@ public class AccessToken {
     this.expires = expires;
   }
 
+  public String getToken() {
+    return token;
+  }
+
+  public String getClientId() {
+    return clientId;
+  }
+
+  public String getUserId() {
+    return userId;
+  }
+
+  public LocalDateTime getExpires() {
+    return expires;
+  }
+
   public boolean hasExpired(LocalDateTime now) {
     return expires != null && expires.isBefore(now);
   }
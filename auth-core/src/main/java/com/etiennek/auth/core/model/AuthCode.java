@@ -15,6 +15,10 @@ public class AuthCode {
     this.expires = checkNotNull(expires);
   }
 
+  public LocalDateTime getExpires() {
+    return expires;
+  }
+
   public boolean hasExpired(LocalDateTime now) {
     return expires.isBefore(now);
   }
@@ -0,0 +1,62 @@
+package com.etiennek.auth.core.model;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import com.etiennek.auth.core.TokenGenerator;
+import com.etiennek.auth.core.model.func.GenerateToken.GenerateTokenRes;
+import com.etiennek.auth.core.model.func.GetAccessToken.GetAccessTokenRes;
+import com.etiennek.auth.core.model.func.GetAuthCode.GetAuthCodeRes;
+import com.etiennek.auth.core.model.func.GetClient.GetClientRes;
+import com.etiennek.auth.core.model.func.GetRefreshToken.GetRefreshTokenRes;
+import com.etiennek.auth.core.model.func.GetUser.GetUserRes;
+import com.etiennek.auth.core.model.func.GetUserFromClient.GetUserFromClientRes;
+import com.etiennek.auth.core.model.func.IsGrantTypeAllowed.IsGrantTypeAllowedRes;
+
+// The same functions as RequiredFunctions, for stores that block, such as plain JDBC. The server calls them on the
+// executor given to OAuth2ServerConfiguration.Builder.withBlockingExecutor instead of expecting a future.
+public final class BlockingFunctions {
+
+  private BlockingFunctions() {
+  }
+
+  public interface Required {
+    GetAccessTokenRes getAccessToken(String bearerToken);
+
+    GetClientRes getClient(String clientId, String clientSecret);
+
+    IsGrantTypeAllowedRes isGrantTypeAllowed(String clientId, String grantType);
+
+    void saveAccessToken(String accessToken, String clientId, String userId, Optional<LocalDateTime> expires);
+
+    default GenerateTokenRes generateToken(TokenType tokenType) {
+      return new GenerateTokenRes(TokenGenerator.getDefault()
+                                                .generate());
+    }
+
+    default LocalDateTime getNow() {
+      return LocalDateTime.now();
+    }
+  }
+
+  public interface AuthCodeGrantType {
+    GetAuthCodeRes getAuthCode(String authCode);
+  }
+
+  public interface PasswordGrantType {
+    GetUserRes getUser(String username, String password);
+  }
+
+  public interface ClientCredentialsGrantType {
+    GetUserFromClientRes getUserFromClient(String clientId, String clientSecret);
+  }
+
+  public interface RefreshTokenGrantType {
+    void saveRefreshToken(String refreshToken, String clientId, String userId, Optional<LocalDateTime> expires);
+
+    GetRefreshTokenRes getRefreshToken(String refreshToken);
+
+    void revokeRefreshToken(String refreshToken);
+  }
+
+}
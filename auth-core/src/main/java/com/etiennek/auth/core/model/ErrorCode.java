@@ -2,7 +2,8 @@ package com.etiennek.auth.core.model;
 
 public enum ErrorCode {
   INVALID_REQUEST(400), UNAUTHORIZED_CLIENT(401), ACCESS_DENIED(401), UNSUPPORTED_RESPONSE_TYPE(415), INVALID_SCOPE(400), SERVER_ERROR(
-      500), TEMPORARILY_UNAVAILABLE(503), INVALID_CLIENT(401), INVALID_GRANT(400), UNSUPPORTED_GRANT_TYPE(400);
+      500), TEMPORARILY_UNAVAILABLE(503), INVALID_CLIENT(401), INVALID_GRANT(400), UNSUPPORTED_GRANT_TYPE(400),
+  INVALID_TOKEN(401);
 
   private int httpCode;
 
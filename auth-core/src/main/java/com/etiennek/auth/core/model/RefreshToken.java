@@ -27,6 +27,10 @@ public class RefreshToken {
     return userId;
   }
 
+  public LocalDateTime getExpires() {
+    return expires;
+  }
+
   public boolean hasExpired(LocalDateTime now) {
     return expires != null && expires.isBefore(now);
   }
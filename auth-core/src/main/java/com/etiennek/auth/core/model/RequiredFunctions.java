@@ -1,11 +1,9 @@
 package com.etiennek.auth.core.model;
 
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.time.LocalDateTime;
-import java.util.Base64;
 import java.util.concurrent.CompletableFuture;
 
+import com.etiennek.auth.core.TokenGenerator;
 import com.etiennek.auth.core.model.func.*;
 
 public interface RequiredFunctions extends GetAccessToken, GetClient, IsGrantTypeAllowed, SaveAccessToken,
@@ -16,17 +14,8 @@ public interface RequiredFunctions extends GetAccessToken, GetClient, IsGrantTyp
   }
 
   default CompletableFuture<GenerateTokenRes> generateToken(TokenType tokenType) {
-    CompletableFuture<GenerateTokenRes> ret = new CompletableFuture<>();
-    try {
-      byte[] randomBytes = new byte[32];
-      SecureRandom secureRandom = SecureRandom.getInstance("SHA1PRNG");
-      secureRandom.nextBytes(randomBytes);
-      ret.complete(new GenerateTokenRes(Base64.getEncoder()
-                                              .encodeToString(randomBytes)));
-    } catch (NoSuchAlgorithmException e) {
-      ret.completeExceptionally(e);
-    }
-    return ret;
+    return CompletableFuture.completedFuture(new GenerateTokenRes(TokenGenerator.getDefault()
+                                                                                .generate()));
   }
 
   public interface AuthCodeGrantType extends GetAuthCode {
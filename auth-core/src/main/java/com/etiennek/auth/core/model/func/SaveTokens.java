@@ -0,0 +1,33 @@
+package com.etiennek.auth.core.model.func;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+// Saves the access token, and the refresh token if one was issued, of one or more grants in a single call.
+// Signed access tokens are not saved, such a grant only has its refresh token saved.
+@FunctionalInterface
+public interface SaveTokens {
+  CompletableFuture<Void> saveTokens(List<SaveTokensReq> tokens);
+
+
+  public class SaveTokensReq {
+    public final Optional<String> accessToken;
+    public final Optional<LocalDateTime> accessTokenExpires;
+    public final Optional<String> refreshToken;
+    public final Optional<LocalDateTime> refreshTokenExpires;
+    public final String clientId;
+    public final String userId;
+
+    public SaveTokensReq(Optional<String> accessToken, Optional<LocalDateTime> accessTokenExpires, Optional<String> refreshToken,
+        Optional<LocalDateTime> refreshTokenExpires, String clientId, String userId) {
+      this.accessToken = accessToken == null ? Optional.empty() : accessToken;
+      this.accessTokenExpires = accessTokenExpires == null ? Optional.empty() : accessTokenExpires;
+      this.refreshToken = refreshToken == null ? Optional.empty() : refreshToken;
+      this.refreshTokenExpires = refreshTokenExpires == null ? Optional.empty() : refreshTokenExpires;
+      this.clientId = clientId;
+      this.userId = userId;
+    }
+  }
+}
@@ -2,6 +2,9 @@ package com.etiennek.auth.core.resp;
 
 import static com.etiennek.auth.core.Util.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -10,6 +13,8 @@ import java.util.Optional;
 import com.etiennek.auth.core.Const;
 import com.etiennek.auth.core.Response;
 
+// The JSON body is written straight to UTF-8 bytes from pre-encoded fragments. The String form is only built when
+// getBody() is called.
 public class AccessTokenResponse extends Response {
   private static final Map<String, String[]> header = new LinkedHashMap<>();
   static {
@@ -18,30 +23,136 @@ public class AccessTokenResponse extends Response {
     header.put("Pragma", new String[] {"no-cache"});
   }
 
+  private static final byte[] ACCESS_TOKEN = ascii("{\"access_token\":\"");
+  private static final byte[] TOKEN_TYPE = ascii("\",\"token_type\":\"bearer\"");
+  private static final byte[] EXPIRES_IN = ascii(",\"expires_in\":");
+  private static final byte[] REFRESH_TOKEN = ascii(",\"refresh_token\":\"");
+  private static final byte[] HEX = ascii("0123456789abcdef");
+
+  private final String accessToken;
+  private final Optional<Duration> accessTokenLifetime;
+  private final Optional<String> refreshToken;
+
+  private String body;
+
   public AccessTokenResponse(String accessToken, Optional<Duration> accessTokenLifetime, Optional<String> refreshToken) {
-    super(200, header, generateBody(accessToken, accessTokenLifetime, refreshToken));
+    super(200, header);
+    this.accessToken = checkNotNull(accessToken);
+    this.accessTokenLifetime = accessTokenLifetime == null ? Optional.empty() : accessTokenLifetime;
+    this.refreshToken = refreshToken == null ? Optional.empty() : refreshToken;
+  }
+
+  @Override
+  public String getBody() {
+    if (body == null) {
+      byte[] bytes = new byte[maxBodyLength()];
+      body = new String(bytes, 0, encodeBody(bytes), StandardCharsets.UTF_8);
+    }
+    return body;
   }
 
-  private static String generateBody(String accessToken, Optional<Duration> accessTokenLifetime,
-      Optional<String> refreshToken) {
-    checkNotNull(accessToken);
+  @Override
+  public void writeBody(OutputStream out) throws IOException {
+    // Encoded into one array and written with a single call rather than byte by byte
+    byte[] bytes = new byte[maxBodyLength()];
+    out.write(bytes, 0, encodeBody(bytes));
+  }
+
+  private int maxBodyLength() {
+    // A char takes at most 6 bytes (an escaped control character), a surrogate pair 4 bytes and a long 20 digits
+    int ret = ACCESS_TOKEN.length + accessToken.length() * 6 + TOKEN_TYPE.length + EXPIRES_IN.length + 20 + 1;
+    if (refreshToken.isPresent()) {
+      ret += REFRESH_TOKEN.length + refreshToken.get()
+                                                .length() * 6 + 1;
+    }
+    return ret;
+  }
 
-    StringBuilder body = new StringBuilder();
-    body.append("{\"access_token\":\"")
-        .append(accessToken)
-        .append("\",\"token_type\":\"bearer\"");
-    if (accessTokenLifetime != null && accessTokenLifetime.isPresent()) {
-      body.append(",\"expires_in\":")
-          .append(accessTokenLifetime.get()
-                                     .getSeconds());
+  private int encodeBody(byte[] dest) {
+    int pos = put(dest, 0, ACCESS_TOKEN);
+    pos = putJsonString(dest, pos, accessToken);
+    pos = put(dest, pos, TOKEN_TYPE);
+    if (accessTokenLifetime.isPresent()) {
+      pos = put(dest, pos, EXPIRES_IN);
+      pos = putLong(dest, pos, accessTokenLifetime.get()
+                                                  .getSeconds());
     }
-    if (refreshToken != null && refreshToken.isPresent()) {
-      body.append(",\"refresh_token\":\"")
-          .append(refreshToken.get())
-          .append("\"");
+    if (refreshToken.isPresent()) {
+      pos = put(dest, pos, REFRESH_TOKEN);
+      pos = putJsonString(dest, pos, refreshToken.get());
+      dest[pos++] = '"';
     }
-    body.append("}");
-    return body.toString();
+    dest[pos++] = '}';
+    return pos;
+  }
+
+  private static int put(byte[] dest, int pos, byte[] fragment) {
+    System.arraycopy(fragment, 0, dest, pos, fragment.length);
+    return pos + fragment.length;
+  }
+
+  // Contents of a JSON string, escaped and UTF-8 encoded
+  private static int putJsonString(byte[] dest, int pos, String value) {
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        dest[pos++] = '\\';
+        dest[pos++] = (byte) c;
+      } else if (c < 0x20) {
+        dest[pos++] = '\\';
+        dest[pos++] = 'u';
+        dest[pos++] = '0';
+        dest[pos++] = '0';
+        dest[pos++] = HEX[c >> 4];
+        dest[pos++] = HEX[c & 0xF];
+      } else if (c < 0x80) {
+        dest[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        dest[pos++] = (byte) (0xC0 | (c >> 6));
+        dest[pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        dest[pos++] = (byte) (0xF0 | (codePoint >> 18));
+        dest[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        dest[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        dest[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        // Unpaired surrogate, replaced like String.getBytes does
+        dest[pos++] = '?';
+      } else {
+        dest[pos++] = (byte) (0xE0 | (c >> 12));
+        dest[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        dest[pos++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    return pos;
+  }
+
+  private static int putLong(byte[] dest, int pos, long value) {
+    if (value == 0) {
+      dest[pos++] = '0';
+      return pos;
+    }
+    if (value < 0) {
+      dest[pos++] = '-';
+    }
+    int start = pos;
+    while (value != 0) {
+      dest[pos++] = (byte) ('0' + Math.abs(value % 10));
+      value /= 10;
+    }
+    // Digits were written least significant first
+    for (int i = start, k = pos - 1; i < k; i++, k--) {
+      byte tmp = dest[i];
+      dest[i] = dest[k];
+      dest[k] = tmp;
+    }
+    return pos;
+  }
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
   }
 
 }
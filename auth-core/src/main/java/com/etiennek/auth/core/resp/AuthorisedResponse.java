@@ -0,0 +1,25 @@
+package com.etiennek.auth.core.resp;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.etiennek.auth.core.Response;
+import com.etiennek.auth.core.model.AccessToken;
+
+public class AuthorisedResponse extends Response {
+  private static final Map<String, String[]> header = Collections.emptyMap();
+
+  private AccessToken accessToken;
+
+  public AuthorisedResponse(AccessToken accessToken) {
+    super(200, header, "");
+    this.accessToken = checkNotNull(accessToken);
+  }
+
+  public AccessToken getAccessToken() {
+    return accessToken;
+  }
+
+}
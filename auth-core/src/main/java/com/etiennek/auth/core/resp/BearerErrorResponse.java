@@ -0,0 +1,46 @@
+package com.etiennek.auth.core.resp;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.etiennek.auth.core.Const;
+import com.etiennek.auth.core.model.ErrorCode;
+
+// Error response for protected resource requests, see section 3 of RFC 6750
+public class BearerErrorResponse extends ErrorResponse {
+  private static final ErrorResponseCache<BearerErrorResponse> cache =
+      new ErrorResponseCache<>(BearerErrorResponse::new);
+
+  public BearerErrorResponse(ErrorCode errorCode, String errorDescription) {
+    super(errorCode, errorDescription, header(errorCode, errorDescription));
+  }
+
+  public static BearerErrorResponse of(ErrorCode errorCode, String errorDescription) {
+    return cache.get(errorCode, errorDescription);
+  }
+
+  private static Map<String, String[]> header(ErrorCode errorCode, String errorDescription) {
+    Map<String, String[]> ret = new LinkedHashMap<>();
+    ret.put("Content-Type", new String[] {Const.MEDIA_X_WWW_FORM_URLENCODED});
+    ret.put("Cache-Control", new String[] {"no-store"});
+    ret.put("Pragma", new String[] {"no-cache"});
+    ret.put("WWW-Authenticate", new String[] {"Bearer realm=\"Service\", error=\"" + errorCode
+        + "\", error_description=\"" + quotable(errorDescription) + "\""});
+    return Collections.unmodifiableMap(ret);
+  }
+
+  // Drops the characters RFC 6750 does not allow in error_description (anything outside %x20-21 / %x23-5B /
+  // %x5D-7E), so a description can't break out of the quoted string or the header
+  private static String quotable(String errorDescription) {
+    StringBuilder ret = new StringBuilder(errorDescription.length());
+    for (int i = 0; i < errorDescription.length(); i++) {
+      char c = errorDescription.charAt(i);
+      if (c >= 0x20 && c <= 0x7E && c != '"' && c != '\\') {
+        ret.append(c);
+      }
+    }
+    return ret.toString();
+  }
+
+}
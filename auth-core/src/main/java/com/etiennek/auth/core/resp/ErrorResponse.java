@@ -1,30 +1,66 @@
 package com.etiennek.auth.core.resp;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import com.etiennek.auth.core.Const;
 import com.etiennek.auth.core.Response;
 import com.etiennek.auth.core.model.ErrorCode;
 
+// Error responses are immutable, so of() hands out shared instances with their headers and encoded body built once
 public class ErrorResponse extends Response {
-  private static String body = "error=%s&error_description=%s";
+  private static final Map<ErrorCode, Map<String, String[]>> headers = headers();
+  private static final ErrorResponseCache<ErrorResponse> cache = new ErrorResponseCache<>(ErrorResponse::new);
+
+  private final byte[] bodyBytes;
 
   public ErrorResponse(ErrorCode errorCode, String errorDescription) {
-    super(errorCode.getHttpCode(), header(errorCode), String.format(body, errorCode, encode(errorDescription)));
+    this(errorCode, errorDescription, headers.get(errorCode));
 
     // TODO: Add WWW-Authenticate header for INVALID_CLIENT Error Code: 5.2 of the RFC
   }
 
-  private static Map<String, String[]> header(ErrorCode errorCode) {
-    Map<String, String[]> ret = new HashMap<>();
-    ret.put("Content-Type", new String[] {Const.MEDIA_X_WWW_FORM_URLENCODED});
-    ret.put("Cache-Control", new String[] {"no-store"});
-    ret.put("Pragma", new String[] {"no-cache"});
-    if (errorCode == ErrorCode.INVALID_CLIENT) {
-      ret.put("WWW-Authenticate", new String[] {"Basic realm=\"Service\""});
+  protected ErrorResponse(ErrorCode errorCode, String errorDescription, Map<String, String[]> header) {
+    this(errorCode.getHttpCode(), errorCode, errorDescription, header);
+  }
+
+  // For errors sent with another status than that of their error code
+  protected ErrorResponse(int code, ErrorCode errorCode, String errorDescription, Map<String, String[]> header) {
+    this(code, header, "error=" + errorCode + "&error_description=" + encode(errorDescription));
+  }
+
+  private ErrorResponse(int code, Map<String, String[]> header, String body) {
+    super(code, header, body);
+    this.bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+  }
+
+  public static ErrorResponse of(ErrorCode errorCode, String errorDescription) {
+    return cache.get(errorCode, errorDescription);
+  }
+
+  @Override
+  public void writeBody(OutputStream out) throws IOException {
+    out.write(bodyBytes);
+  }
+
+  private static Map<ErrorCode, Map<String, String[]>> headers() {
+    Map<ErrorCode, Map<String, String[]>> ret = new EnumMap<>(ErrorCode.class);
+    for (ErrorCode errorCode : ErrorCode.values()) {
+      Map<String, String[]> header = new LinkedHashMap<>();
+      header.put("Content-Type", new String[] {Const.MEDIA_X_WWW_FORM_URLENCODED});
+      header.put("Cache-Control", new String[] {"no-store"});
+      header.put("Pragma", new String[] {"no-cache"});
+      if (errorCode == ErrorCode.INVALID_CLIENT) {
+        header.put("WWW-Authenticate", new String[] {"Basic realm=\"Service\""});
+      }
+      ret.put(errorCode, Collections.unmodifiableMap(header));
     }
     return ret;
   }
@@ -0,0 +1,41 @@
+package com.etiennek.auth.core.resp;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import com.etiennek.auth.core.model.ErrorCode;
+
+// Shares error responses per error code and description. The descriptions the server sends are a small fixed set,
+// so each response is built once. Up to MAX_PER_ERROR_CODE descriptions are kept per error code, any further ones
+// are built every time they are sent.
+class ErrorResponseCache<T extends ErrorResponse> {
+  static final int MAX_PER_ERROR_CODE = 64;
+
+  private final BiFunction<ErrorCode, String, T> factory;
+  private final Map<ErrorCode, Map<String, T>> responses = new EnumMap<>(ErrorCode.class);
+
+  ErrorResponseCache(BiFunction<ErrorCode, String, T> factory) {
+    this.factory = factory;
+    for (ErrorCode errorCode : ErrorCode.values()) {
+      responses.put(errorCode, new ConcurrentHashMap<>());
+    }
+  }
+
+  T get(ErrorCode errorCode, String errorDescription) {
+    Map<String, T> forErrorCode = responses.get(errorCode);
+    T ret = forErrorCode.get(errorDescription);
+    if (ret == null) {
+      ret = factory.apply(errorCode, errorDescription);
+      if (forErrorCode.size() < MAX_PER_ERROR_CODE) {
+        T existing = forErrorCode.putIfAbsent(errorDescription, ret);
+        if (existing != null) {
+          ret = existing;
+        }
+      }
+    }
+    return ret;
+  }
+
+}
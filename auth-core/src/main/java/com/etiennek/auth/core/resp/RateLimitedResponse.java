@@ -0,0 +1,42 @@
+package com.etiennek.auth.core.resp;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.etiennek.auth.core.Const;
+import com.etiennek.auth.core.model.ErrorCode;
+
+// 429 Too Many Requests with a Retry-After header, see RFC 6585. Sent to callers that are being shed, so the
+// responses for the first CACHED_SECONDS seconds are built once.
+public class RateLimitedResponse extends ErrorResponse {
+  public static final int TOO_MANY_REQUESTS = 429;
+  private static final int CACHED_SECONDS = 60;
+  private static final RateLimitedResponse[] cache = new RateLimitedResponse[CACHED_SECONDS + 1];
+  static {
+    for (int i = 1; i <= CACHED_SECONDS; i++) {
+      cache[i] = new RateLimitedResponse(i);
+    }
+  }
+
+  public RateLimitedResponse(long retryAfterSeconds) {
+    super(TOO_MANY_REQUESTS, ErrorCode.TEMPORARILY_UNAVAILABLE, "Too many requests.", header(retryAfterSeconds));
+  }
+
+  public static RateLimitedResponse of(long retryAfterSeconds) {
+    if (retryAfterSeconds >= 1 && retryAfterSeconds <= CACHED_SECONDS) {
+      return cache[(int) retryAfterSeconds];
+    }
+    return new RateLimitedResponse(retryAfterSeconds);
+  }
+
+  private static Map<String, String[]> header(long retryAfterSeconds) {
+    Map<String, String[]> ret = new LinkedHashMap<>();
+    ret.put("Content-Type", new String[] {Const.MEDIA_X_WWW_FORM_URLENCODED});
+    ret.put("Cache-Control", new String[] {"no-store"});
+    ret.put("Pragma", new String[] {"no-cache"});
+    ret.put("Retry-After", new String[] {Long.toString(Math.max(1, retryAfterSeconds))});
+    return Collections.unmodifiableMap(ret);
+  }
+
+}
@@ -0,0 +1,26 @@
+package com.etiennek.auth.core.store;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Token expiry times as UTC milliseconds since the epoch, the form the stores index and write them in
+class EpochMillis {
+  // A token that never expires
+  static final long NONE = Long.MIN_VALUE;
+
+  static long of(LocalDateTime time) {
+    if (time == null) {
+      return NONE;
+    }
+    return time.toEpochSecond(ZoneOffset.UTC) * 1000 + time.getNano() / 1_000_000;
+  }
+
+  static LocalDateTime toTime(long millis) {
+    if (millis == NONE) {
+      return null;
+    }
+    return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L), (int) Math.floorMod(millis, 1000L) * 1_000_000,
+        ZoneOffset.UTC);
+  }
+
+}
@@ -0,0 +1,125 @@
+package com.etiennek.auth.core.store;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+// A concurrent map of records that expire, keyed by token. A record that is found expired on lookup is removed
+// there and then, and with an ExpiryScheduler every record that has an expiry time is also removed once it
+// passes, whether it is looked up or not. Reaching maximumSize drops every expired record, and should that not free
+// any room the new record is refused. Live records are never dropped to make room, they are valid credentials.
+class ExpiringMap<V> {
+
+  // The record as stored, which is also the action that removes it when it expires
+  private class Record implements Runnable {
+    final String key;
+    final V value;
+    volatile ExpiryScheduler.Timeout timeout;
+
+    Record(String key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    @Override
+    public void run() {
+      map.remove(key, this);
+    }
+
+    void cancel() {
+      if (timeout != null) {
+        timeout.cancel();
+      }
+    }
+  }
+
+  private final Map<String, Record> map = new ConcurrentHashMap<>();
+  private final BiPredicate<V, LocalDateTime> expired;
+  private final Function<V, LocalDateTime> expires;
+  private final ExpiryScheduler scheduler;
+  private final int maximumSize;
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  // The scheduler may be null, expired records are then only removed when they are looked up or evicted
+  ExpiringMap(BiPredicate<V, LocalDateTime> expired, Function<V, LocalDateTime> expires, ExpiryScheduler scheduler,
+      int maximumSize) {
+    this.expired = expired;
+    this.expires = expires;
+    this.scheduler = scheduler;
+    this.maximumSize = maximumSize;
+  }
+
+  V get(String key, LocalDateTime now) {
+    Record ret = map.get(key);
+    if (ret == null) {
+      return null;
+    }
+    if (expired.test(ret.value, now)) {
+      if (map.remove(key, ret)) {
+        ret.cancel();
+      }
+      return null;
+    }
+    return ret.value;
+  }
+
+  // Returns false, leaving the map as it was, if it is full of live records. Replacing a record always succeeds.
+  boolean put(String key, V value, LocalDateTime now) {
+    if (map.size() >= maximumSize && !map.containsKey(key)) {
+      evictExpired(now);
+      if (map.size() >= maximumSize) {
+        return false;
+      }
+    }
+    Record record = new Record(key, value);
+    Record replaced = map.put(key, record);
+    if (replaced != null) {
+      replaced.cancel();
+    }
+    // Scheduled once the record is in place. Should it be removed before the timeout is set, the timeout stays until
+    // it expires and then finds nothing to remove.
+    LocalDateTime expiresAt = expires.apply(value);
+    if (scheduler != null && expiresAt != null) {
+      record.timeout = scheduler.schedule(expiresAt, record);
+    }
+    return true;
+  }
+
+  // Removes the record, returning it only if it had not expired
+  V remove(String key, LocalDateTime now) {
+    Record ret = map.remove(key);
+    if (ret == null) {
+      return null;
+    }
+    ret.cancel();
+    return expired.test(ret.value, now) ? null : ret.value;
+  }
+
+  int size() {
+    return map.size();
+  }
+
+  private void evictExpired(LocalDateTime now) {
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      Iterator<Record> it = map.values()
+                               .iterator();
+      while (it.hasNext()) {
+        Record record = it.next();
+        if (expired.test(record.value, now)) {
+          it.remove();
+          record.cancel();
+        }
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+}
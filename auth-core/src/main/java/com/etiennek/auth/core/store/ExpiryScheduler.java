@@ -0,0 +1,298 @@
+package com.etiennek.auth.core.store;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.etiennek.auth.core.model.func.GetNow;
+
+// Runs an action once a record has expired, for stores that want expired tokens and codes gone rather than only
+// skipped on lookup. The records live in a hierarchical timing wheel: LEVELS wheels of 64 slots, each slot of a
+// wheel spanning a whole turn of the wheel below it. A record sits in the lowest wheel that can tell its deadline
+// apart from the current time and moves down a wheel each time the slot it is in comes up, so it is touched at
+// most LEVELS times however far away it expires and nothing is ever scanned.
+// The wheels belong to a single thread that ticks once per resolution. Other threads hand records and
+// cancellations over through lock-free stacks, so scheduling never blocks. An action runs on that thread, once the
+// clock is past the record's expiry time, at most about a resolution late.
+public class ExpiryScheduler implements Closeable {
+  private static final Logger LOGGER = Logger.getLogger(ExpiryScheduler.class.getName());
+
+  public static final Duration DEFAULT_RESOLUTION = Duration.ofSeconds(1);
+
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+  // 2^36 ticks, more than 2000 years at one tick a second
+  private static final int LEVELS = 6;
+  private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+  // Only started once a store asks for it
+  private static class DefaultHolder {
+    static final ExpiryScheduler DEFAULT = new ExpiryScheduler(LocalDateTime::now, DEFAULT_RESOLUTION, true);
+  }
+
+  // A scheduled action. Cancelling is safe from any thread and frees the record straight away; the timeout itself
+  // leaves the wheel on the next tick.
+  public static final class Timeout {
+    private static final int WAITING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(
+        Timeout.class, "state");
+
+    private final ExpiryScheduler scheduler;
+    private final long deadline;
+    private volatile Runnable action;
+    // Through STATE rather than an AtomicInteger, which would be another object per record
+    private volatile int state;
+
+    // Only touched by the wheel thread
+    private Timeout prev;
+    private Timeout next;
+    private int level = -1;
+    private int slot;
+
+    // Links of the hand over stacks
+    private Timeout nextScheduled;
+    private Timeout nextCancelled;
+
+    private Timeout(ExpiryScheduler scheduler, long deadline, Runnable action) {
+      this.scheduler = scheduler;
+      this.deadline = deadline;
+      this.action = action;
+    }
+
+    public boolean cancel() {
+      if (!STATE.compareAndSet(this, WAITING, CANCELLED)) {
+        return false;
+      }
+      action = null;
+      scheduler.pending.decrementAndGet();
+      scheduler.push(scheduler.cancelled, this, true);
+      return true;
+    }
+
+    public boolean isCancelled() {
+      return state == CANCELLED;
+    }
+  }
+
+  private final GetNow clock;
+  private final long resolutionMillis;
+  private final long originMillis;
+  private final Timeout[][] wheels = new Timeout[LEVELS][SLOTS];
+  private final AtomicReference<Timeout> scheduled = new AtomicReference<>();
+  private final AtomicReference<Timeout> cancelled = new AtomicReference<>();
+  private final AtomicInteger pending = new AtomicInteger();
+  private final Thread thread;
+  private volatile boolean running = true;
+  // The last tick that was processed, only touched by the wheel thread
+  private long currentTick;
+
+  public ExpiryScheduler(GetNow clock, Duration resolution) {
+    this(clock, resolution, true);
+  }
+
+  ExpiryScheduler(GetNow clock, Duration resolution, boolean startThread) {
+    this.clock = checkNotNull(clock);
+    this.resolutionMillis = checkNotNull(resolution).toMillis();
+    if (resolutionMillis <= 0) {
+      throw new IllegalArgumentException("The resolution of an expiry scheduler must be at least a millisecond.");
+    }
+    this.originMillis = EpochMillis.of(clock.getNow());
+    if (startThread) {
+      thread = new Thread(this::run, "oauth2-expiry");
+      thread.setDaemon(true);
+      thread.start();
+    } else {
+      thread = null;
+    }
+  }
+
+  // Shared by the stores that are not given a scheduler of their own, on the system clock
+  public static ExpiryScheduler getDefault() {
+    return DefaultHolder.DEFAULT;
+  }
+
+  // Runs the action once the clock is past expires
+  public Timeout schedule(LocalDateTime expires, Runnable action) {
+    checkNotNull(action);
+    // The first tick that starts after expires, as a record only expires once the clock is past it
+    long deadline = Math.floorDiv(EpochMillis.of(expires) - originMillis, resolutionMillis) + 1;
+    Timeout ret = new Timeout(this, deadline, action);
+    pending.incrementAndGet();
+    push(scheduled, ret, false);
+    return ret;
+  }
+
+  // Records that are scheduled and neither expired nor cancelled yet
+  public int size() {
+    return pending.get();
+  }
+
+  @Override
+  public void close() {
+    if (this == DefaultHolder.DEFAULT) {
+      throw new IllegalStateException("The default expiry scheduler can not be closed.");
+    }
+    running = false;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        advance();
+      } catch (RuntimeException e) {
+        LOGGER.log(Level.SEVERE, "Expiry scheduler tick failed", e);
+      }
+      try {
+        TimeUnit.MILLISECONDS.sleep(resolutionMillis);
+      } catch (InterruptedException e) {
+        // Woken to close
+      }
+    }
+  }
+
+  // Processes every tick up to the clock's current time
+  void advance() {
+    long nowTick = Math.floorDiv(EpochMillis.of(clock.getNow()) - originMillis, resolutionMillis);
+    unlinkCancelled();
+    addScheduled();
+    while (currentTick < nowTick) {
+      currentTick++;
+      // Higher wheels first, so that a record cascading down can still land in a lower slot that is due now
+      for (int level = LEVELS - 1; level > 0; level--) {
+        if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+          cascade(level, (int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        }
+      }
+      expire((int) currentTick & SLOT_MASK);
+    }
+  }
+
+  private void addScheduled() {
+    Timeout timeout = scheduled.getAndSet(null);
+    while (timeout != null) {
+      Timeout next = timeout.nextScheduled;
+      timeout.nextScheduled = null;
+      if (timeout.state == Timeout.WAITING) {
+        place(timeout);
+      }
+      timeout = next;
+    }
+  }
+
+  private void unlinkCancelled() {
+    Timeout timeout = cancelled.getAndSet(null);
+    while (timeout != null) {
+      Timeout next = timeout.nextCancelled;
+      timeout.nextCancelled = null;
+      if (timeout.level >= 0) {
+        unlink(timeout);
+      }
+      timeout = next;
+    }
+  }
+
+  // Puts the timeout in the lowest wheel where its deadline differs from the current tick
+  private void place(Timeout timeout) {
+    long deadline = Math.min(timeout.deadline, currentTick + MAX_DELTA);
+    long diff = deadline ^ currentTick;
+    if (deadline <= currentTick || diff == 0) {
+      fire(timeout);
+      return;
+    }
+    int level = Math.min((63 - Long.numberOfLeadingZeros(diff)) / SLOT_BITS, LEVELS - 1);
+    int slot = (int) (deadline >>> (SLOT_BITS * level)) & SLOT_MASK;
+    timeout.level = level;
+    timeout.slot = slot;
+    timeout.prev = null;
+    timeout.next = wheels[level][slot];
+    if (timeout.next != null) {
+      timeout.next.prev = timeout;
+    }
+    wheels[level][slot] = timeout;
+  }
+
+  private void unlink(Timeout timeout) {
+    if (timeout.prev == null) {
+      wheels[timeout.level][timeout.slot] = timeout.next;
+    } else {
+      timeout.prev.next = timeout.next;
+    }
+    if (timeout.next != null) {
+      timeout.next.prev = timeout.prev;
+    }
+    timeout.prev = null;
+    timeout.next = null;
+    timeout.level = -1;
+  }
+
+  private void cascade(int level, int slot) {
+    Timeout timeout = wheels[level][slot];
+    wheels[level][slot] = null;
+    while (timeout != null) {
+      Timeout next = timeout.next;
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.level = -1;
+      if (timeout.state == Timeout.WAITING) {
+        place(timeout);
+      }
+      timeout = next;
+    }
+  }
+
+  private void expire(int slot) {
+    Timeout timeout = wheels[0][slot];
+    wheels[0][slot] = null;
+    while (timeout != null) {
+      Timeout next = timeout.next;
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.level = -1;
+      fire(timeout);
+      timeout = next;
+    }
+  }
+
+  private void fire(Timeout timeout) {
+    if (!Timeout.STATE.compareAndSet(timeout, Timeout.WAITING, Timeout.EXPIRED)) {
+      return;
+    }
+    pending.decrementAndGet();
+    Runnable action = timeout.action;
+    timeout.action = null;
+    try {
+      action.run();
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.WARNING, "Expiry action failed", e);
+    }
+  }
+
+  private void push(AtomicReference<Timeout> stack, Timeout timeout, boolean cancel) {
+    while (true) {
+      Timeout head = stack.get();
+      if (cancel) {
+        timeout.nextCancelled = head;
+      } else {
+        timeout.nextScheduled = head;
+      }
+      if (stack.compareAndSet(head, timeout)) {
+        return;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,269 @@
+package com.etiennek.auth.core.store;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.etiennek.auth.core.model.AccessToken;
+import com.etiennek.auth.core.model.AuthCode;
+import com.etiennek.auth.core.model.Client;
+import com.etiennek.auth.core.model.RefreshToken;
+import com.etiennek.auth.core.model.RequiredFunctions;
+import com.etiennek.auth.core.model.User;
+import com.etiennek.auth.core.model.func.GetNow;
+import com.etiennek.auth.core.model.func.SaveTokens;
+
+// Every function the server needs, kept in concurrent hash maps: clients by id, users by username and access
+// tokens, refresh tokens and authorization codes by token. Lookups are a single hash probe and secrets are compared
+// in constant time. Expired records are dropped when they are looked up or, given an ExpiryScheduler, as soon as
+// they expire. Each token map holds at most maximumTokens records, a save that finds no expired record to make
+// room for it fails. Good enough for small deployments and test rigs, everything is lost on restart.
+public class InMemoryStore implements RequiredFunctions, RequiredFunctions.AuthCodeGrantType,
+    RequiredFunctions.PasswordGrantType, RequiredFunctions.ClientCredentialsGrantType,
+    RequiredFunctions.RefreshTokenGrantType, SaveTokens {
+  public static final int DEFAULT_MAXIMUM_TOKENS = 1_000_000;
+
+  private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+  private static final CompletableFuture<IsGrantTypeAllowedRes> ALLOWED = CompletableFuture.completedFuture(
+      new IsGrantTypeAllowedRes(true));
+  private static final CompletableFuture<IsGrantTypeAllowedRes> NOT_ALLOWED = CompletableFuture.completedFuture(
+      new IsGrantTypeAllowedRes(false));
+
+  private static class ClientEntry {
+    final Client client;
+    final byte[] secret;
+    // Null when every grant type is allowed
+    final Set<String> grantTypes;
+    final Optional<User> user;
+
+    ClientEntry(Client client, Set<String> grantTypes, Optional<User> user) {
+      this.client = client;
+      this.secret = bytes(client.getSecret());
+      this.grantTypes = grantTypes;
+      this.user = user;
+    }
+  }
+
+  private static class UserEntry {
+    final User user;
+    final byte[] password;
+
+    UserEntry(User user) {
+      this.user = user;
+      this.password = bytes(user.getPassword());
+    }
+  }
+
+  private final GetNow clock;
+  private final Map<String, ClientEntry> clients = new ConcurrentHashMap<>();
+  private final Map<String, UserEntry> users = new ConcurrentHashMap<>();
+  private final ExpiringMap<AccessToken> accessTokens;
+  private final ExpiringMap<RefreshToken> refreshTokens;
+  private final ExpiringMap<AuthCode> authCodes;
+
+  public InMemoryStore() {
+    this(LocalDateTime::now, DEFAULT_MAXIMUM_TOKENS, ExpiryScheduler.getDefault());
+  }
+
+  // Expired records are only dropped when they are looked up or evicted
+  public InMemoryStore(GetNow clock, int maximumTokens) {
+    this(clock, maximumTokens, null);
+  }
+
+  public InMemoryStore(GetNow clock, int maximumTokens, ExpiryScheduler scheduler) {
+    if (maximumTokens <= 0) {
+      throw new IllegalArgumentException("The maximum number of tokens must be positive.");
+    }
+    this.clock = checkNotNull(clock);
+    this.accessTokens = new ExpiringMap<>(AccessToken::hasExpired, AccessToken::getExpires, scheduler,
+        maximumTokens);
+    this.refreshTokens = new ExpiringMap<>(RefreshToken::hasExpired, RefreshToken::getExpires, scheduler,
+        maximumTokens);
+    this.authCodes = new ExpiringMap<>(AuthCode::hasExpired, AuthCode::getExpires, scheduler, maximumTokens);
+  }
+
+  // Clients and users
+
+  // A client that may use every grant type
+  public InMemoryStore addClient(Client client) {
+    return addClient(client, null, (String[]) null);
+  }
+
+  // A client limited to the given grant types, or allowed every grant type if there are none. The user is who the
+  // client acts as for the client_credentials grant type, which is refused without one.
+  public InMemoryStore addClient(Client client, User user, String... grantTypes) {
+    checkNotNull(client);
+    checkNotNull(client.getId());
+    Set<String> allowed = isNullOrEmpty(grantTypes) ? null : Collections.unmodifiableSet(new HashSet<>(
+        Arrays.asList(grantTypes)));
+    clients.put(client.getId(), new ClientEntry(client, allowed, Optional.ofNullable(user)));
+    return this;
+  }
+
+  public boolean removeClient(String clientId) {
+    return clients.remove(clientId) != null;
+  }
+
+  public InMemoryStore addUser(User user) {
+    checkNotNull(user);
+    checkNotNull(user.getUsername());
+    users.put(user.getUsername(), new UserEntry(user));
+    return this;
+  }
+
+  public boolean removeUser(String username) {
+    return users.remove(username) != null;
+  }
+
+  // Issued by the authorization endpoint, which is not part of this server. A code can be used once.
+  public InMemoryStore addAuthCode(String code, AuthCode authCode) {
+    if (!authCodes.put(checkNotNull(code), checkNotNull(authCode), clock.getNow())) {
+      throw new IllegalStateException("Authorization code store is full.");
+    }
+    return this;
+  }
+
+  public boolean revokeAccessToken(String accessToken) {
+    return accessTokens.remove(accessToken, clock.getNow()) != null;
+  }
+
+  public int getAccessTokenCount() {
+    return accessTokens.size();
+  }
+
+  public int getRefreshTokenCount() {
+    return refreshTokens.size();
+  }
+
+  // RequiredFunctions
+
+  @Override
+  public LocalDateTime getNow() {
+    return clock.getNow();
+  }
+
+  @Override
+  public CompletableFuture<GetAccessTokenRes> getAccessToken(String bearerToken) {
+    return CompletableFuture.completedFuture(new GetAccessTokenRes(Optional.ofNullable(accessTokens.get(
+        bearerToken, clock.getNow()))));
+  }
+
+  @Override
+  public CompletableFuture<GetClientRes> getClient(String clientId, String clientSecret) {
+    ClientEntry entry = clients.get(clientId);
+    Optional<Client> client = entry != null && matches(entry.secret, clientSecret) ? Optional.of(entry.client)
+        : Optional.empty();
+    return CompletableFuture.completedFuture(new GetClientRes(client));
+  }
+
+  @Override
+  public CompletableFuture<IsGrantTypeAllowedRes> isGrantTypeAllowed(String clientId, String grantType) {
+    ClientEntry entry = clients.get(clientId);
+    boolean allowed = entry != null && (entry.grantTypes == null || entry.grantTypes.contains(grantType));
+    return allowed ? ALLOWED : NOT_ALLOWED;
+  }
+
+  @Override
+  public CompletableFuture<Void> saveAccessToken(String accessToken, String clientId, String userId,
+      Optional<LocalDateTime> expires) {
+    if (!accessTokens.put(accessToken, new AccessToken(accessToken, clientId, userId, expires.orElse(null)),
+        clock.getNow())) {
+      return full();
+    }
+    return DONE;
+  }
+
+  // Grant types
+
+  @Override
+  public CompletableFuture<GetAuthCodeRes> getAuthCode(String authCode) {
+    return CompletableFuture.completedFuture(new GetAuthCodeRes(Optional.ofNullable(authCodes.remove(authCode,
+        clock.getNow()))));
+  }
+
+  @Override
+  public CompletableFuture<GetUserRes> getUser(String username, String password) {
+    UserEntry entry = users.get(username);
+    Optional<User> user = entry != null && matches(entry.password, password) ? Optional.of(entry.user)
+        : Optional.empty();
+    return CompletableFuture.completedFuture(new GetUserRes(user));
+  }
+
+  @Override
+  public CompletableFuture<GetUserFromClientRes> getUserFromClient(String clientId, String clientSecret) {
+    ClientEntry entry = clients.get(clientId);
+    Optional<User> user = entry != null && matches(entry.secret, clientSecret) ? entry.user : Optional.empty();
+    return CompletableFuture.completedFuture(new GetUserFromClientRes(user));
+  }
+
+  @Override
+  public CompletableFuture<Void> saveRefreshToken(String refreshToken, String clientId, String userId,
+      Optional<LocalDateTime> expires) {
+    if (!refreshTokens.put(refreshToken, new RefreshToken(clientId, userId, expires.orElse(null)), clock.getNow())) {
+      return full();
+    }
+    return DONE;
+  }
+
+  @Override
+  public CompletableFuture<GetRefreshTokenRes> getRefreshToken(String refreshToken) {
+    return CompletableFuture.completedFuture(new GetRefreshTokenRes(Optional.ofNullable(refreshTokens.get(
+        refreshToken, clock.getNow()))));
+  }
+
+  @Override
+  public CompletableFuture<Void> revokeRefreshToken(String refreshToken) {
+    refreshTokens.remove(refreshToken, clock.getNow());
+    return DONE;
+  }
+
+  @Override
+  public CompletableFuture<Void> saveTokens(List<SaveTokensReq> tokens) {
+    CompletableFuture<Void> ret = DONE;
+    for (SaveTokensReq token : tokens) {
+      if (token.accessToken.isPresent()) {
+        ret = first(ret, saveAccessToken(token.accessToken.get(), token.clientId, token.userId,
+            token.accessTokenExpires));
+      }
+      if (token.refreshToken.isPresent()) {
+        ret = first(ret, saveRefreshToken(token.refreshToken.get(), token.clientId, token.userId,
+            token.refreshTokenExpires));
+      }
+    }
+    return ret;
+  }
+
+  private static CompletableFuture<Void> full() {
+    CompletableFuture<Void> ret = new CompletableFuture<>();
+    ret.completeExceptionally(new IllegalStateException("Token store is full."));
+    return ret;
+  }
+
+  // The first failed save, so the rest of a batch is still saved where there is room
+  private static CompletableFuture<Void> first(CompletableFuture<Void> saved, CompletableFuture<Void> next) {
+    return saved.isCompletedExceptionally() ? saved : next;
+  }
+
+  private static boolean matches(byte[] expected, String actual) {
+    if (expected == null || actual == null) {
+      return expected == null && actual == null;
+    }
+    return MessageDigest.isEqual(expected, bytes(actual));
+  }
+
+  private static byte[] bytes(String s) {
+    return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+  }
+
+}
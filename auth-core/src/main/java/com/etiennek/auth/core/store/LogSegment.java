@@ -0,0 +1,198 @@
+package com.etiennek.auth.core.store;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// One file of a LogTokenStore's log, "<name>.<sequence>.log". A header is followed by records, each written once and
+// never changed:
+//   length (4) | crc32 of the rest (4) | type (1) | expires millis (8) | token | client id | user id
+// where each string is a 2 byte length and its UTF-8 bytes, and a revocation has empty ids. A compacted segment holds
+// the live records of every segment up to its own sequence, which are deleted once it is in place.
+class LogSegment {
+  static final byte ACCESS_TOKEN = 1;
+  static final byte REFRESH_TOKEN = 2;
+  static final byte REVOKE_ACCESS_TOKEN = 3;
+  static final byte REVOKE_REFRESH_TOKEN = 4;
+  static final long NO_EXPIRY = EpochMillis.NONE;
+
+  private static final int MAGIC = 0x4f41544c;
+  private static final int VERSION = 1;
+  static final int HEADER_SIZE = 16;
+  private static final int MAX_RECORD_SIZE = 1 << 20;
+
+  final long sequence;
+  final Path path;
+  final boolean compacted;
+
+  LogSegment(long sequence, Path path, boolean compacted) {
+    this.sequence = sequence;
+    this.path = path;
+    this.compacted = compacted;
+  }
+
+  static Path path(Path directory, String name, long sequence) {
+    return directory.resolve(name + "." + sequence + ".log");
+  }
+
+  // A new empty segment, open for appending
+  static FileChannel create(Path path, boolean compacted) throws IOException {
+    FileChannel ret = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC)
+          .putInt(VERSION)
+          .put((byte) (compacted ? 1 : 0));
+    header.clear();
+    write(ret, header);
+    return ret;
+  }
+
+  static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  // Encodes the record at the buffer's position, growing it if needed, and returns the buffer it ended up in
+  static ByteBuffer encode(ByteBuffer buffer, byte type, String token, String clientId, String userId, long expires) {
+    byte[] tokenBytes = bytes(token);
+    byte[] clientIdBytes = bytes(clientId);
+    byte[] userIdBytes = bytes(userId);
+    int length = 1 + 8 + 6 + tokenBytes.length + clientIdBytes.length + userIdBytes.length;
+    if (length > MAX_RECORD_SIZE || tokenBytes.length > 0xffff || clientIdBytes.length > 0xffff
+        || userIdBytes.length > 0xffff) {
+      throw new IllegalArgumentException("Token record is too large.");
+    }
+    if (buffer.remaining() < length + 8) {
+      ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length + 8));
+      buffer.flip();
+      grown.put(buffer);
+      buffer = grown;
+    }
+    int start = buffer.position();
+    buffer.putInt(length)
+          .putInt(0)
+          .put(type)
+          .putLong(expires);
+    put(buffer, tokenBytes);
+    put(buffer, clientIdBytes);
+    put(buffer, userIdBytes);
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), buffer.arrayOffset() + start + 8, length);
+    buffer.putInt(start + 4, (int) crc.getValue());
+    return buffer;
+  }
+
+  private static void put(ByteBuffer buffer, byte[] bytes) {
+    buffer.putShort((short) bytes.length)
+          .put(bytes);
+  }
+
+  private static byte[] bytes(String s) {
+    return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  static class Record {
+    long offset;
+    byte type;
+    long expires;
+    String token;
+    String clientId;
+    String userId;
+  }
+
+  // Reads the records of a segment in order. A record cut short or corrupted by a crash ends the segment, validEnd()
+  // is then where the good records stop.
+  static class Reader implements AutoCloseable {
+    private final DataInputStream in;
+    private final CRC32 crc = new CRC32();
+    private final Record record = new Record();
+    private final boolean compacted;
+    private byte[] bytes = new byte[256];
+    private long position;
+
+    Reader(Path path) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024));
+      boolean ok = false;
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+          throw new IOException(path + " is not a token log segment.");
+        }
+        compacted = in.readByte() == 1;
+        in.readFully(new byte[HEADER_SIZE - 9]);
+        position = HEADER_SIZE;
+        ok = true;
+      } catch (EOFException e) {
+        throw new IOException(path + " is not a token log segment.", e);
+      } finally {
+        if (!ok) {
+          in.close();
+        }
+      }
+    }
+
+    boolean isCompacted() {
+      return compacted;
+    }
+
+    long validEnd() {
+      return position;
+    }
+
+    // The next record, reused between calls, or null at the end of the good records
+    Record next() throws IOException {
+      try {
+        int length = in.readInt();
+        int checksum = in.readInt();
+        if (length < 15 || length > MAX_RECORD_SIZE) {
+          return null;
+        }
+        if (bytes.length < length) {
+          bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        in.readFully(bytes, 0, length);
+        crc.reset();
+        crc.update(bytes, 0, length);
+        if ((int) crc.getValue() != checksum) {
+          return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        record.offset = position;
+        record.type = buffer.get();
+        record.expires = buffer.getLong();
+        record.token = string(buffer);
+        record.clientId = string(buffer);
+        record.userId = string(buffer);
+        position += 8 + length;
+        return record;
+      } catch (EOFException | BufferUnderflowException e) {
+        return null;
+      }
+    }
+
+    private String string(ByteBuffer buffer) {
+      int length = buffer.getShort() & 0xffff;
+      if (length > buffer.remaining()) {
+        throw new BufferUnderflowException();
+      }
+      String ret = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+      buffer.position(buffer.position() + length);
+      return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+}
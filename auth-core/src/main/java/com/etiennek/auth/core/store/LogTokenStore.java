@@ -0,0 +1,584 @@
+package com.etiennek.auth.core.store;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.etiennek.auth.core.model.AccessToken;
+import com.etiennek.auth.core.model.RefreshToken;
+import com.etiennek.auth.core.model.func.GetAccessToken;
+import com.etiennek.auth.core.model.func.GetNow;
+import com.etiennek.auth.core.model.func.GetRefreshToken;
+import com.etiennek.auth.core.model.func.RevokeRefreshToken;
+import com.etiennek.auth.core.model.func.SaveAccessToken;
+import com.etiennek.auth.core.model.func.SaveRefreshToken;
+import com.etiennek.auth.core.model.func.SaveTokens;
+
+// Access and refresh tokens in an append-only log, for deployments that issue tokens faster than they look them up
+// from disk. Saves and revocations are queued to a writer thread that appends whatever has queued up in one write
+// and one fsync, group commit, and completes their futures once the records are on disk. Lookups are served from an
+// in-memory index of the latest record of every token and never touch the log.
+// The log is a series of LogSegment files, a new one started every segmentSize bytes and on every open. A compactor
+// thread rewrites the closed segments into a single one holding only the records the index still points at, dropping
+// superseded, revoked and expired tokens along with the revocations themselves. Opening the store replays the
+// segments in order to rebuild the index.
+public class LogTokenStore implements GetAccessToken, SaveAccessToken, GetRefreshToken, SaveRefreshToken,
+    RevokeRefreshToken, SaveTokens, Closeable {
+  private static final Logger LOGGER = Logger.getLogger(LogTokenStore.class.getName());
+
+  public static final String DEFAULT_NAME = "tokens";
+  public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+  public static final Duration DEFAULT_COMPACTION_INTERVAL = Duration.ofMinutes(1);
+
+  private static final int MAX_BATCH = 4096;
+
+  private static class Entry<V> {
+    final V value;
+    final LogSegment segment;
+    final long offset;
+
+    Entry(V value, LogSegment segment, long offset) {
+      this.value = value;
+      this.segment = segment;
+      this.offset = offset;
+    }
+  }
+
+  // A save or revocation waiting for the writer
+  private static class Write {
+    final byte type;
+    final String token;
+    final String clientId;
+    final String userId;
+    final LocalDateTime expires;
+    final CompletableFuture<Void> done;
+
+    Write(byte type, String token, String clientId, String userId, LocalDateTime expires,
+        CompletableFuture<Void> done) {
+      this.type = type;
+      this.token = token;
+      this.clientId = clientId;
+      this.userId = userId;
+      this.expires = expires;
+      this.done = done;
+    }
+  }
+
+  private final Path directory;
+  private final String name;
+  private final GetNow clock;
+  private final long segmentSize;
+  private final long compactionIntervalNanos;
+  private final Map<String, Entry<AccessToken>> accessTokens = new ConcurrentHashMap<>();
+  private final Map<String, Entry<RefreshToken>> refreshTokens = new ConcurrentHashMap<>();
+  private final BlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+  // Closed segments, oldest first, guarded by itself
+  private final List<LogSegment> closedSegments = new ArrayList<>();
+  // Held by whoever compacts, so that compact() and the compactor thread take turns
+  private final Object compactionLock = new Object();
+  private final Thread writer;
+  private final Thread compactor;
+  private volatile boolean running = true;
+
+  // Only touched by the writer thread
+  private LogSegment segment;
+  private FileChannel channel;
+  private long position;
+  private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+  private LogTokenStore(Builder builder) throws IOException {
+    this.directory = builder.directory;
+    this.name = builder.name;
+    this.clock = builder.clock;
+    this.segmentSize = builder.segmentSize;
+    this.compactionIntervalNanos = builder.compactionInterval.toNanos();
+    long next = replay();
+    startSegment(next);
+    this.writer = new Thread(this::write, "oauth2-log-writer");
+    this.writer.setDaemon(true);
+    this.compactor = new Thread(this::compactEvery, "oauth2-log-compactor");
+    this.compactor.setDaemon(true);
+    this.writer.start();
+    this.compactor.start();
+  }
+
+  // Tokens
+
+  @Override
+  public CompletableFuture<GetAccessTokenRes> getAccessToken(String bearerToken) {
+    return CompletableFuture.completedFuture(new GetAccessTokenRes(Optional.ofNullable(get(accessTokens,
+        bearerToken))));
+  }
+
+  @Override
+  public CompletableFuture<GetRefreshTokenRes> getRefreshToken(String refreshToken) {
+    return CompletableFuture.completedFuture(new GetRefreshTokenRes(Optional.ofNullable(get(refreshTokens,
+        refreshToken))));
+  }
+
+  @Override
+  public CompletableFuture<Void> saveAccessToken(String accessToken, String clientId, String userId,
+      Optional<LocalDateTime> expires) {
+    CompletableFuture<Void> ret = new CompletableFuture<>();
+    enqueue(new Write(LogSegment.ACCESS_TOKEN, accessToken, clientId, userId, expires.orElse(null), ret));
+    return ret;
+  }
+
+  @Override
+  public CompletableFuture<Void> saveRefreshToken(String refreshToken, String clientId, String userId,
+      Optional<LocalDateTime> expires) {
+    CompletableFuture<Void> ret = new CompletableFuture<>();
+    enqueue(new Write(LogSegment.REFRESH_TOKEN, refreshToken, clientId, userId, expires.orElse(null), ret));
+    return ret;
+  }
+
+  // Queued back to back, so that they usually share a group commit
+  @Override
+  public CompletableFuture<Void> saveTokens(List<SaveTokensReq> tokens) {
+    List<CompletableFuture<Void>> saves = new ArrayList<>(tokens.size() * 2);
+    for (SaveTokensReq token : tokens) {
+      if (token.accessToken.isPresent()) {
+        saves.add(saveAccessToken(token.accessToken.get(), token.clientId, token.userId, token.accessTokenExpires));
+      }
+      if (token.refreshToken.isPresent()) {
+        saves.add(saveRefreshToken(token.refreshToken.get(), token.clientId, token.userId,
+            token.refreshTokenExpires));
+      }
+    }
+    if (saves.size() == 1) {
+      return saves.get(0);
+    }
+    return CompletableFuture.allOf(saves.toArray(new CompletableFuture<?>[saves.size()]));
+  }
+
+  @Override
+  public CompletableFuture<Void> revokeRefreshToken(String refreshToken) {
+    CompletableFuture<Void> ret = new CompletableFuture<>();
+    enqueue(new Write(LogSegment.REVOKE_REFRESH_TOKEN, refreshToken, null, null, null, ret));
+    return ret;
+  }
+
+  public CompletableFuture<Void> revokeAccessToken(String accessToken) {
+    CompletableFuture<Void> ret = new CompletableFuture<>();
+    enqueue(new Write(LogSegment.REVOKE_ACCESS_TOKEN, accessToken, null, null, null, ret));
+    return ret;
+  }
+
+  public int getAccessTokenCount() {
+    return accessTokens.size();
+  }
+
+  public int getRefreshTokenCount() {
+    return refreshTokens.size();
+  }
+
+  // Rewrites the closed segments now rather than at the next interval
+  public void compact() throws IOException {
+    synchronized (compactionLock) {
+      compactClosedSegments();
+    }
+  }
+
+  // Waits for the queued writes, then closes the log. Writes made after close fail.
+  @Override
+  public void close() throws IOException {
+    if (!running) {
+      return;
+    }
+    running = false;
+    // Woken rather than interrupted: an interrupt closes a FileChannel that is in use, failing the writes queued
+    // behind it. The writer notices on its next poll.
+    LockSupport.unpark(compactor);
+    try {
+      compactor.join();
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread()
+            .interrupt();
+    }
+  }
+
+  private <V> V get(Map<String, Entry<V>> tokens, String token) {
+    Entry<V> ret = tokens.get(token);
+    if (ret == null) {
+      return null;
+    }
+    if (hasExpired(ret.value, clock.getNow())) {
+      tokens.remove(token, ret);
+      return null;
+    }
+    return ret.value;
+  }
+
+  private void enqueue(Write write) {
+    if (!running) {
+      write.done.completeExceptionally(new IllegalStateException("Token log is closed."));
+      return;
+    }
+    queue.add(write);
+    // Closed meanwhile, the writer may have stopped before it got here
+    if (!running && queue.remove(write)) {
+      write.done.completeExceptionally(new IllegalStateException("Token log is closed."));
+    }
+  }
+
+  // Writer
+
+  private void write() {
+    List<Write> batch = new ArrayList<>();
+    while (running || !queue.isEmpty()) {
+      try {
+        Write first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+      } catch (InterruptedException e) {
+        // Nothing interrupts the writer, close() is noticed here within a poll
+        continue;
+      }
+      queue.drainTo(batch, MAX_BATCH - 1);
+      commit(batch);
+      batch.clear();
+    }
+    try {
+      channel.force(false);
+      channel.close();
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Could not close token log segment " + segment.path, e);
+    }
+    // Anything that raced close
+    for (Write write = queue.poll(); write != null; write = queue.poll()) {
+      write.done.completeExceptionally(new IllegalStateException("Token log is closed."));
+    }
+  }
+
+  // Appends the batch with one write and one fsync, then applies it to the index and completes it
+  private void commit(List<Write> batch) {
+    long[] offsets = new long[batch.size()];
+    buffer.clear();
+    for (int i = 0; i < batch.size(); i++) {
+      Write write = batch.get(i);
+      offsets[i] = position + buffer.position();
+      try {
+        buffer = LogSegment.encode(buffer, write.type, write.token, write.clientId, write.userId, EpochMillis.of(
+            write.expires));
+      } catch (RuntimeException e) {
+        // Left out of the batch
+        offsets[i] = -1;
+        write.done.completeExceptionally(e);
+      }
+    }
+    buffer.flip();
+    try {
+      LogSegment.write(channel, buffer);
+      channel.force(false);
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Could not append to token log segment " + segment.path, e);
+      try {
+        channel.truncate(position);
+        channel.position(position);
+      } catch (IOException truncateFailure) {
+        e.addSuppressed(truncateFailure);
+      }
+      for (Write write : batch) {
+        write.done.completeExceptionally(e);
+      }
+      return;
+    }
+    position += buffer.limit();
+
+    for (int i = 0; i < batch.size(); i++) {
+      Write write = batch.get(i);
+      if (offsets[i] >= 0) {
+        apply(write.type, write.token, write.clientId, write.userId, write.expires, segment, offsets[i]);
+        write.done.complete(null);
+      }
+    }
+
+    if (position >= segmentSize) {
+      try {
+        channel.close();
+        synchronized (closedSegments) {
+          closedSegments.add(segment);
+        }
+        startSegment(segment.sequence + 1);
+        LockSupport.unpark(compactor);
+      } catch (IOException e) {
+        LOGGER.log(Level.SEVERE, "Could not start a new token log segment", e);
+      }
+    }
+  }
+
+  private void startSegment(long sequence) throws IOException {
+    Path path = LogSegment.path(directory, name, sequence);
+    channel = LogSegment.create(path, false);
+    segment = new LogSegment(sequence, path, false);
+    position = LogSegment.HEADER_SIZE;
+  }
+
+  private void apply(byte type, String token, String clientId, String userId, LocalDateTime expires,
+      LogSegment segment, long offset) {
+    switch (type) {
+      case LogSegment.ACCESS_TOKEN:
+        accessTokens.put(token, new Entry<>(new AccessToken(token, clientId, userId, expires), segment, offset));
+        break;
+      case LogSegment.REFRESH_TOKEN:
+        refreshTokens.put(token, new Entry<>(new RefreshToken(clientId, userId, expires), segment, offset));
+        break;
+      case LogSegment.REVOKE_ACCESS_TOKEN:
+        accessTokens.remove(token);
+        break;
+      case LogSegment.REVOKE_REFRESH_TOKEN:
+        refreshTokens.remove(token);
+        break;
+      default:
+        break;
+    }
+  }
+
+  // Compactor
+
+  // Every interval, and whenever the writer closes a segment
+  private void compactEvery() {
+    while (true) {
+      LockSupport.parkNanos(compactionIntervalNanos);
+      if (!running) {
+        return;
+      }
+      try {
+        compact();
+      } catch (IOException | RuntimeException e) {
+        LOGGER.log(Level.WARNING, "Token log compaction failed", e);
+      }
+    }
+  }
+
+  // Copies the records of the closed segments that the index still points at into one compacted segment, which
+  // takes the place of the newest of them. The index is only pointed at the copies once the segment is on disk
+  // under its final name, and the older segments are deleted after that; a crash in between leaves a compacted
+  // segment that tells open to ignore them.
+  private void compactClosedSegments() throws IOException {
+    List<LogSegment> segments;
+    synchronized (closedSegments) {
+      segments = new ArrayList<>(closedSegments);
+    }
+    if (segments.isEmpty() || (segments.size() == 1 && segments.get(0).compacted)) {
+      return;
+    }
+    LogSegment newest = segments.get(segments.size() - 1);
+    Path temporary = directory.resolve(newest.path.getFileName() + ".tmp");
+    Files.deleteIfExists(temporary);
+    LogSegment compacted = new LogSegment(newest.sequence, newest.path, true);
+    List<Runnable> moves = new ArrayList<>();
+    LocalDateTime now = clock.getNow();
+
+    try (FileChannel out = LogSegment.create(temporary, true)) {
+      ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+      long written = LogSegment.HEADER_SIZE;
+      for (LogSegment segment : segments) {
+        try (LogSegment.Reader reader = new LogSegment.Reader(segment.path)) {
+          for (LogSegment.Record record = reader.next(); record != null; record = reader.next()) {
+            Map<String, ? extends Entry<?>> tokens = record.type == LogSegment.ACCESS_TOKEN ? accessTokens
+                : record.type == LogSegment.REFRESH_TOKEN ? refreshTokens : null;
+            Entry<?> entry = tokens == null ? null : tokens.get(record.token);
+            if (entry == null || entry.segment != segment || entry.offset != record.offset) {
+              continue;
+            }
+            if (hasExpired(entry.value, now)) {
+              tokens.remove(record.token, entry);
+              continue;
+            }
+            long offset = written + buffer.position();
+            buffer = LogSegment.encode(buffer, record.type, record.token, record.clientId, record.userId,
+                record.expires);
+            moves.add(move(tokens, record.token, entry, compacted, offset));
+            if (buffer.position() >= 32 * 1024) {
+              buffer.flip();
+              LogSegment.write(out, buffer);
+              written += buffer.limit();
+              buffer.clear();
+            }
+          }
+        }
+      }
+      buffer.flip();
+      LogSegment.write(out, buffer);
+      out.force(false);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+
+    Files.move(temporary, newest.path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    for (Runnable move : moves) {
+      move.run();
+    }
+    synchronized (closedSegments) {
+      closedSegments.subList(0, segments.size())
+                    .clear();
+      closedSegments.add(0, compacted);
+    }
+    for (LogSegment segment : segments) {
+      if (segment != newest) {
+        Files.deleteIfExists(segment.path);
+      }
+    }
+  }
+
+  // Points the token at its copy, unless it was saved again or revoked meanwhile
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Runnable move(Map tokens, String token, Entry<?> entry, LogSegment segment, long offset) {
+    return () -> tokens.replace(token, entry, new Entry<>(entry.value, segment, offset));
+  }
+
+  // Open
+
+  // Rebuilds the index from the segments in the directory and returns the sequence of the next one
+  private long replay() throws IOException {
+    Files.createDirectories(directory);
+    TreeMap<Long, Path> found = new TreeMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, name + ".*")) {
+      for (Path file : files) {
+        String fileName = file.getFileName()
+                              .toString();
+        if (fileName.endsWith(".log.tmp") || (fileName.endsWith(".log") && Files.size(
+            file) < LogSegment.HEADER_SIZE)) {
+          // A compaction that did not finish, or a segment whose header was never written
+          Files.deleteIfExists(file);
+        } else if (fileName.endsWith(".log")) {
+          try {
+            found.put(Long.parseLong(fileName.substring(name.length() + 1, fileName.length() - 4)), file);
+          } catch (NumberFormatException e) {
+            // Not one of ours
+          }
+        }
+      }
+    }
+
+    // Everything before the newest compacted segment is in it
+    long start = -1;
+    for (Map.Entry<Long, Path> file : found.descendingMap()
+                                           .entrySet()) {
+      try (LogSegment.Reader reader = new LogSegment.Reader(file.getValue())) {
+        if (reader.isCompacted()) {
+          start = file.getKey();
+          break;
+        }
+      }
+    }
+    for (Long sequence : new ArrayList<>(found.headMap(start).keySet())) {
+      Files.deleteIfExists(found.remove(sequence));
+    }
+
+    LocalDateTime now = clock.getNow();
+    for (Map.Entry<Long, Path> file : found.entrySet()) {
+      long sequence = file.getKey();
+      Path path = file.getValue();
+      long end;
+      boolean compacted;
+      LogSegment segment;
+      try (LogSegment.Reader reader = new LogSegment.Reader(path)) {
+        compacted = reader.isCompacted();
+        segment = new LogSegment(sequence, path, compacted);
+        for (LogSegment.Record record = reader.next(); record != null; record = reader.next()) {
+          LocalDateTime expires = EpochMillis.toTime(record.expires);
+          if (expires != null && now.isAfter(expires)) {
+            // Expired, but it still replaces what came before
+            apply(record.type == LogSegment.ACCESS_TOKEN ? LogSegment.REVOKE_ACCESS_TOKEN
+                : record.type == LogSegment.REFRESH_TOKEN ? LogSegment.REVOKE_REFRESH_TOKEN : record.type,
+                record.token, null, null, null, segment, record.offset);
+          } else {
+            apply(record.type, record.token, record.clientId, record.userId, expires, segment, record.offset);
+          }
+        }
+        end = reader.validEnd();
+      }
+      if (end < Files.size(path)) {
+        LOGGER.warning("Token log segment " + path + " ends in a torn record, it is cut at " + end + ".");
+        try (FileChannel truncate = FileChannel.open(path, StandardOpenOption.WRITE)) {
+          truncate.truncate(end);
+        }
+      }
+      closedSegments.add(segment);
+    }
+    return found.isEmpty() ? 0 : found.lastKey() + 1;
+  }
+
+  private static boolean hasExpired(Object value, LocalDateTime now) {
+    if (value instanceof AccessToken) {
+      return ((AccessToken) value).hasExpired(now);
+    }
+    return ((RefreshToken) value).hasExpired(now);
+  }
+
+  public static class Builder {
+    private final Path directory;
+    private String name = DEFAULT_NAME;
+    private GetNow clock = LocalDateTime::now;
+    private long segmentSize = DEFAULT_SEGMENT_SIZE;
+    private Duration compactionInterval = DEFAULT_COMPACTION_INTERVAL;
+
+    public Builder(Path directory) {
+      this.directory = checkNotNull(directory, "No directory supplied to LogTokenStore Builder");
+    }
+
+    // The prefix of the store's file names, so that several stores can share a directory
+    public Builder withName(String name) {
+      this.name = checkNotNull(name);
+      return this;
+    }
+
+    public Builder withClock(GetNow clock) {
+      this.clock = checkNotNull(clock);
+      return this;
+    }
+
+    // A segment is closed, and can be compacted, once it has grown past this
+    public Builder withSegmentSize(long segmentSize) {
+      if (segmentSize < 4096) {
+        throw new IllegalArgumentException("The segment size must be at least 4096 bytes.");
+      }
+      this.segmentSize = segmentSize;
+      return this;
+    }
+
+    public Builder withCompactionInterval(Duration compactionInterval) {
+      checkNotNull(compactionInterval);
+      if (compactionInterval.toMillis() <= 0) {
+        throw new IllegalArgumentException("The compaction interval must be at least a millisecond.");
+      }
+      this.compactionInterval = compactionInterval;
+      return this;
+    }
+
+    // Replays the log in the directory, creating it if needed, and starts the writer and compactor threads
+    public LogTokenStore open() throws IOException {
+      return new LogTokenStore(this);
+    }
+  }
+
+}
@@ -0,0 +1,427 @@
+package com.etiennek.auth.core.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// One generation of a MappedTokenStore: an index file and a data file, both memory mapped.
+// The index is a header followed by a fixed number of 8 byte slots, an open addressing hash table with linear
+// probing over the token bytes. A slot holds 24 bits of the token's hash, so most mismatches never touch the data,
+// and 40 bits of record offset plus one, 0 being an empty slot. The data file is an append-only region of records,
+// mapped in chunks that records never straddle:
+//   type (1) | revoked (1) | token length (2) | client id length (2) | user id length (2) | expires millis (8) |
+//   token | client id | user id, padded to 8 bytes
+// Slots are never emptied. Once a record has expired or been revoked its slot is reused by the next insert that
+// probes past it, and the data is only reclaimed by copying the live records into a new generation.
+// Writes are made by one thread at a time, see MappedTokenStore. Reads take no lock: a writer publishes a record
+// by writing the volatile published offset after its slot, and a reader ignores slots beyond what it read there.
+class MappedGeneration implements Closeable {
+  static final byte ACCESS_TOKEN = 1;
+  static final byte REFRESH_TOKEN = 2;
+  static final long NO_EXPIRY = EpochMillis.NONE;
+
+  private static final int MAGIC = 0x4f415453;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 64;
+  private static final int HEADER_MAGIC = 0;
+  private static final int HEADER_VERSION = 4;
+  private static final int HEADER_CAPACITY = 8;
+  private static final int HEADER_COMPLETE = 12;
+  private static final int HEADER_TAIL = 16;
+  private static final int HEADER_SIZE_OFFSET = 24;
+  private static final int HEADER_MAX_DATA_SIZE = 32;
+
+  private static final int RECORD_HEADER_SIZE = 16;
+  private static final int TAG_SHIFT = 40;
+  private static final long OFFSET_MASK = (1L << TAG_SHIFT) - 1;
+  static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+  final long generation;
+  final Path indexPath;
+  final Path dataPath;
+  private final FileChannel indexChannel;
+  private final FileChannel dataChannel;
+  private final MappedByteBuffer index;
+  private final int capacity;
+  private final int mask;
+  private final long maxDataSize;
+  private final int chunkSize;
+  private volatile MappedByteBuffer[] chunks;
+
+  private long tail;
+  private int size;
+  private volatile long published;
+
+  private MappedGeneration(long generation, Path indexPath, Path dataPath, FileChannel indexChannel,
+      FileChannel dataChannel, MappedByteBuffer index, int capacity, long maxDataSize) {
+    this.generation = generation;
+    this.indexPath = indexPath;
+    this.dataPath = dataPath;
+    this.indexChannel = indexChannel;
+    this.dataChannel = dataChannel;
+    this.index = index;
+    this.capacity = capacity;
+    this.mask = capacity - 1;
+    this.maxDataSize = maxDataSize;
+    this.chunkSize = (int) Math.min(MAX_CHUNK_SIZE, maxDataSize);
+    this.chunks = new MappedByteBuffer[0];
+  }
+
+  static MappedGeneration create(Path directory, String name, long generation, int capacity, long maxDataSize)
+      throws IOException {
+    Path indexPath = indexPath(directory, name, generation);
+    Path dataPath = dataPath(directory, name, generation);
+    Files.deleteIfExists(indexPath);
+    Files.deleteIfExists(dataPath);
+    FileChannel indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    FileChannel dataChannel = FileChannel.open(dataPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    MappedByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + 8L * capacity);
+    index.putInt(HEADER_MAGIC, MAGIC);
+    index.putInt(HEADER_VERSION, VERSION);
+    index.putInt(HEADER_CAPACITY, capacity);
+    index.putLong(HEADER_MAX_DATA_SIZE, maxDataSize);
+    return new MappedGeneration(generation, indexPath, dataPath, indexChannel, dataChannel, index, capacity,
+        maxDataSize);
+  }
+
+  // The generation as it was left, or null if its files are missing, not ours or were never completed
+  static MappedGeneration open(Path directory, String name, long generation) throws IOException {
+    Path indexPath = indexPath(directory, name, generation);
+    Path dataPath = dataPath(directory, name, generation);
+    if (!Files.exists(indexPath) || !Files.exists(dataPath) || Files.size(indexPath) < HEADER_SIZE) {
+      return null;
+    }
+    FileChannel indexChannel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    FileChannel dataChannel = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    MappedByteBuffer header = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+    int capacity = header.getInt(HEADER_CAPACITY);
+    if (header.getInt(HEADER_MAGIC) != MAGIC || header.getInt(HEADER_VERSION) != VERSION
+        || header.getInt(HEADER_COMPLETE) != 1 || Integer.bitCount(capacity) != 1
+        || indexChannel.size() < HEADER_SIZE + 8L * capacity) {
+      indexChannel.close();
+      dataChannel.close();
+      return null;
+    }
+    MappedByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + 8L * capacity);
+    MappedGeneration ret = new MappedGeneration(generation, indexPath, dataPath, indexChannel, dataChannel, index,
+        capacity, index.getLong(HEADER_MAX_DATA_SIZE));
+    ret.tail = index.getLong(HEADER_TAIL);
+    ret.size = (int) index.getLong(HEADER_SIZE_OFFSET);
+    if (ret.tail > 0) {
+      ret.chunk(ret.tail - 1);
+    }
+    ret.published = ret.tail;
+    return ret;
+  }
+
+  static Path indexPath(Path directory, String name, long generation) {
+    return directory.resolve(name + "." + generation + ".idx");
+  }
+
+  static Path dataPath(Path directory, String name, long generation) {
+    return directory.resolve(name + "." + generation + ".dat");
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+  long maxDataSize() {
+    return maxDataSize;
+  }
+
+  // Marks the generation as one that open may use, once everything in it is on disk
+  void complete() {
+    index.putInt(HEADER_COMPLETE, 1);
+    force();
+  }
+
+  void force() {
+    for (MappedByteBuffer chunk : chunks) {
+      chunk.force();
+    }
+    index.force();
+  }
+
+  // Reads
+
+  // Offset of the record of the token, or -1 if there is none
+  long find(byte[] token, long hash) {
+    long limit = published;
+    long tag = tag(hash);
+    int i = (int) hash & mask;
+    for (int probes = 0; probes < capacity; probes++) {
+      long slot = index.getLong(HEADER_SIZE + 8 * i);
+      if (slot == 0) {
+        return -1;
+      }
+      long offset = (slot & OFFSET_MASK) - 1;
+      if (slot >>> TAG_SHIFT == tag && offset < limit && tokenEquals(offset, token)) {
+        return offset;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  byte type(long offset) {
+    return chunk(offset).get(position(offset));
+  }
+
+  boolean isRevoked(long offset) {
+    return chunk(offset).get(position(offset) + 1) != 0;
+  }
+
+  long expires(long offset) {
+    return chunk(offset).getLong(position(offset) + 8);
+  }
+
+  String clientId(long offset) {
+    ByteBuffer chunk = chunk(offset);
+    int position = position(offset);
+    return string(chunk, position + RECORD_HEADER_SIZE + chunk.getShort(position + 2), chunk.getShort(position
+        + 4));
+  }
+
+  String userId(long offset) {
+    ByteBuffer chunk = chunk(offset);
+    int position = position(offset);
+    return string(chunk, position + RECORD_HEADER_SIZE + chunk.getShort(position + 2) + chunk.getShort(position
+        + 4), chunk.getShort(position + 6));
+  }
+
+  byte[] token(long offset) {
+    ByteBuffer chunk = chunk(offset);
+    int position = position(offset);
+    byte[] ret = new byte[chunk.getShort(position + 2)];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = chunk.get(position + RECORD_HEADER_SIZE + i);
+    }
+    return ret;
+  }
+
+  int length(long offset) {
+    ByteBuffer chunk = chunk(offset);
+    int position = position(offset);
+    return length(chunk.getShort(position + 2), chunk.getShort(position + 4), chunk.getShort(position + 6));
+  }
+
+  boolean isLive(long offset, long nowMillis) {
+    long expires = expires(offset);
+    return !isRevoked(offset) && (expires == NO_EXPIRY || expires >= nowMillis);
+  }
+
+  // Calls the consumer with the offset of every live record
+  void forEachLive(long nowMillis, OffsetConsumer consumer) throws IOException {
+    long limit = published;
+    for (int i = 0; i < capacity; i++) {
+      long slot = index.getLong(HEADER_SIZE + 8 * i);
+      long offset = (slot & OFFSET_MASK) - 1;
+      if (slot != 0 && offset < limit && isLive(offset, nowMillis)) {
+        consumer.accept(offset);
+      }
+    }
+  }
+
+  interface OffsetConsumer {
+    void accept(long offset) throws IOException;
+  }
+
+  // Writes, one thread at a time
+
+  // Appends the record and points the token's slot at it. Returns false if the index or the data region is too
+  // full, the store then moves to a new generation.
+  boolean append(byte type, byte[] token, long hash, byte[] clientId, byte[] userId, long expires, long nowMillis)
+      throws IOException {
+    if (token.length > Short.MAX_VALUE || clientId.length > Short.MAX_VALUE || userId.length > Short.MAX_VALUE) {
+      throw new IllegalArgumentException("Token record fields are limited to " + Short.MAX_VALUE + " bytes.");
+    }
+    int length = length(token.length, clientId.length, userId.length);
+    if (length > chunkSize) {
+      throw new IllegalArgumentException("Token record of " + length + " bytes does not fit a chunk.");
+    }
+    long offset = tail;
+    if (position(offset) + length > chunkSize) {
+      // Skip to the next chunk rather than straddle two
+      offset = (offset / chunkSize + 1) * chunkSize;
+    }
+    if (offset + length > maxDataSize || offset > OFFSET_MASK - 1) {
+      return false;
+    }
+    int slotIndex = insertSlot(token, hash, nowMillis);
+    if (slotIndex < 0) {
+      return false;
+    }
+
+    ByteBuffer chunk = chunk(offset);
+    int position = position(offset);
+    chunk.put(position, type);
+    chunk.put(position + 1, (byte) 0);
+    chunk.putShort(position + 2, (short) token.length);
+    chunk.putShort(position + 4, (short) clientId.length);
+    chunk.putShort(position + 6, (short) userId.length);
+    chunk.putLong(position + 8, expires);
+    int at = position + RECORD_HEADER_SIZE;
+    at = put(chunk, at, token);
+    at = put(chunk, at, clientId);
+    put(chunk, at, userId);
+
+    int slotPosition = HEADER_SIZE + 8 * slotIndex;
+    if (index.getLong(slotPosition) == 0) {
+      size++;
+    }
+    index.putLong(slotPosition, (tag(hash) << TAG_SHIFT) | (offset + 1));
+    tail = offset + length;
+    index.putLong(HEADER_TAIL, tail);
+    index.putLong(HEADER_SIZE_OFFSET, size);
+    published = tail;
+    return true;
+  }
+
+  void revoke(long offset) {
+    chunk(offset).put(position(offset) + 1, (byte) 1);
+  }
+
+  // The slot that already holds the token, else the first dead one on its probe sequence, else the empty slot that
+  // ends it. -1 if that would leave the table more than three quarters full.
+  private int insertSlot(byte[] token, long hash, long nowMillis) {
+    long tag = tag(hash);
+    int i = (int) hash & mask;
+    int dead = -1;
+    for (int probes = 0; probes < capacity; probes++) {
+      long slot = index.getLong(HEADER_SIZE + 8 * i);
+      if (slot == 0) {
+        if (dead >= 0) {
+          return dead;
+        }
+        return (size + 1) * 4L > capacity * 3L ? -1 : i;
+      }
+      long offset = (slot & OFFSET_MASK) - 1;
+      if (slot >>> TAG_SHIFT == tag && tokenEquals(offset, token)) {
+        return i;
+      }
+      if (dead < 0 && !isLive(offset, nowMillis)) {
+        dead = i;
+      }
+      i = (i + 1) & mask;
+    }
+    return dead;
+  }
+
+  private boolean tokenEquals(long offset, byte[] token) {
+    ByteBuffer chunk = chunk(offset);
+    int position = position(offset);
+    if (chunk.getShort(position + 2) != token.length) {
+      return false;
+    }
+    for (int i = 0; i < token.length; i++) {
+      if (chunk.get(position + RECORD_HEADER_SIZE + i) != token[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private MappedByteBuffer chunk(long offset) {
+    int chunkIndex = (int) (offset / chunkSize);
+    MappedByteBuffer[] current = chunks;
+    if (chunkIndex < current.length) {
+      return current[chunkIndex];
+    }
+    return mapChunks(chunkIndex);
+  }
+
+  private synchronized MappedByteBuffer mapChunks(int chunkIndex) {
+    MappedByteBuffer[] current = chunks;
+    if (chunkIndex < current.length) {
+      return current[chunkIndex];
+    }
+    MappedByteBuffer[] ret = new MappedByteBuffer[chunkIndex + 1];
+    System.arraycopy(current, 0, ret, 0, current.length);
+    try {
+      for (int i = current.length; i < ret.length; i++) {
+        ret[i] = dataChannel.map(FileChannel.MapMode.READ_WRITE, (long) i * chunkSize, chunkSize);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not map token data.", e);
+    }
+    chunks = ret;
+    return ret[chunkIndex];
+  }
+
+  private int position(long offset) {
+    return (int) (offset % chunkSize);
+  }
+
+  private static int length(int token, int clientId, int userId) {
+    return (RECORD_HEADER_SIZE + token + clientId + userId + 7) & ~7;
+  }
+
+  private static long tag(long hash) {
+    return hash >>> TAG_SHIFT;
+  }
+
+  private static int put(ByteBuffer chunk, int at, byte[] bytes) {
+    for (int i = 0; i < bytes.length; i++) {
+      chunk.put(at + i, bytes[i]);
+    }
+    return at + bytes.length;
+  }
+
+  private static String string(ByteBuffer chunk, int at, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = chunk.get(at + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  // 64 bit FNV-1a, finished with the MurmurHash3 mix so the low bits that pick the slot are as good as the high
+  // bits kept as the tag
+  static long hash(byte[] bytes) {
+    long h = 0xcbf29ce484222325L;
+    for (byte b : bytes) {
+      h ^= b & 0xff;
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      indexChannel.close();
+    } finally {
+      dataChannel.close();
+    }
+  }
+
+  void delete() throws IOException {
+    close();
+    Files.deleteIfExists(indexPath);
+    Files.deleteIfExists(dataPath);
+  }
+
+  // Deletes a generation that has been replaced while lookups may still be reading it. Every chunk up to the tail
+  // is mapped first, so no lookup needs the closed data channel, and a mapping stays valid after its file is gone.
+  void retire() throws IOException {
+    if (tail > 0) {
+      chunk(tail - 1);
+    }
+    delete();
+  }
+
+}
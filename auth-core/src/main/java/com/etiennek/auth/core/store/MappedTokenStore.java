@@ -0,0 +1,340 @@
+package com.etiennek.auth.core.store;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import com.etiennek.auth.core.model.AccessToken;
+import com.etiennek.auth.core.model.RefreshToken;
+import com.etiennek.auth.core.model.RequiredFunctions;
+import com.etiennek.auth.core.model.func.GetClient;
+import com.etiennek.auth.core.model.func.GetNow;
+import com.etiennek.auth.core.model.func.IsGrantTypeAllowed;
+import com.etiennek.auth.core.model.func.SaveTokens;
+
+// Access and refresh tokens in memory mapped files, so they survive a restart and take no heap. A lookup is a hash
+// probe into the page cache and opening the store only maps its files, however many tokens it holds. Clients are
+// looked up through the given functions, for instance an InMemoryStore.
+// Tokens live in a MappedGeneration. When its index is three quarters full or its data region is used up, the
+// live records are copied into a new generation, grown if they need the room, and the old one is deleted. Saves and
+// revocations take a lock, lookups do not.
+// The copy is made by the save that found the generation full, while it holds the lock, so that save and those
+// queued behind it wait for every live record to be copied. Size the index and data region so this stays rare.
+// Writes reach the page cache straight away and survive the JVM going down; they only reach the disk when the
+// system writes them back, on flush() or on close().
+public class MappedTokenStore implements RequiredFunctions, RequiredFunctions.RefreshTokenGrantType, SaveTokens,
+    Closeable {
+  public static final String DEFAULT_NAME = "tokens";
+  public static final int DEFAULT_INDEX_CAPACITY = 1 << 20;
+  public static final long DEFAULT_MAX_DATA_SIZE = 256L * 1024 * 1024;
+  private static final int MAX_INDEX_CAPACITY = 1 << 27;
+
+  private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+  private final Path directory;
+  private final String name;
+  private final GetNow clock;
+  private final GetClient clients;
+  private final IsGrantTypeAllowed grantTypes;
+  private volatile MappedGeneration current;
+  private boolean closed;
+
+  private MappedTokenStore(Builder builder, MappedGeneration generation) {
+    this.directory = builder.directory;
+    this.name = builder.name;
+    this.clock = builder.clock;
+    this.clients = builder.clients;
+    this.grantTypes = builder.grantTypes;
+    this.current = generation;
+  }
+
+  // Tokens
+
+  @Override
+  public CompletableFuture<GetAccessTokenRes> getAccessToken(String bearerToken) {
+    MappedGeneration generation = current;
+    long offset = find(generation, bearerToken, MappedGeneration.ACCESS_TOKEN);
+    Optional<AccessToken> ret = Optional.empty();
+    if (offset >= 0) {
+      ret = Optional.of(new AccessToken(bearerToken, generation.clientId(offset), generation.userId(offset),
+          EpochMillis.toTime(generation.expires(offset))));
+    }
+    return CompletableFuture.completedFuture(new GetAccessTokenRes(ret));
+  }
+
+  @Override
+  public CompletableFuture<GetRefreshTokenRes> getRefreshToken(String refreshToken) {
+    MappedGeneration generation = current;
+    long offset = find(generation, refreshToken, MappedGeneration.REFRESH_TOKEN);
+    Optional<RefreshToken> ret = Optional.empty();
+    if (offset >= 0) {
+      ret = Optional.of(new RefreshToken(generation.clientId(offset), generation.userId(offset), EpochMillis.toTime(
+          generation.expires(offset))));
+    }
+    return CompletableFuture.completedFuture(new GetRefreshTokenRes(ret));
+  }
+
+  @Override
+  public CompletableFuture<Void> saveAccessToken(String accessToken, String clientId, String userId,
+      Optional<LocalDateTime> expires) {
+    try {
+      synchronized (this) {
+        save(MappedGeneration.ACCESS_TOKEN, accessToken, clientId, userId, expires);
+      }
+      return DONE;
+    } catch (IOException | RuntimeException e) {
+      return failed(e);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> saveRefreshToken(String refreshToken, String clientId, String userId,
+      Optional<LocalDateTime> expires) {
+    try {
+      synchronized (this) {
+        save(MappedGeneration.REFRESH_TOKEN, refreshToken, clientId, userId, expires);
+      }
+      return DONE;
+    } catch (IOException | RuntimeException e) {
+      return failed(e);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> saveTokens(List<SaveTokensReq> tokens) {
+    try {
+      synchronized (this) {
+        for (SaveTokensReq token : tokens) {
+          if (token.accessToken.isPresent()) {
+            save(MappedGeneration.ACCESS_TOKEN, token.accessToken.get(), token.clientId, token.userId,
+                token.accessTokenExpires);
+          }
+          if (token.refreshToken.isPresent()) {
+            save(MappedGeneration.REFRESH_TOKEN, token.refreshToken.get(), token.clientId, token.userId,
+                token.refreshTokenExpires);
+          }
+        }
+      }
+      return DONE;
+    } catch (IOException | RuntimeException e) {
+      return failed(e);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> revokeRefreshToken(String refreshToken) {
+    revoke(refreshToken, MappedGeneration.REFRESH_TOKEN);
+    return DONE;
+  }
+
+  public boolean revokeAccessToken(String accessToken) {
+    return revoke(accessToken, MappedGeneration.ACCESS_TOKEN);
+  }
+
+  // Clients
+
+  @Override
+  public CompletableFuture<GetClientRes> getClient(String clientId, String clientSecret) {
+    return clients.getClient(clientId, clientSecret);
+  }
+
+  @Override
+  public CompletableFuture<IsGrantTypeAllowedRes> isGrantTypeAllowed(String clientId, String grantType) {
+    return grantTypes.isGrantTypeAllowed(clientId, grantType);
+  }
+
+  @Override
+  public LocalDateTime getNow() {
+    return clock.getNow();
+  }
+
+  // Writes every change so far to disk
+  public synchronized void flush() {
+    current.force();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    current.force();
+    current.close();
+  }
+
+  private long find(MappedGeneration generation, String token, byte type) {
+    byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+    long offset = generation.find(bytes, MappedGeneration.hash(bytes));
+    if (offset < 0 || generation.type(offset) != type || !generation.isLive(offset, EpochMillis.of(clock.getNow()))) {
+      return -1;
+    }
+    return offset;
+  }
+
+  private void save(byte type, String token, String clientId, String userId, Optional<LocalDateTime> expires)
+      throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Token store is closed.");
+    }
+    byte[] tokenBytes = token.getBytes(StandardCharsets.UTF_8);
+    byte[] clientIdBytes = clientId.getBytes(StandardCharsets.UTF_8);
+    byte[] userIdBytes = userId.getBytes(StandardCharsets.UTF_8);
+    long expiresMillis = expires.isPresent() ? EpochMillis.of(expires.get()) : MappedGeneration.NO_EXPIRY;
+    long hash = MappedGeneration.hash(tokenBytes);
+    long now = EpochMillis.of(clock.getNow());
+    if (!current.append(type, tokenBytes, hash, clientIdBytes, userIdBytes, expiresMillis, now)) {
+      compact(now);
+      if (!current.append(type, tokenBytes, hash, clientIdBytes, userIdBytes, expiresMillis, now)) {
+        throw new IllegalStateException("Token store is full.");
+      }
+    }
+  }
+
+  private boolean revoke(String token, byte type) {
+    synchronized (this) {
+      MappedGeneration generation = current;
+      long offset = find(generation, token, type);
+      if (offset < 0) {
+        return false;
+      }
+      generation.revoke(offset);
+      return true;
+    }
+  }
+
+  // Copies the live records into a new generation, with twice the room if they would fill more than a quarter of the
+  // index or half of the data region, and switches to it once it is complete on disk
+  private void compact(long nowMillis) throws IOException {
+    MappedGeneration old = current;
+    int[] live = new int[1];
+    long[] liveBytes = new long[1];
+    old.forEachLive(nowMillis, (offset) -> {
+      live[0]++;
+      liveBytes[0] += old.length(offset);
+    });
+    int capacity = old.capacity();
+    long maxDataSize = old.maxDataSize();
+    if (live[0] > capacity / 4 && capacity < MAX_INDEX_CAPACITY) {
+      capacity *= 2;
+    }
+    if (liveBytes[0] > maxDataSize / 2) {
+      maxDataSize *= 2;
+    }
+
+    MappedGeneration next = MappedGeneration.create(directory, name, old.generation + 1, capacity, maxDataSize);
+    try {
+      old.forEachLive(nowMillis, (offset) -> {
+        byte[] token = old.token(offset);
+        if (!next.append(old.type(offset), token, MappedGeneration.hash(token), old.clientId(offset)
+                                                                                   .getBytes(StandardCharsets.UTF_8),
+            old.userId(offset)
+               .getBytes(StandardCharsets.UTF_8), old.expires(offset), nowMillis)) {
+          throw new IllegalStateException("Token store generation " + next.generation + " is too small.");
+        }
+      });
+      next.complete();
+    } catch (IOException | RuntimeException e) {
+      next.delete();
+      throw e;
+    }
+    current = next;
+    old.retire();
+  }
+
+  private static CompletableFuture<Void> failed(Throwable e) {
+    CompletableFuture<Void> ret = new CompletableFuture<>();
+    ret.completeExceptionally(e);
+    return ret;
+  }
+
+  public static class Builder {
+    private final Path directory;
+    private final GetClient clients;
+    private final IsGrantTypeAllowed grantTypes;
+    private String name = DEFAULT_NAME;
+    private GetNow clock = LocalDateTime::now;
+    private int indexCapacity = DEFAULT_INDEX_CAPACITY;
+    private long maxDataSize = DEFAULT_MAX_DATA_SIZE;
+
+    public Builder(Path directory, GetClient clients, IsGrantTypeAllowed grantTypes) {
+      this.directory = checkNotNull(directory, "No directory supplied to MappedTokenStore Builder");
+      this.clients = checkNotNull(clients, "No GetClient supplied to MappedTokenStore Builder");
+      this.grantTypes = checkNotNull(grantTypes, "No IsGrantTypeAllowed supplied to MappedTokenStore Builder");
+    }
+
+    // The prefix of the store's file names, so that several stores can share a directory
+    public Builder withName(String name) {
+      this.name = checkNotNull(name);
+      return this;
+    }
+
+    public Builder withClock(GetNow clock) {
+      this.clock = checkNotNull(clock);
+      return this;
+    }
+
+    // Slots in the index of a new store, rounded up to a power of two. A store grows past it as needed.
+    public Builder withIndexCapacity(int indexCapacity) {
+      if (indexCapacity <= 0 || indexCapacity > MAX_INDEX_CAPACITY) {
+        throw new IllegalArgumentException("The index capacity must be between 1 and " + MAX_INDEX_CAPACITY + ".");
+      }
+      this.indexCapacity = Math.max(16, Integer.highestOneBit(indexCapacity - 1) << 1);
+      return this;
+    }
+
+    // Size of the data region of a new store. A store grows past it as needed.
+    public Builder withMaxDataSize(long maxDataSize) {
+      if (maxDataSize < 4096) {
+        throw new IllegalArgumentException("The data region must be at least 4096 bytes.");
+      }
+      this.maxDataSize = maxDataSize;
+      return this;
+    }
+
+    // Opens the newest complete generation in the directory, or creates the store if there is none. Leftovers of
+    // other generations, such as one whose compaction was cut short, are deleted.
+    public MappedTokenStore open() throws IOException {
+      Files.createDirectories(directory);
+      long newest = -1;
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, name + ".*.idx")) {
+        for (Path file : files) {
+          String fileName = file.getFileName()
+                                .toString();
+          try {
+            newest = Math.max(newest, Long.parseLong(fileName.substring(name.length() + 1, fileName.length() - 4)));
+          } catch (NumberFormatException e) {
+            // Not one of ours
+          }
+        }
+      }
+
+      MappedGeneration generation = null;
+      for (long candidate = newest; candidate >= 0 && generation == null; candidate--) {
+        generation = MappedGeneration.open(directory, name, candidate);
+      }
+      long keep = generation == null ? -1 : generation.generation;
+      for (long other = newest; other >= 0; other--) {
+        if (other != keep) {
+          Files.deleteIfExists(MappedGeneration.indexPath(directory, name, other));
+          Files.deleteIfExists(MappedGeneration.dataPath(directory, name, other));
+        }
+      }
+      if (generation == null) {
+        generation = MappedGeneration.create(directory, name, newest + 1, indexCapacity, maxDataSize);
+        generation.complete();
+      }
+      return new MappedTokenStore(this, generation);
+    }
+  }
+
+}
@@ -0,0 +1,154 @@
+package com.etiennek.auth.core;
+
+import static com.jayway.awaitility.Awaitility.*;
+import static java.util.concurrent.TimeUnit.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.etiennek.auth.core.model.func.SaveTokens;
+import com.etiennek.auth.core.model.func.SaveTokens.SaveTokensReq;
+
+public class CoalescingSaveTokensTest {
+
+  private List<List<SaveTokensReq>> batches;
+  private CompletableFuture<Void> written;
+  private SaveTokens delegate;
+  private AtomicInteger executed;
+  private Executor executor;
+
+  @Before
+  public void init() {
+    batches = new CopyOnWriteArrayList<>();
+    written = CompletableFuture.completedFuture(null);
+    delegate = (tokens) -> {
+      batches.add(new ArrayList<>(tokens));
+      return written;
+    };
+    executed = new AtomicInteger();
+    executor = (task) -> {
+      executed.incrementAndGet();
+      new Thread(task).start();
+    };
+  }
+
+  @Test
+  public void saveTokens_Batches_Within_Window() throws Exception {
+    // Arrange
+    CoalescingSaveTokens saveTokens = new CoalescingSaveTokens(delegate, Duration.ofMillis(50), 100, executor);
+
+    // Act
+    CompletableFuture<Void> first = saveTokens.saveTokens(req("a"));
+    CompletableFuture<Void> second = saveTokens.saveTokens(req("b"));
+    await().atMost(1000, MILLISECONDS)
+           .until(() -> first.isDone() && second.isDone());
+
+    // Assert
+    Assert.assertEquals(1, batches.size());
+    Assert.assertEquals(2, batches.get(0)
+                                  .size());
+    Assert.assertEquals("a", batches.get(0)
+                                    .get(0).accessToken.get());
+    Assert.assertEquals("b", batches.get(0)
+                                    .get(1).accessToken.get());
+    Assert.assertEquals(1, executed.get());
+  }
+
+  @Test
+  public void saveTokens_Blocking_Delegate_Does_Not_Hold_Up_Other_Batches() throws Exception {
+    // Arrange
+    CountDownLatch blocked = new CountDownLatch(1);
+    CoalescingSaveTokens blocking = new CoalescingSaveTokens((tokens) -> {
+      try {
+        blocked.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread()
+              .interrupt();
+      }
+      return written;
+    }, Duration.ofMillis(10), 100, executor);
+    CoalescingSaveTokens saveTokens = new CoalescingSaveTokens(delegate, Duration.ofMillis(20), 100, executor);
+
+    // Act
+    CompletableFuture<Void> stuck = blocking.saveTokens(req("a"));
+    CompletableFuture<Void> saved = saveTokens.saveTokens(req("b"));
+
+    // Assert
+    try {
+      await().atMost(1000, MILLISECONDS)
+             .until(saved::isDone);
+      Assert.assertFalse(stuck.isDone());
+    } finally {
+      blocked.countDown();
+    }
+  }
+
+  @Test
+  public void saveTokens_Rejected_Write_Fails_Batch() throws Exception {
+    // Arrange
+    CoalescingSaveTokens saveTokens = new CoalescingSaveTokens(delegate, Duration.ofMillis(10), 100, (task) -> {
+      throw new RejectedExecutionException("Shut down");
+    });
+
+    // Act
+    CompletableFuture<Void> first = saveTokens.saveTokens(req("a"));
+    await().atMost(1000, MILLISECONDS)
+           .until(first::isDone);
+
+    // Assert
+    Assert.assertTrue(first.isCompletedExceptionally());
+    Assert.assertTrue(batches.isEmpty());
+  }
+
+  @Test
+  public void saveTokens_Writes_Full_Batch_Immediately() throws Exception {
+    // Arrange
+    CoalescingSaveTokens saveTokens = new CoalescingSaveTokens(delegate, Duration.ofMinutes(1), 2, executor);
+
+    // Act
+    CompletableFuture<Void> first = saveTokens.saveTokens(req("a"));
+    CompletableFuture<Void> second = saveTokens.saveTokens(req("b"));
+    CompletableFuture<Void> third = saveTokens.saveTokens(req("c"));
+
+    // Assert
+    Assert.assertTrue(first.isDone());
+    Assert.assertTrue(second.isDone());
+    Assert.assertFalse(third.isDone());
+    Assert.assertEquals(1, batches.size());
+  }
+
+  @Test
+  public void saveTokens_Failed_Write_Fails_Batch() throws Exception {
+    // Arrange
+    written = new CompletableFuture<>();
+    CoalescingSaveTokens saveTokens = new CoalescingSaveTokens(delegate, Duration.ofMinutes(1), 2, executor);
+
+    // Act
+    CompletableFuture<Void> first = saveTokens.saveTokens(req("a"));
+    CompletableFuture<Void> second = saveTokens.saveTokens(req("b"));
+    written.completeExceptionally(new IllegalStateException("Store unavailable"));
+
+    // Assert
+    Assert.assertTrue(first.isCompletedExceptionally());
+    Assert.assertTrue(second.isCompletedExceptionally());
+  }
+
+  private static List<SaveTokensReq> req(String accessToken) {
+    return Collections.singletonList(new SaveTokensReq(Optional.of(accessToken), Optional.empty(), Optional.empty(),
+        Optional.empty(), "client", "user"));
+  }
+
+}
@@ -0,0 +1,111 @@
+package com.etiennek.auth.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.etiennek.auth.core.model.ErrorCode;
+
+public class ErrorLogTest {
+
+  private Logger logger;
+  private List<LogRecord> records;
+  private long now;
+
+  @Before
+  public void init() {
+    logger = Logger.getLogger(ErrorLogTest.class.getName());
+    logger.setUseParentHandlers(false);
+    logger.setLevel(Level.ALL);
+    records = new ArrayList<>();
+    logger.addHandler(new Handler() {
+      @Override
+      public void publish(LogRecord record) {
+        records.add(record);
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+    now = 0;
+  }
+
+  @After
+  public void cleanUp() {
+    for (Handler handler : logger.getHandlers()) {
+      logger.removeHandler(handler);
+    }
+  }
+
+  @Test
+  public void log_Rate_Limited_Per_Error_Code() throws Exception {
+    // Arrange
+    ErrorLog errorLog = new ErrorLog(logger, 2, () -> now);
+
+    // Act
+    for (int i = 0; i < 5; i++) {
+      errorLog.log(ErrorCode.INVALID_CLIENT, 401, "Invalid client credentials.", false, null);
+    }
+    errorLog.log(ErrorCode.INVALID_GRANT, 400, "User credentials are invalid.", false, null);
+    now += TimeUnit.SECONDS.toNanos(1);
+    errorLog.log(ErrorCode.INVALID_CLIENT, 401, "Invalid client credentials.", false, null);
+
+    // Assert
+    Assert.assertEquals(4, records.size());
+    ErrorEvent last = (ErrorEvent) records.get(3)
+                                          .getParameters()[0];
+    Assert.assertEquals(ErrorCode.INVALID_CLIENT, last.getErrorCode());
+    Assert.assertEquals(3, last.getSuppressed());
+    Assert.assertEquals(Level.INFO, records.get(3)
+                                           .getLevel());
+  }
+
+  @Test
+  public void log_Level_Guard() throws Exception {
+    // Arrange
+    ErrorLog errorLog = new ErrorLog(logger, 0, () -> now);
+    logger.setLevel(Level.WARNING);
+    IllegalStateException cause = new IllegalStateException("Store unavailable");
+
+    // Act
+    errorLog.log(ErrorCode.INVALID_CLIENT, 401, "Invalid client credentials.", false, null);
+    errorLog.log(ErrorCode.SERVER_ERROR, 500, "An unknown error has occured.", true, cause);
+
+    // Assert
+    Assert.assertEquals(1, records.size());
+    Assert.assertEquals(Level.SEVERE, records.get(0)
+                                             .getLevel());
+    Assert.assertSame(cause, records.get(0)
+                                    .getThrown());
+    Assert.assertTrue(((ErrorEvent) records.get(0)
+                                           .getParameters()[0]).isVerify());
+  }
+
+  @Test
+  public void log_Level_From_Status_Sent() throws Exception {
+    // Arrange
+    ErrorLog errorLog = new ErrorLog(logger, 0, () -> now);
+
+    // Act
+    errorLog.log(ErrorCode.TEMPORARILY_UNAVAILABLE, 429, "Too many requests.", false, null);
+
+    // Assert
+    Assert.assertEquals(Level.INFO, records.get(0)
+                                           .getLevel());
+  }
+
+}
@@ -0,0 +1,66 @@
+package com.etiennek.auth.core;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FormBodyTest {
+
+  @Test
+  public void parse_Known_Parameters() throws Exception {
+    // Act
+    FormBody body = parse("grant_type=password&username=Joe+THE%20USAH&password=4w%C3%A9some%2&scope=a&code=");
+
+    // Assert
+    Assert.assertNull(body.getError());
+    Assert.assertEquals("password", body.get("grant_type"));
+    Assert.assertEquals("Joe THE USAH", body.get("username"));
+    Assert.assertEquals("4wésome%2", body.get("password"));
+    Assert.assertEquals("", body.get("code"));
+    Assert.assertNull(body.get("refresh_token"));
+    Assert.assertNull(body.get("scope"));
+    Assert.assertSame(body.get("username"), body.get("username"));
+    Assert.assertEquals(4, body.toMap()
+                               .size());
+  }
+
+  @Test
+  public void parse_Encoded_Name() throws Exception {
+    // Act
+    FormBody body = parse("grant%5Ftype=password");
+
+    // Assert
+    Assert.assertEquals("password", body.get("grant_type"));
+  }
+
+  @Test
+  public void parse_FAILURE_Duplicate_Parameter() throws Exception {
+    // Act
+    FormBody body = parse("grant_type=password&grant_type=client_credentials");
+
+    // Assert
+    Assert.assertEquals("Parameter grant_type was sent more than once.", body.getError());
+  }
+
+  @Test
+  public void parse_FAILURE_Parameter_Too_Long() throws Exception {
+    // Arrange
+    StringBuilder form = new StringBuilder("grant_type=password&username=");
+    for (int i = 0; i <= FormBody.MAX_VALUE_LENGTH; i++) {
+      form.append('a');
+    }
+
+    // Act
+    FormBody body = parse(form.toString());
+
+    // Assert
+    Assert.assertEquals("Parameter username is too long.", body.getError());
+  }
+
+  private static FormBody parse(String form) {
+    byte[] bytes = ("ignored" + form).getBytes(StandardCharsets.US_ASCII);
+    return FormBody.parse(bytes, 7, bytes.length - 7);
+  }
+
+}
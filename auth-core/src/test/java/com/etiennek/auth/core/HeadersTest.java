@@ -0,0 +1,46 @@
+package com.etiennek.auth.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HeadersTest {
+
+  @Test
+  public void get_Case_Insensitive_Without_Copy() throws Exception {
+    // Arrange
+    Map<String, String[]> map = new LinkedHashMap<>();
+    map.put("content-type", new String[] {"text/plain"});
+    map.put("Authorization", new String[] {"Basic abc", "Basic def"});
+    map.put("accept", new String[0]);
+
+    // Act
+    Headers headers = Headers.of(map);
+
+    // Assert
+    Assert.assertEquals("text/plain", headers.get("Content-Type"));
+    Assert.assertEquals("Basic abc", headers.get("authorization"));
+    Assert.assertNull(headers.get("Accept"));
+    Assert.assertNull(headers.get("Host"));
+    Assert.assertArrayEquals(new String[] {"text/plain"}, headers.toMap()
+                                                                 .get("CONTENT-TYPE"));
+  }
+
+  @Test
+  public void toMap_Keeps_Case_Insensitive_Map() throws Exception {
+    // Arrange
+    Map<String, String[]> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    map.put("Content-Type", new String[] {"text/plain"});
+
+    // Act
+    Headers headers = Headers.of(map);
+
+    // Assert
+    Assert.assertEquals("text/plain", headers.get("content-type"));
+    Assert.assertSame(map, headers.toMap());
+  }
+
+}
@@ -0,0 +1,204 @@
+package com.etiennek.auth.core;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.etiennek.auth.core.model.BlockingFunctions;
+import com.etiennek.auth.core.model.TokenType;
+import com.etiennek.auth.core.model.func.GenerateToken.GenerateTokenRes;
+import com.etiennek.auth.core.model.func.GetAccessToken.GetAccessTokenRes;
+import com.etiennek.auth.core.model.func.GetClient.GetClientRes;
+import com.etiennek.auth.core.model.func.GetUser.GetUserRes;
+import com.etiennek.auth.core.model.func.IsGrantTypeAllowed.IsGrantTypeAllowedRes;
+
+public class OAuth2ServerTest_Blocking extends TestBase {
+
+  private ExecutorService pool;
+  private AtomicInteger tasks;
+  private List<String> callThreads;
+  private RuntimeException getUserError;
+
+  @Before
+  public void init() {
+    super.init();
+    pool = Executors.newSingleThreadExecutor((runnable) -> new Thread(runnable, "blockingThread"));
+    tasks = new AtomicInteger();
+    callThreads = new ArrayList<>();
+    getUserError = null;
+
+    Executor executor = (task) -> {
+      tasks.incrementAndGet();
+      pool.execute(task);
+    };
+
+    BlockingFunctions.Required blockingRequired = new BlockingFunctions.Required() {
+      @Override
+      public GetAccessTokenRes getAccessToken(String bearerToken) {
+        callThreads.add(Thread.currentThread()
+                              .getName());
+        return new GetAccessTokenRes(accessToken);
+      }
+
+      @Override
+      public GetClientRes getClient(String clientId, String clientSecret) {
+        callThreads.add(Thread.currentThread()
+                              .getName());
+        if (clientLookupLatch != null) {
+          clientLookupLatch.join();
+        }
+        return new GetClientRes(client);
+      }
+
+      @Override
+      public IsGrantTypeAllowedRes isGrantTypeAllowed(String clientId, String grantType) {
+        callThreads.add(Thread.currentThread()
+                              .getName());
+        return new IsGrantTypeAllowedRes(isGrantTypeAllowed);
+      }
+
+      @Override
+      public void saveAccessToken(String accessToken, String clientId, String userId,
+          Optional<LocalDateTime> expires) {
+        callThreads.add(Thread.currentThread()
+                              .getName());
+        Assert.assertEquals(ACCESS_TOKEN, accessToken);
+      }
+
+      @Override
+      public GenerateTokenRes generateToken(TokenType tokenType) {
+        return new GenerateTokenRes(ACCESS_TOKEN);
+      }
+
+      @Override
+      public LocalDateTime getNow() {
+        return now;
+      }
+    };
+
+    configBuilder = new OAuth2ServerConfiguration.Builder(blockingRequired).withBlockingPasswordGrantTypeSupport(
+        (username, password) -> {
+          callThreads.add(Thread.currentThread()
+                                .getName());
+          if (getUserError != null) {
+            throw getUserError;
+          }
+          return new GetUserRes(user);
+        })
+                                                                           .withBlockingExecutor(executor)
+                                                                           .withAccessTokenLifetime(
+                                                                               ACCESS_TOKEN_LIFETIME);
+  }
+
+  @After
+  public void shutdown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void grant_SUCCESS_Blocking_Functions_Run_On_One_Task() throws Exception {
+    // Arrange
+    clientLookupLatch = new CompletableFuture<>();
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("access_token", ACCESS_TOKEN);
+    map.put("token_type", "bearer");
+    map.put("expires_in", ACCESS_TOKEN_LIFETIME.getSeconds());
+
+    // Act
+    server().grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME, USER_PASSWORD))
+            .whenComplete((response, e) -> {
+              actualResponse = response;
+            });
+    // Only once the grant is waiting for the client, which it then resumes from
+    clientLookupLatch.complete(null);
+
+    await().atMost(1000, MILLISECONDS)
+           .until(() -> actualResponse != null);
+
+    // Assert
+    assertResponse(200, jsonResponseHeader(), gson.toJson(map), actualResponse);
+    Assert.assertEquals(1, tasks.get());
+    Assert.assertEquals(4, callThreads.size());
+    for (String thread : callThreads) {
+      Assert.assertEquals("blockingThread", thread);
+    }
+  }
+
+  @Test
+  public void grant_SUCCESS_Blocking_Functions_Run_On_One_Task_With_Cpu_Executor() throws Exception {
+    // Arrange
+    ExecutorService cpuExecutor = Executors.newSingleThreadExecutor((runnable) -> new Thread(runnable, "cpuThread"));
+    configBuilder.withCpuExecutor(cpuExecutor);
+
+    // Act
+    try {
+      server().grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME, USER_PASSWORD))
+              .whenComplete((response, e) -> {
+                actualResponse = response;
+              });
+      await().atMost(1000, MILLISECONDS)
+             .until(() -> actualResponse != null);
+    } finally {
+      cpuExecutor.shutdown();
+    }
+
+    // Assert
+    Assert.assertEquals(200, actualResponse.getCode());
+    Assert.assertEquals(1, tasks.get());
+  }
+
+  @Test
+  public void grant_FAILURE_Blocking_Function_Throws() throws Exception {
+    // Arrange
+    getUserError = new IllegalStateException("Store unavailable");
+
+    // Act
+    server().grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME, USER_PASSWORD))
+            .whenComplete((response, e) -> {
+              actualResponse = response;
+            });
+
+    await().atMost(1000, MILLISECONDS)
+           .until(() -> actualResponse != null);
+
+    // Assert
+    assertResponse(500, urlFormEncodedResponseHeader(), null, actualResponse);
+  }
+
+  @Test
+  public void verify_SUCCESS_Blocking_Functions() throws Exception {
+    // Arrange
+    Map<String, String[]> requestHeader = new LinkedHashMap<>();
+    requestHeader.put("Authorization", new String[] {"Bearer " + ACCESS_TOKEN});
+
+    // Act
+    server().verify(new FormRequest("GET", requestHeader, new LinkedHashMap<>()))
+            .whenComplete((response, e) -> {
+              actualResponse = response;
+            });
+
+    await().atMost(1000, MILLISECONDS)
+           .until(() -> actualResponse != null);
+
+    // Assert
+    Assert.assertEquals(200, actualResponse.getCode());
+    Assert.assertEquals(1, tasks.get());
+  }
+
+}
@@ -4,17 +4,31 @@ import static com.etiennek.auth.core.Const.*;
 import static com.jayway.awaitility.Awaitility.*;
 import static java.util.concurrent.TimeUnit.*;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.etiennek.auth.core.metrics.DefaultMetrics;
+import com.etiennek.auth.core.metrics.GrantStage;
+import com.etiennek.auth.core.metrics.MetricsSnapshot;
 import com.etiennek.auth.core.model.ErrorCode;
+import com.etiennek.auth.core.model.func.GetUser.GetUserRes;
+import com.etiennek.auth.core.model.func.SaveTokens.SaveTokensReq;
 
 public class OAuth2ServerTest_Generic extends TestBase {
 
@@ -109,6 +123,314 @@ public class OAuth2ServerTest_Generic extends TestBase {
     assertResponse(expectedResponseCode, expectedResponseHeader, expectedResponseBody, actualResponse);
   }
 
+  @Test
+  public void grant_SUCCESS_Completes_Inline_When_Functions_Complete_Immediately() throws Exception {
+    // Arrange - Server
+    generateTokenAsync = false;
+
+    // Arrange - Expected Response
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("access_token", ACCESS_TOKEN);
+    map.put("token_type", "bearer");
+    map.put("expires_in", ACCESS_TOKEN_LIFETIME.getSeconds());
+    map.put("refresh_token", REFRESH_TOKEN);
+
+    int expectedResponseCode = 200;
+    Map<String, String[]> expectedResponseHeader = jsonResponseHeader();
+    String expectedResponseBody = gson.toJson(map);
+
+    // Act
+    CompletableFuture<Response> response =
+        server().grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME, USER_PASSWORD));
+
+    // Assert
+    Assert.assertTrue(response.isDone());
+    assertResponse(expectedResponseCode, expectedResponseHeader, expectedResponseBody, response.get());
+  }
+
+  @Test
+  public void grant_SUCCESS_Client_Cache() throws Exception {
+    // Arrange - Server
+    generateTokenAsync = false;
+    configBuilder.withClientCache(100, Duration.ofMinutes(5), null);
+    OAuth2Server server = server();
+    server.grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME, USER_PASSWORD));
+
+    // Arrange - Store no longer reachable
+    client = Optional.empty();
+    isGrantTypeAllowed = false;
+
+    // Act
+    Response response = server.grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME,
+        USER_PASSWORD))
+                              .get();
+
+    // Assert
+    assertResponse(200, jsonResponseHeader(), null, response);
+  }
+
+  @Test
+  public void grant_FAILURE_Pending_Function_Fails() throws Exception {
+    // Arrange - Server
+    CompletableFuture<GetUserRes> pending = new CompletableFuture<>();
+    configBuilder.withPasswordGrantTypeSupport((username, password) -> pending);
+
+    // Act
+    server().grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME, USER_PASSWORD))
+            .whenComplete((response, e) -> {
+              actualResponse = response;
+            });
+    pending.completeExceptionally(new IllegalStateException("Store unavailable"));
+
+    await().atMost(1000, MILLISECONDS)
+           .until(() -> actualResponse != null);
+
+    // Assert
+    assertResponse(500, urlFormEncodedResponseHeader(), null, actualResponse);
+    Assert.assertTrue(actualResponse.getBody()
+                                    .contains("error=" + ErrorCode.SERVER_ERROR + "&"));
+  }
+
+  @Test
+  public void grant_SUCCESS_Cpu_Executor() throws Exception {
+    // Arrange - Server
+    ExecutorService cpuExecutor = Executors.newSingleThreadExecutor((runnable) -> new Thread(runnable, "cpuThread"));
+    CompletableFuture<GetUserRes> pending = new CompletableFuture<>();
+    configBuilder.withPasswordGrantTypeSupport((username, password) -> pending)
+                 .withCpuExecutor(cpuExecutor);
+    List<String> completedOn = new ArrayList<>();
+
+    // Act
+    server().grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME, USER_PASSWORD))
+            .whenComplete((response, e) -> {
+              completedOn.add(Thread.currentThread()
+                                    .getName());
+              actualResponse = response;
+            });
+    new Thread(() -> pending.complete(new GetUserRes(user)), "storeThread").start();
+
+    await().atMost(1000, MILLISECONDS)
+           .until(() -> actualResponse != null);
+    cpuExecutor.shutdown();
+
+    // Assert
+    assertResponse(200, jsonResponseHeader(), null, actualResponse);
+    Assert.assertEquals(Collections.singletonList("cpuThread"), completedOn);
+  }
+
+  @Test
+  public void grant_SUCCESS_Metrics() throws Exception {
+    // Arrange - Server
+    DefaultMetrics metrics = new DefaultMetrics();
+    configBuilder.withMetrics(metrics);
+    OAuth2Server server = server();
+
+    // Act
+    server.grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME, USER_PASSWORD))
+          .get();
+    client = Optional.empty();
+    server.grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME, USER_PASSWORD))
+          .get();
+    server.grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME, USER_PASSWORD))
+          .get();
+    MetricsSnapshot snapshot = metrics.snapshot();
+
+    // Assert
+    Assert.assertEquals(3, snapshot.getGrants()
+                                   .get(GRANT_PASSWORD)
+                                   .getCount());
+    Assert.assertEquals(3, snapshot.getStages()
+                                   .get(GrantStage.CHECK_CLIENT)
+                                   .getCount());
+    Assert.assertEquals(1, snapshot.getStages()
+                                   .get(GrantStage.GENERATE_ACCESS_TOKEN)
+                                   .getCount());
+    Assert.assertTrue(snapshot.getStages()
+                              .get(GrantStage.GENERATE_ACCESS_TOKEN)
+                              .getNanosAtPercentile(50) >= MILLISECONDS.toNanos(100));
+    Assert.assertEquals(0, snapshot.getStages()
+                                   .get(GrantStage.REVOKE_REFRESH_TOKEN)
+                                   .getCount());
+    Assert.assertEquals(Long.valueOf(2), snapshot.getErrors()
+                                                 .get(ErrorCode.INVALID_CLIENT));
+  }
+
+  @Test
+  public void grant_FAILURE_Rate_Limited() throws Exception {
+    // Arrange - Server
+    generateTokenAsync = false;
+    DefaultMetrics metrics = new DefaultMetrics();
+    configBuilder.withClientRateLimit(0.1, 2, 100)
+                 .withRemoteAddressRateLimit(0.1, 3, 100)
+                 .withMetrics(metrics);
+    OAuth2Server server = server();
+
+    // Act
+    Response first = server.grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME,
+        USER_PASSWORD).withRemoteAddress("10.0.0.1"))
+                           .get();
+    Response second = server.grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME,
+        USER_PASSWORD).withRemoteAddress("10.0.0.1"))
+                            .get();
+    Response third = server.grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME,
+        USER_PASSWORD).withRemoteAddress("10.0.0.2"))
+                           .get();
+
+    // Assert
+    assertResponse(200, jsonResponseHeader(), null, first);
+    assertResponse(200, jsonResponseHeader(), null, second);
+    Map<String, String[]> expectedHeader = urlFormEncodedResponseHeader();
+    expectedHeader.put("Retry-After", new String[] {"10"});
+    assertResponse(429, expectedHeader, "error=temporarily_unavailable&error_description=Too+many+requests.", third);
+    // Shed load, not an error
+    Assert.assertEquals(1, metrics.snapshot()
+                                  .getRateLimited());
+    Assert.assertEquals(Long.valueOf(0), metrics.snapshot()
+                                                .getErrors()
+                                                .get(ErrorCode.TEMPORARILY_UNAVAILABLE));
+  }
+
+  @Test
+  public void grant_SUCCESS_Save_Tokens() throws Exception {
+    // Arrange - Server
+    generateTokenAsync = false;
+    List<SaveTokensReq> saved = new ArrayList<>();
+    DefaultMetrics metrics = new DefaultMetrics();
+    configBuilder.withSaveTokens((tokens) -> {
+      saved.addAll(tokens);
+      return CompletableFuture.completedFuture(null);
+    })
+                 .withMetrics(metrics);
+
+    // Act
+    Response response = server().grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME,
+        USER_PASSWORD))
+                                 .get();
+
+    // Assert
+    assertResponse(200, jsonResponseHeader(), null, response);
+    Assert.assertEquals(1, saved.size());
+    SaveTokensReq req = saved.get(0);
+    Assert.assertEquals(ACCESS_TOKEN, req.accessToken.get());
+    Assert.assertEquals(NOW.plus(ACCESS_TOKEN_LIFETIME), req.accessTokenExpires.get());
+    Assert.assertEquals(REFRESH_TOKEN, req.refreshToken.get());
+    Assert.assertEquals(NOW.plus(REFRESH_TOKEN_LIFETIME), req.refreshTokenExpires.get());
+    Assert.assertEquals(CLIENT_ID, req.clientId);
+    Assert.assertEquals(USER_ID, req.userId);
+    Assert.assertEquals(1, metrics.snapshot()
+                                  .getStages()
+                                  .get(GrantStage.SAVE_TOKENS)
+                                  .getCount());
+    Assert.assertEquals(0, metrics.snapshot()
+                                  .getStages()
+                                  .get(GrantStage.SAVE_ACCESS_TOKEN)
+                                  .getCount());
+    Assert.assertEquals(0, metrics.snapshot()
+                                  .getStages()
+                                  .get(GrantStage.SAVE_REFRESH_TOKEN)
+                                  .getCount());
+  }
+
+  @Test
+  public void grant_SUCCESS_Parallel_Lookups() throws Exception {
+    // Arrange - Server
+    configBuilder.withParallelLookups(true);
+    clientLookupLatch = new CompletableFuture<>();
+
+    // Act
+    server().grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME, USER_PASSWORD))
+            .whenComplete((response, e) -> {
+              actualResponse = response;
+            });
+
+    // Assert - The grant type is looked up while the client lookup is still pending, the user only afterwards
+    Assert.assertNull(actualResponse);
+    Assert.assertEquals(1, isGrantTypeAllowedCalls);
+    Assert.assertEquals(0, getUserCalls);
+
+    clientLookupLatch.complete(null);
+    await().atMost(1000, MILLISECONDS)
+           .until(() -> actualResponse != null);
+
+    Assert.assertEquals(200, actualResponse.getCode());
+    Assert.assertEquals(1, getUserCalls);
+  }
+
+  @Test
+  public void grant_FAILURE_Parallel_Lookup_Fails_Before_Client_Lookup_Completes() throws Exception {
+    // Arrange
+    isGrantTypeAllowedError = new IllegalStateException("Store unavailable");
+    configBuilder.withParallelLookups(true);
+    clientLookupLatch = new CompletableFuture<>();
+
+    // Act
+    server().grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME, USER_PASSWORD))
+            .whenComplete((response, e) -> {
+              actualResponse = response;
+            });
+    await().atMost(1000, MILLISECONDS)
+           .until(() -> actualResponse != null);
+    clientLookupLatch.complete(null);
+
+    // Assert
+    Assert.assertEquals(500, actualResponse.getCode());
+    Assert.assertEquals(0, getUserCalls);
+  }
+
+  @Test
+  public void grant_FAILURE_Parallel_Lookups_Keep_Error_Order() throws Exception {
+    // Arrange
+    client = Optional.empty();
+    user = Optional.empty();
+    configBuilder.withParallelLookups(true);
+    clientLookupLatch = new CompletableFuture<>();
+
+    // Act
+    server().grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME, USER_PASSWORD))
+            .whenComplete((response, e) -> {
+              actualResponse = response;
+            });
+    clientLookupLatch.complete(null);
+
+    await().atMost(1000, MILLISECONDS)
+           .until(() -> actualResponse != null);
+
+    // Assert
+    Assert.assertEquals(401, actualResponse.getCode());
+    Assert.assertTrue(actualResponse.getBody()
+                                    .contains("error=" + ErrorCode.INVALID_CLIENT + "&"));
+  }
+
+  @Test
+  public void grant_SUCCESS_Form_Body() throws Exception {
+    // Arrange
+    generateTokenAsync = false;
+    FormRequest request = newFormBodyRequest("grant_type=password&username=" + USER_USERNAME + "&password="
+        + URLEncoder.encode(USER_PASSWORD, "UTF-8") + "&scope=ignored");
+
+    // Act
+    Response response = server().grant(request)
+                                .get();
+
+    // Assert
+    assertResponse(200, jsonResponseHeader(), null, response);
+  }
+
+  @Test
+  public void grant_FAILURE_Form_Body_Duplicate_Parameter() throws Exception {
+    // Arrange
+    FormRequest request = newFormBodyRequest("grant_type=password&username=" + USER_USERNAME + "&username=other");
+
+    // Act
+    Response response = server().grant(request)
+                                .get();
+
+    // Assert
+    assertResponse(400, urlFormEncodedResponseHeader(), null, response);
+    Assert.assertTrue(response.getBody()
+                              .contains("error=" + ErrorCode.INVALID_REQUEST + "&"));
+  }
+
   @Test
   public void grant_FAILURE_Invalid_Request_Content_Type() throws Exception {
     // Arrange - Request
@@ -356,4 +678,14 @@ public class OAuth2ServerTest_Generic extends TestBase {
                                     .contains("error=" + ErrorCode.INVALID_CLIENT + "&"));
   }
 
+  private static FormRequest newFormBodyRequest(String form) {
+    Map<String, String[]> requestHeader = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    requestHeader.put("Authorization",
+        new String[] {"Basic " + Base64.getEncoder()
+                                       .encodeToString((CLIENT_ID + ":" + CLIENT_SECRET).getBytes())});
+    requestHeader.put("Content-Type", new String[] {MEDIA_X_WWW_FORM_URLENCODED});
+    byte[] body = form.getBytes(StandardCharsets.UTF_8);
+    return new FormRequest("POST", requestHeader, FormBody.parse(body, 0, body.length));
+  }
+
 }
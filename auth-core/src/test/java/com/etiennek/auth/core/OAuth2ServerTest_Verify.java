@@ -0,0 +1,327 @@
+package com.etiennek.auth.core;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.etiennek.auth.core.cache.CacheStats;
+import com.etiennek.auth.core.metrics.DefaultMetrics;
+import com.etiennek.auth.core.metrics.OAuth2Metrics;
+import com.etiennek.auth.core.model.AccessToken;
+import com.etiennek.auth.core.model.ErrorCode;
+import com.etiennek.auth.core.model.RequiredFunctions;
+import com.etiennek.auth.core.model.func.GetAccessToken.GetAccessTokenRes;
+import com.etiennek.auth.core.resp.AuthorisedResponse;
+
+public class OAuth2ServerTest_Verify extends TestBase {
+
+  @Before
+  public void init() {
+    super.init();
+  }
+
+  @Test
+  public void verify_SUCCESS_Authorization_Header() throws Exception {
+    // Act
+    CompletableFuture<Response> response = server().verify(newVerifyRequest("GET", "Bearer " + ACCESS_TOKEN, null, null));
+
+    // Assert
+    Assert.assertTrue(response.isDone());
+    assertAuthorised(response.get());
+  }
+
+  @Test
+  public void verify_SUCCESS_Query_Parameter() throws Exception {
+    // Act
+    Response response = server().verify(newVerifyRequest("GET", null, null, ACCESS_TOKEN))
+                                .get();
+
+    // Assert
+    assertAuthorised(response);
+  }
+
+  @Test
+  public void verify_SUCCESS_Form_Body() throws Exception {
+    // Act
+    Response response = server().verify(newVerifyRequest("POST", null, Const.MEDIA_X_WWW_FORM_URLENCODED, ACCESS_TOKEN))
+                                .get();
+
+    // Assert
+    assertAuthorised(response);
+  }
+
+  @Test
+  public void verify_SUCCESS_Pending_Lookup() throws Exception {
+    // Arrange
+    CompletableFuture<GetAccessTokenRes> pending = new CompletableFuture<>();
+    OAuth2Server server = new OAuth2Server(new OAuth2ServerConfiguration.Builder(new RequiredFunctions() {
+      @Override
+      public LocalDateTime getNow() {
+        return now;
+      }
+
+      @Override
+      public CompletableFuture<GetAccessTokenRes> getAccessToken(String bearerToken) {
+        return pending;
+      }
+
+      @Override
+      public CompletableFuture<GetClientRes> getClient(String clientId, String clientSecret) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public CompletableFuture<IsGrantTypeAllowedRes> isGrantTypeAllowed(String clientId, String grantType) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public CompletableFuture<Void> saveAccessToken(String accessToken, String clientId, String userId,
+          Optional<LocalDateTime> expires) {
+        throw new UnsupportedOperationException();
+      }
+    }).build());
+
+    // Act
+    server.verify(newVerifyRequest("GET", "Bearer " + ACCESS_TOKEN, null, null))
+          .whenComplete((response, e) -> {
+            actualResponse = response;
+          });
+    pending.complete(new GetAccessTokenRes(accessToken));
+
+    await().atMost(1000, MILLISECONDS)
+           .until(() -> actualResponse != null);
+
+    // Assert
+    assertAuthorised(actualResponse);
+  }
+
+  @Test
+  public void verify_SUCCESS_Access_Token_Cache() throws Exception {
+    // Arrange
+    configBuilder.withAccessTokenCache(100, Duration.ofMinutes(1), null);
+    OAuth2Server server = server();
+    server.verify(newVerifyRequest("GET", "Bearer " + ACCESS_TOKEN, null, null));
+    accessToken = Optional.empty();
+
+    // Act
+    Response response = server.verify(newVerifyRequest("GET", "Bearer " + ACCESS_TOKEN, null, null))
+                              .get();
+
+    // Assert
+    assertAuthorised(response);
+    Assert.assertEquals(1, server.config.getAccessTokenCache()
+                                        .get()
+                                        .stats()
+                                        .getHitCount());
+  }
+
+  @Test
+  public void verify_SUCCESS_Access_Token_Cache_Metrics() throws Exception {
+    // Arrange
+    DefaultMetrics metrics = new DefaultMetrics();
+    configBuilder.withAccessTokenCache(100, Duration.ofMinutes(1), null)
+                 .withMetrics(metrics);
+    OAuth2Server server = server();
+
+    // Act
+    server.verify(newVerifyRequest("GET", "Bearer " + ACCESS_TOKEN, null, null));
+    server.verify(newVerifyRequest("GET", "Bearer " + ACCESS_TOKEN, null, null));
+    CacheStats stats = metrics.snapshot()
+                              .getCaches()
+                              .get(OAuth2Metrics.ACCESS_TOKEN_CACHE);
+
+    // Assert
+    Assert.assertEquals(1, stats.getHitCount());
+    Assert.assertEquals(1, stats.getMissCount());
+    Assert.assertFalse(metrics.snapshot()
+                              .getCaches()
+                              .containsKey(OAuth2Metrics.CLIENT_CACHE));
+  }
+
+  @Test
+  public void verify_SUCCESS_Signed_Access_Token() throws Exception {
+    // Arrange - Nothing in the store
+    accessToken = Optional.empty();
+    configBuilder.withSignedAccessTokens(new SignedTokenCodec("k1", Collections.singletonMap("k1",
+        SignedTokenCodec.hmac(new byte[32]))));
+    OAuth2Server server = server();
+    String signedToken = grantSignedToken(server);
+
+    // Act
+    Response response = server.verify(newVerifyRequest("GET", "Bearer " + signedToken, null, null))
+                              .get();
+
+    // Assert
+    Assert.assertEquals(200, response.getCode());
+    AccessToken token = ((AuthorisedResponse) response).getAccessToken();
+    Assert.assertEquals(signedToken, token.getToken());
+    Assert.assertEquals(CLIENT_ID, token.getClientId());
+    Assert.assertEquals(USER_ID, token.getUserId());
+  }
+
+  @Test
+  public void verify_FAILURE_Signed_Access_Token_Tampered() throws Exception {
+    // Arrange
+    configBuilder.withSignedAccessTokens(new SignedTokenCodec("k1", Collections.singletonMap("k1",
+        SignedTokenCodec.hmac(new byte[32]))));
+    OAuth2Server server = server();
+    String signedToken = grantSignedToken(server);
+    String tampered = signedToken.substring(0, signedToken.length() - 2)
+        + (signedToken.endsWith("AA") ? "BB" : "AA");
+
+    // Act
+    Response response = server.verify(newVerifyRequest("GET", "Bearer " + tampered, null, null))
+                              .get();
+
+    // Assert
+    assertBearerError(ErrorCode.INVALID_TOKEN, 401, response);
+  }
+
+  @Test
+  public void verify_FAILURE_Signed_Access_Token_Expired() throws Exception {
+    // Arrange
+    configBuilder.withSignedAccessTokens(new SignedTokenCodec("k1", Collections.singletonMap("k1",
+        SignedTokenCodec.hmac(new byte[32]))));
+    OAuth2Server server = server();
+    String signedToken = grantSignedToken(server);
+    now = now.plus(ACCESS_TOKEN_LIFETIME)
+             .plusSeconds(1);
+
+    // Act
+    Response response = server.verify(newVerifyRequest("GET", "Bearer " + signedToken, null, null))
+                              .get();
+
+    // Assert
+    assertBearerError(ErrorCode.INVALID_TOKEN, 401, response);
+    Assert.assertTrue(response.getBody()
+                              .contains("expired"));
+  }
+
+  @Test
+  public void verify_FAILURE_Missing_Token() throws Exception {
+    // Act
+    Response response = server().verify(newVerifyRequest("GET", null, null, null))
+                                .get();
+
+    // Assert
+    assertBearerError(ErrorCode.INVALID_REQUEST, 400, response);
+  }
+
+  @Test
+  public void verify_FAILURE_Multiple_Methods() throws Exception {
+    // Act
+    Response response = server().verify(newVerifyRequest("GET", "Bearer " + ACCESS_TOKEN, null, ACCESS_TOKEN))
+                                .get();
+
+    // Assert
+    assertBearerError(ErrorCode.INVALID_REQUEST, 400, response);
+  }
+
+  @Test
+  public void verify_FAILURE_Body_Without_Form_Encoding() throws Exception {
+    // Act
+    Response response = server().verify(newVerifyRequest("POST", null, "application/json", ACCESS_TOKEN))
+                                .get();
+
+    // Assert
+    assertBearerError(ErrorCode.INVALID_REQUEST, 400, response);
+  }
+
+  @Test
+  public void verify_FAILURE_Malformed_Token() throws Exception {
+    // Act
+    Response response = server().verify(newVerifyRequest("GET", "Bearer " + ACCESS_TOKEN + "\"", null, null))
+                                .get();
+
+    // Assert
+    assertBearerError(ErrorCode.INVALID_REQUEST, 400, response);
+  }
+
+  @Test
+  public void verify_FAILURE_Unknown_Token() throws Exception {
+    // Arrange
+    accessToken = Optional.empty();
+
+    // Act
+    Response response = server().verify(newVerifyRequest("GET", "Bearer " + ACCESS_TOKEN, null, null))
+                                .get();
+
+    // Assert
+    assertBearerError(ErrorCode.INVALID_TOKEN, 401, response);
+  }
+
+  @Test
+  public void verify_FAILURE_Expired_Token() throws Exception {
+    // Arrange
+    accessToken = Optional.of(new AccessToken(ACCESS_TOKEN, CLIENT_ID, USER_ID, now.minusNanos(1)));
+
+    // Act
+    Response response = server().verify(newVerifyRequest("GET", "Bearer " + ACCESS_TOKEN, null, null))
+                                .get();
+
+    // Assert
+    assertBearerError(ErrorCode.INVALID_TOKEN, 401, response);
+    Assert.assertTrue(response.getBody()
+                              .contains("expired"));
+  }
+
+  private String grantSignedToken(OAuth2Server server) throws Exception {
+    Response response = server.grant(newPasswordGrantTypeRequest(CLIENT_ID, CLIENT_SECRET, USER_USERNAME,
+        USER_PASSWORD))
+                              .get();
+    Assert.assertEquals(200, response.getCode());
+    String ret = (String) gson.fromJson(response.getBody(), Map.class)
+                              .get("access_token");
+    Assert.assertTrue(SignedTokenCodec.isSignedToken(ret));
+    return ret;
+  }
+
+  private void assertAuthorised(Response response) {
+    Assert.assertEquals(200, response.getCode());
+    Assert.assertTrue(response instanceof AuthorisedResponse);
+    AccessToken token = ((AuthorisedResponse) response).getAccessToken();
+    Assert.assertEquals(ACCESS_TOKEN, token.getToken());
+    Assert.assertEquals(CLIENT_ID, token.getClientId());
+    Assert.assertEquals(USER_ID, token.getUserId());
+  }
+
+  private static void assertBearerError(ErrorCode expectedErrorCode, int expectedResponseCode, Response response) {
+    Assert.assertEquals(expectedResponseCode, response.getCode());
+    Assert.assertTrue(response.getBody()
+                              .contains("error=" + expectedErrorCode + "&"));
+    Assert.assertTrue(response.getHeader()
+                              .get("WWW-Authenticate")[0].startsWith("Bearer realm=\"Service\", error=\""
+        + expectedErrorCode + "\""));
+  }
+
+  private static FormRequest newVerifyRequest(String method, String authorization, String contentType, String token) {
+    Map<String, String[]> requestHeader = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    if (authorization != null) {
+      requestHeader.put("Authorization", new String[] {authorization});
+    }
+    if (contentType != null) {
+      requestHeader.put("Content-Type", new String[] {contentType});
+    }
+
+    Map<String, String[]> requestBody = new LinkedHashMap<>();
+    if (token != null) {
+      requestBody.put("access_token", new String[] {token});
+    }
+
+    return new FormRequest(method, requestHeader, requestBody);
+  }
+
+}
@@ -0,0 +1,53 @@
+package com.etiennek.auth.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void tryAcquire_Burst_Then_Rate() throws Exception {
+    // Arrange
+    RateLimiter limiter = new RateLimiter(2, 3, 100);
+    long now = 1000;
+
+    // Act & Assert
+    Assert.assertEquals(0, limiter.tryAcquire("client", now));
+    Assert.assertEquals(0, limiter.tryAcquire("client", now));
+    Assert.assertEquals(0, limiter.tryAcquire("client", now));
+    Assert.assertEquals(SECOND / 2, limiter.tryAcquire("client", now));
+    Assert.assertEquals(0, limiter.tryAcquire("other", now));
+
+    Assert.assertEquals(0, limiter.tryAcquire("client", now + SECOND / 2));
+    Assert.assertEquals(SECOND / 2, limiter.tryAcquire("client", now + SECOND / 2));
+  }
+
+  @Test
+  public void tryAcquire_Bounded_Keys() throws Exception {
+    // Arrange
+    RateLimiter limiter = new RateLimiter(1, 1, 8);
+    long now = 1000;
+
+    // Act - A flood of keys that each keep their bucket busy
+    for (int i = 0; i < 1000; i++) {
+      limiter.tryAcquire("client" + i, now);
+    }
+
+    // Assert
+    Assert.assertTrue(limiter.size() <= 8);
+
+    // Act - Idle buckets are dropped before busy ones
+    limiter.tryAcquire("busy", now + 10 * SECOND);
+    for (int i = 0; i < 7; i++) {
+      limiter.tryAcquire("new" + i, now + 10 * SECOND);
+    }
+
+    // Assert
+    Assert.assertEquals(SECOND, limiter.tryAcquire("busy", now + 10 * SECOND));
+  }
+
+}
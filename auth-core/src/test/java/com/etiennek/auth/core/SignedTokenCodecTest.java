@@ -0,0 +1,126 @@
+package com.etiennek.auth.core;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.etiennek.auth.core.model.AccessToken;
+
+public class SignedTokenCodecTest {
+
+  private static final LocalDateTime EXPIRES = LocalDateTime.of(2014, 9, 24, 13, 05, 28);
+
+  @Test
+  public void hs256_Round_Trip() throws Exception {
+    // Arrange
+    SignedTokenCodec codec = new SignedTokenCodec("k1", Collections.singletonMap("k1", hmacKey(1)));
+
+    // Act
+    String token = codec.sign("client", "user \"1\"", Optional.of(EXPIRES));
+    Optional<AccessToken> accessToken = codec.verify(token);
+
+    // Assert
+    Assert.assertTrue(accessToken.isPresent());
+    Assert.assertEquals(token, accessToken.get()
+                                          .getToken());
+    Assert.assertEquals("client", accessToken.get()
+                                             .getClientId());
+    Assert.assertEquals("user \"1\"", accessToken.get()
+                                                 .getUserId());
+    Assert.assertEquals(EXPIRES, accessToken.get()
+                                            .getExpires());
+    Assert.assertTrue(Verify.isBearerToken(token));
+  }
+
+  @Test
+  public void es256_Round_Trip() throws Exception {
+    // Arrange
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    KeyPair keyPair = generator.generateKeyPair();
+    SignedTokenCodec codec = new SignedTokenCodec("ec", Collections.singletonMap("ec",
+        SignedTokenCodec.ecdsa(keyPair.getPublic(), keyPair.getPrivate())));
+    SignedTokenCodec verifyOnly = new SignedTokenCodec("hs", new HashMap<String, SignedTokenCodec.Key>() {
+      private static final long serialVersionUID = 1L;
+      {
+        put("hs", hmacKey(1));
+        put("ec", SignedTokenCodec.ecdsa(keyPair.getPublic(), null));
+      }
+    });
+
+    // Act & Assert
+    for (int i = 0; i < 20; i++) {
+      String token = codec.sign("client", "user", Optional.empty());
+      Assert.assertTrue(codec.verify(token)
+                             .isPresent());
+      Assert.assertTrue(verifyOnly.verify(token)
+                                  .isPresent());
+      Assert.assertNull(verifyOnly.verify(token)
+                                  .get()
+                                  .getExpires());
+    }
+  }
+
+  @Test
+  public void verify_Rejects_Tampered_Tokens() throws Exception {
+    // Arrange
+    SignedTokenCodec codec = new SignedTokenCodec("k1", Collections.singletonMap("k1", hmacKey(1)));
+    SignedTokenCodec other = new SignedTokenCodec("k1", Collections.singletonMap("k1", hmacKey(2)));
+    String token = codec.sign("client", "user", Optional.of(EXPIRES));
+    String[] parts = token.split("\\.");
+    String forgedPayload = other.sign("other-client", "user", Optional.of(EXPIRES))
+                                .split("\\.")[1];
+
+    // Act & Assert
+    Assert.assertFalse(other.verify(token)
+                            .isPresent());
+    Assert.assertFalse(codec.verify(parts[0] + "." + forgedPayload + "." + parts[2])
+                            .isPresent());
+    Assert.assertFalse(codec.verify(parts[0] + "." + parts[1] + ".")
+                            .isPresent());
+    Assert.assertFalse(codec.verify(parts[0] + "." + parts[1] + ".!!")
+                            .isPresent());
+    Assert.assertFalse(codec.verify("opaque-token")
+                            .isPresent());
+  }
+
+  @Test
+  public void verify_Key_Rotation() throws Exception {
+    // Arrange
+    SignedTokenCodec codec = new SignedTokenCodec("k1", Collections.singletonMap("k1", hmacKey(1)));
+    String oldToken = codec.sign("client", "user", Optional.of(EXPIRES));
+
+    // Act
+    codec.addKey("k2", hmacKey(2));
+    codec.setSigningKey("k2");
+    String newToken = codec.sign("client", "user", Optional.of(EXPIRES));
+
+    // Assert
+    Assert.assertEquals("k2", codec.getSigningKeyId());
+    Assert.assertTrue(codec.verify(oldToken)
+                           .isPresent());
+    Assert.assertTrue(codec.verify(newToken)
+                           .isPresent());
+
+    codec.removeKey("k1");
+    Assert.assertFalse(codec.verify(oldToken)
+                            .isPresent());
+    Assert.assertTrue(codec.verify(newToken)
+                           .isPresent());
+  }
+
+  private static SignedTokenCodec.Key hmacKey(int seed) {
+    byte[] secret = new byte[32];
+    secret[0] = (byte) seed;
+    return SignedTokenCodec.hmac(secret);
+  }
+
+}
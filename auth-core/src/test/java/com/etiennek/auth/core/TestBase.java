@@ -13,6 +13,7 @@ import java.util.concurrent.CompletableFuture;
 
 import org.junit.Assert;
 
+import com.etiennek.auth.core.model.AccessToken;
 import com.etiennek.auth.core.model.AuthCode;
 import com.etiennek.auth.core.model.Client;
 import com.etiennek.auth.core.model.RefreshToken;
@@ -47,10 +48,16 @@ public abstract class TestBase {
 
   LocalDateTime now;
   boolean isGrantTypeAllowed;
+  RuntimeException isGrantTypeAllowedError;
+  int isGrantTypeAllowedCalls;
+  boolean generateTokenAsync;
+  CompletableFuture<Void> clientLookupLatch;
+  int getUserCalls;
   Optional<Client> client;
   Optional<User> user;
   Optional<AuthCode> authCode;
   Optional<RefreshToken> refreshToken;
+  Optional<AccessToken> accessToken;
 
   Response actualResponse;
 
@@ -59,10 +66,12 @@ public abstract class TestBase {
     actualResponse = null;
 
     isGrantTypeAllowed = true;
+    generateTokenAsync = true;
     client = Optional.of(new Client(CLIENT_ID, CLIENT_SECRET));
     user = Optional.of(new User(USER_ID, USER_USERNAME, USER_PASSWORD));
     authCode = Optional.of(new AuthCode(CLIENT_ID, USER_ID, now.plusSeconds(1)));
     refreshToken = Optional.of(new RefreshToken(CLIENT_ID, USER_ID));
+    accessToken = Optional.of(new AccessToken(ACCESS_TOKEN, CLIENT_ID, USER_ID, now.plusSeconds(1)));
 
     requiredFunctions = new RequiredFunctions() {
       @Override
@@ -72,14 +81,17 @@ public abstract class TestBase {
 
       @Override
       public CompletableFuture<GetAccessTokenRes> getAccessToken(String bearerToken) {
-        // TODO: Move to non required functions
-        throw new UnsupportedOperationException();
+        Assert.assertEquals(ACCESS_TOKEN, bearerToken);
+        return CompletableFuture.completedFuture(new GetAccessTokenRes(accessToken));
       }
 
       @Override
       public CompletableFuture<GetClientRes> getClient(String clientId, String clientSecret) {
         Assert.assertEquals(CLIENT_ID, clientId);
         Assert.assertEquals(CLIENT_SECRET, clientSecret);
+        if (clientLookupLatch != null) {
+          return clientLookupLatch.thenApply((v) -> new GetClientRes(client));
+        }
         return CompletableFuture.completedFuture(new GetClientRes(client));
       }
 
@@ -87,6 +99,12 @@ public abstract class TestBase {
       public CompletableFuture<IsGrantTypeAllowedRes> isGrantTypeAllowed(String clientId, String grantType) {
         Assert.assertEquals(CLIENT_ID, clientId);
         Assert.assertNotNull(grantType);
+        isGrantTypeAllowedCalls++;
+        if (isGrantTypeAllowedError != null) {
+          CompletableFuture<IsGrantTypeAllowedRes> ret = new CompletableFuture<>();
+          ret.completeExceptionally(isGrantTypeAllowedError);
+          return ret;
+        }
         return CompletableFuture.completedFuture(new IsGrantTypeAllowedRes(isGrantTypeAllowed));
       }
 
@@ -113,6 +131,10 @@ public abstract class TestBase {
 
       @Override
       public CompletableFuture<GenerateTokenRes> generateToken(TokenType tokenType) {
+        if (!generateTokenAsync) {
+          return CompletableFuture.completedFuture(new GenerateTokenRes(tokenType == TokenType.ACCESS ? ACCESS_TOKEN
+              : REFRESH_TOKEN));
+        }
         CompletableFuture<GenerateTokenRes> ret = new CompletableFuture<>();
         new Thread("generateTokenThread") {
           public void run() {
@@ -142,6 +164,7 @@ public abstract class TestBase {
     passwordRequiredFunctions = new RequiredFunctions.PasswordGrantType() {
       @Override
       public CompletableFuture<GetUserRes> getUser(String username, String password) {
+        getUserCalls++;
         Assert.assertEquals(USER_USERNAME, username);
         Assert.assertEquals(USER_PASSWORD, password);
         return CompletableFuture.completedFuture(new GetUserRes(user));
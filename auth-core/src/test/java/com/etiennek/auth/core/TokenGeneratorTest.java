@@ -0,0 +1,61 @@
+package com.etiennek.auth.core;
+
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TokenGeneratorTest {
+
+  @Test
+  public void generate_SUCCESS_Url_Safe_Tokens_Of_Configured_Length() throws Exception {
+    // Arrange
+    TokenGenerator generator = new TokenGenerator(48);
+
+    // Act
+    Set<String> tokens = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      tokens.add(generator.generate());
+    }
+
+    // Assert
+    Assert.assertEquals(1000, tokens.size());
+    for (String token : tokens) {
+      Assert.assertTrue(token, token.matches("^[A-Za-z0-9_-]+$"));
+      Assert.assertEquals(48, Base64.getUrlDecoder()
+                                    .decode(token).length);
+    }
+  }
+
+  @Test
+  public void generate_SUCCESS_Unique_Across_Threads() throws Exception {
+    // Arrange
+    Set<String> tokens = ConcurrentHashMap.newKeySet();
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[8];
+
+    // Act
+    for (int i = 0; i < futures.length; i++) {
+      futures[i] = CompletableFuture.runAsync(() -> {
+        for (int j = 0; j < 500; j++) {
+          tokens.add(TokenGenerator.getDefault()
+                                   .generate());
+        }
+      });
+    }
+    CompletableFuture.allOf(futures)
+                     .join();
+
+    // Assert
+    Assert.assertEquals(futures.length * 500, tokens.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void new_FAILURE_Too_Few_Bytes() throws Exception {
+    new TokenGenerator(TokenGenerator.MIN_BYTE_LENGTH - 1);
+  }
+
+}
@@ -0,0 +1,87 @@
+package com.etiennek.auth.core;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UtilTest {
+
+  @Test
+  public void getBasicAuthCredentialsHeader_SUCCESS() throws Exception {
+    assertCredentials("client", "secret", basic("client:secret"));
+    assertCredentials("client", "secret", "  bAsIc   " + encode("client:secret") + "  ");
+    assertCredentials("", "secret", basic(":secret"));
+    assertCredentials("cliént", "sécret", basic("cliént:sécret"));
+    // Trailing ':'s are dropped, as String.split(":") did
+    assertCredentials("client", "secret", basic("client:secret:"));
+    assertCredentials("client", "secret", basic("client:secret::"));
+    // Padding is optional
+    assertCredentials("ab", "cd", "Basic " + encode("ab:cd").replace("=", ""));
+  }
+
+  @Test
+  public void getBasicAuthCredentialsHeader_FAILURE() throws Exception {
+    Assert.assertFalse(getBasicAuthCredentialsHeader((String[]) null).isPresent());
+    Assert.assertFalse(getBasicAuthCredentialsHeader(new String[0]).isPresent());
+    Assert.assertFalse(getBasicAuthCredentialsHeader(new String[] {"Bearer " + encode("client:secret")}).isPresent());
+    Assert.assertFalse(getBasicAuthCredentialsHeader(new String[] {basic("client")}).isPresent());
+    Assert.assertFalse(getBasicAuthCredentialsHeader(new String[] {basic("client:")}).isPresent());
+    Assert.assertFalse(getBasicAuthCredentialsHeader(new String[] {basic("client::")}).isPresent());
+    Assert.assertFalse(getBasicAuthCredentialsHeader(new String[] {basic(":")}).isPresent());
+    Assert.assertFalse(getBasicAuthCredentialsHeader(new String[] {basic("client:sec:ret")}).isPresent());
+    Assert.assertFalse(getBasicAuthCredentialsHeader(new String[] {"Basic "}).isPresent());
+    Assert.assertFalse(getBasicAuthCredentialsHeader(new String[] {"Basic !!!!"}).isPresent());
+    Assert.assertFalse(getBasicAuthCredentialsHeader(new String[] {"Basic YWJjZ"}).isPresent());
+  }
+
+  @Test
+  public void decodeBase64_SUCCESS_Matches_JDK_Decoder() throws Exception {
+    for (int length = 1; length < 64; length++) {
+      byte[] bytes = new byte[length];
+      for (int i = 0; i < length; i++) {
+        bytes[i] = (byte) (i * 37 + length);
+      }
+      String encoded = Base64.getEncoder()
+                             .encodeToString(bytes);
+      Assert.assertArrayEquals(bytes, decodeBase64(encoded, 0, encoded.length()));
+    }
+  }
+
+  @Test
+  public void decodeBase64_FAILURE_Malformed_Padding() throws Exception {
+    for (String encoded : new String[] {"YWJ==", "YWJj=", "YWJj==", "YQ=", "YWJjZA="}) {
+      Assert.assertNull(encoded, decodeBase64(encoded, 0, encoded.length()));
+      try {
+        Base64.getDecoder()
+              .decode(encoded);
+        Assert.fail(encoded);
+      } catch (IllegalArgumentException e) {
+        // As the JDK decoder does
+      }
+    }
+    Assert.assertArrayEquals("a".getBytes(StandardCharsets.UTF_8), decodeBase64("YQ==", 0, 4));
+    Assert.assertArrayEquals("ab".getBytes(StandardCharsets.UTF_8), decodeBase64("YWI=", 0, 4));
+  }
+
+  private static String basic(String credentials) {
+    return "Basic " + encode(credentials);
+  }
+
+  private static String encode(String credentials) {
+    return Base64.getEncoder()
+                 .encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void assertCredentials(String expectedId, String expectedSecret, String header) {
+    Optional<String[]> actual = getBasicAuthCredentialsHeader(new String[] {header});
+    Assert.assertTrue(header, actual.isPresent());
+    Assert.assertEquals(expectedId, actual.get()[0]);
+    Assert.assertEquals(expectedSecret, actual.get()[1]);
+  }
+
+}
@@ -0,0 +1,238 @@
+package com.etiennek.auth.core.cache;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.etiennek.auth.core.model.AccessToken;
+import com.etiennek.auth.core.model.func.GetAccessToken;
+import com.etiennek.auth.core.model.func.GetAccessToken.GetAccessTokenRes;
+
+public class AccessTokenCacheTest {
+
+  private static final LocalDateTime NOW = LocalDateTime.of(2014, 9, 24, 11, 05, 28, 382);
+
+  private LocalDateTime now;
+  private Map<String, AccessToken> store;
+  private AtomicInteger lookups;
+  private GetAccessToken delegate;
+
+  @Before
+  public void init() {
+    now = NOW;
+    store = new HashMap<>();
+    lookups = new AtomicInteger();
+    delegate = (token) -> {
+      lookups.incrementAndGet();
+      return CompletableFuture.completedFuture(new GetAccessTokenRes(Optional.ofNullable(store.get(token))));
+    };
+  }
+
+  @Test
+  public void getAccessToken_SUCCESS_Hit_Skips_Delegate() throws Exception {
+    // Arrange
+    store.put("token", new AccessToken("token", "client", "user", now.plusHours(1)));
+    AccessTokenCache cache = cache(100, Duration.ofMinutes(5), Duration.ZERO);
+
+    // Act
+    cache.getAccessToken("token");
+    GetAccessTokenRes result = cache.getAccessToken("token")
+                                    .get();
+
+    // Assert
+    Assert.assertEquals(1, lookups.get());
+    Assert.assertEquals("user", result.accessToken.get()
+                                                  .getUserId());
+    Assert.assertEquals(1, cache.stats()
+                                .getHitCount());
+    Assert.assertEquals(1, cache.stats()
+                                .getMissCount());
+  }
+
+  @Test
+  public void getAccessToken_SUCCESS_Entry_Expires_With_Token() throws Exception {
+    // Arrange
+    store.put("token", new AccessToken("token", "client", "user", now.plusSeconds(10)));
+    AccessTokenCache cache = cache(100, Duration.ofMinutes(5), Duration.ZERO);
+
+    // Act
+    cache.getAccessToken("token");
+    now = now.plusSeconds(11);
+    cache.getAccessToken("token");
+
+    // Assert
+    Assert.assertEquals(2, lookups.get());
+  }
+
+  @Test
+  public void getAccessToken_SUCCESS_Entry_Expires_With_Time_To_Live() throws Exception {
+    // Arrange
+    store.put("token", new AccessToken("token", "client", "user"));
+    AccessTokenCache cache = cache(100, Duration.ofMinutes(5), Duration.ZERO);
+
+    // Act
+    cache.getAccessToken("token");
+    now = now.plusMinutes(4);
+    cache.getAccessToken("token");
+    now = now.plusMinutes(2);
+    cache.getAccessToken("token");
+
+    // Assert
+    Assert.assertEquals(2, lookups.get());
+  }
+
+  @Test
+  public void getAccessToken_SUCCESS_Negative_Caching() throws Exception {
+    // Arrange
+    AccessTokenCache cache = cache(100, Duration.ofMinutes(5), Duration.ofSeconds(30));
+
+    // Act
+    cache.getAccessToken("unknown");
+    GetAccessTokenRes result = cache.getAccessToken("unknown")
+                                    .get();
+    now = now.plusSeconds(31);
+    cache.getAccessToken("unknown");
+
+    // Assert
+    Assert.assertFalse(result.accessToken.isPresent());
+    Assert.assertEquals(2, lookups.get());
+  }
+
+  @Test
+  public void getAccessToken_SUCCESS_No_Negative_Caching_By_Default() throws Exception {
+    // Arrange
+    AccessTokenCache cache = cache(100, Duration.ofMinutes(5), null);
+
+    // Act
+    cache.getAccessToken("unknown");
+    cache.getAccessToken("unknown");
+
+    // Assert
+    Assert.assertEquals(2, lookups.get());
+  }
+
+  @Test
+  public void invalidate_SUCCESS() throws Exception {
+    // Arrange
+    store.put("token", new AccessToken("token", "client", "user"));
+    AccessTokenCache cache = cache(100, Duration.ofMinutes(5), Duration.ZERO);
+    cache.getAccessToken("token");
+
+    // Act
+    store.remove("token");
+    cache.invalidate("token");
+    GetAccessTokenRes result = cache.getAccessToken("token")
+                                    .get();
+
+    // Assert
+    Assert.assertFalse(result.accessToken.isPresent());
+  }
+
+  @Test
+  public void invalidate_SUCCESS_In_Flight_Lookup_Not_Cached() throws Exception {
+    // Arrange
+    CompletableFuture<GetAccessTokenRes> pending = new CompletableFuture<>();
+    delegate = (token) -> {
+      lookups.incrementAndGet();
+      return lookups.get() == 1 ? pending : CompletableFuture.completedFuture(new GetAccessTokenRes(Optional.empty()));
+    };
+    AccessTokenCache cache = cache(100, Duration.ofMinutes(5), Duration.ZERO);
+
+    // Act
+    cache.getAccessToken("token");
+    cache.invalidate("token");
+    pending.complete(new GetAccessTokenRes(Optional.of(new AccessToken("token", "client", "user"))));
+    GetAccessTokenRes result = cache.getAccessToken("token")
+                                    .get();
+
+    // Assert
+    Assert.assertFalse(result.accessToken.isPresent());
+  }
+
+  @Test
+  public void invalidate_SUCCESS_Repeated_Invalidations_Evict_Nothing() throws Exception {
+    // Arrange
+    store.put("a", new AccessToken("a", "client", "user"));
+    store.put("b", new AccessToken("b", "client", "user"));
+    AccessTokenCache cache = cache(2, Duration.ofMinutes(5), Duration.ZERO);
+    cache.getAccessToken("b");
+
+    // Act
+    for (int i = 0; i < 10; i++) {
+      cache.getAccessToken("a");
+      cache.invalidate("a");
+    }
+    cache.getAccessToken("a");
+    lookups.set(0);
+    cache.getAccessToken("a");
+    cache.getAccessToken("b");
+
+    // Assert
+    Assert.assertEquals(0, lookups.get());
+    Assert.assertEquals(2, cache.stats()
+                                .getSize());
+    Assert.assertEquals(0, cache.stats()
+                                .getEvictionCount());
+  }
+
+  @Test
+  public void getAccessToken_SUCCESS_Bounded_Size() throws Exception {
+    // Arrange
+    AccessTokenCache cache = cache(50, Duration.ofMinutes(5), Duration.ZERO);
+    for (int i = 0; i < 1000; i++) {
+      store.put("token" + i, new AccessToken("token" + i, "client", "user"));
+    }
+
+    // Act
+    for (int i = 0; i < 1000; i++) {
+      cache.getAccessToken("token" + i);
+      cache.getAccessToken("token" + i);
+    }
+
+    // Assert
+    Assert.assertTrue(cache.stats()
+                           .getSize() <= 50);
+    Assert.assertTrue(cache.stats()
+                           .getEvictionCount() > 0);
+  }
+
+  @Test
+  public void getAccessToken_SUCCESS_Popular_Tokens_Survive_Scan() throws Exception {
+    // Arrange
+    AccessTokenCache cache = cache(50, Duration.ofMinutes(5), Duration.ZERO);
+    for (int i = 0; i < 1000; i++) {
+      store.put("token" + i, new AccessToken("token" + i, "client", "user"));
+    }
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 10; i++) {
+        cache.getAccessToken("token" + i);
+      }
+    }
+
+    // Act - a scan of one-off tokens
+    for (int i = 100; i < 1000; i++) {
+      cache.getAccessToken("token" + i);
+    }
+    lookups.set(0);
+    for (int i = 0; i < 10; i++) {
+      cache.getAccessToken("token" + i);
+    }
+
+    // Assert
+    Assert.assertEquals(0, lookups.get());
+  }
+
+  private AccessTokenCache cache(int maximumSize, Duration timeToLive, Duration negativeTimeToLive) {
+    return new AccessTokenCache((token) -> delegate.getAccessToken(token), () -> now, maximumSize, timeToLive,
+        negativeTimeToLive);
+  }
+
+}
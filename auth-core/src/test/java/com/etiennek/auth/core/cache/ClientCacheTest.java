@@ -0,0 +1,171 @@
+package com.etiennek.auth.core.cache;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.etiennek.auth.core.model.Client;
+import com.etiennek.auth.core.model.func.GetClient;
+import com.etiennek.auth.core.model.func.GetClient.GetClientRes;
+import com.etiennek.auth.core.model.func.IsGrantTypeAllowed;
+import com.etiennek.auth.core.model.func.IsGrantTypeAllowed.IsGrantTypeAllowedRes;
+
+public class ClientCacheTest {
+
+  private static final LocalDateTime NOW = LocalDateTime.of(2014, 9, 24, 11, 05, 28, 382);
+
+  private LocalDateTime now;
+  private Map<String, String> secrets;
+  private Set<String> allowedGrantTypes;
+  private AtomicInteger clientLookups;
+  private AtomicInteger grantTypeLookups;
+
+  private GetClient clientDelegate;
+  private IsGrantTypeAllowed grantTypeDelegate;
+
+  @Before
+  public void init() {
+    now = NOW;
+    secrets = new HashMap<>();
+    secrets.put("client", "secret");
+    allowedGrantTypes = new HashSet<>();
+    allowedGrantTypes.add("password");
+    clientLookups = new AtomicInteger();
+    grantTypeLookups = new AtomicInteger();
+
+    clientDelegate = (clientId, clientSecret) -> {
+      clientLookups.incrementAndGet();
+      Optional<Client> client = clientSecret.equals(secrets.get(clientId)) ? Optional.of(new Client(clientId,
+          clientSecret)) : Optional.empty();
+      return CompletableFuture.completedFuture(new GetClientRes(client));
+    };
+    grantTypeDelegate = (clientId, grantType) -> {
+      grantTypeLookups.incrementAndGet();
+      return CompletableFuture.completedFuture(new IsGrantTypeAllowedRes(allowedGrantTypes.contains(grantType)));
+    };
+  }
+
+  @Test
+  public void getClient_SUCCESS_Hit_Skips_Delegate() throws Exception {
+    // Arrange
+    ClientCache cache = cache(Duration.ofMinutes(5), null);
+
+    // Act
+    cache.getClient("client", "secret");
+    GetClientRes result = cache.getClient("client", "secret")
+                               .get();
+
+    // Assert
+    Assert.assertEquals(1, clientLookups.get());
+    Assert.assertEquals("client", result.client.get()
+                                               .getId());
+    Assert.assertNull(result.client.get()
+                                   .getSecret());
+  }
+
+  @Test
+  public void getClient_FAILURE_Wrong_Secret_Goes_To_Delegate() throws Exception {
+    // Arrange
+    ClientCache cache = cache(Duration.ofMinutes(5), null);
+    cache.getClient("client", "secret");
+
+    // Act
+    GetClientRes result = cache.getClient("client", "wrong")
+                               .get();
+
+    // Assert
+    Assert.assertEquals(2, clientLookups.get());
+    Assert.assertFalse(result.client.isPresent());
+  }
+
+  @Test
+  public void getClient_SUCCESS_Expires() throws Exception {
+    // Arrange
+    ClientCache cache = cache(Duration.ofMinutes(5), null);
+    cache.getClient("client", "secret");
+
+    // Act
+    now = now.plusMinutes(6);
+    cache.getClient("client", "secret");
+
+    // Assert
+    Assert.assertEquals(2, clientLookups.get());
+  }
+
+  @Test
+  public void getClient_SUCCESS_Refresh_Ahead() throws Exception {
+    // Arrange
+    ClientCache cache = cache(Duration.ofMinutes(5), Duration.ofMinutes(4));
+    cache.getClient("client", "secret");
+    cache.isGrantTypeAllowed("client", "password");
+
+    // Act - served from the cache while it reloads
+    now = now.plusMinutes(4);
+    allowedGrantTypes.clear();
+    GetClientRes result = cache.getClient("client", "secret")
+                               .get();
+    boolean allowed = cache.isGrantTypeAllowed("client", "password")
+                           .get().allowed;
+
+    // Assert
+    Assert.assertTrue(result.client.isPresent());
+    Assert.assertEquals(2, clientLookups.get());
+    Assert.assertEquals(2, grantTypeLookups.get());
+    Assert.assertFalse(allowed);
+  }
+
+  @Test
+  public void isGrantTypeAllowed_SUCCESS_Hit_Skips_Delegate() throws Exception {
+    // Arrange
+    ClientCache cache = cache(Duration.ofMinutes(5), null);
+    cache.getClient("client", "secret");
+
+    // Act
+    cache.isGrantTypeAllowed("client", "password");
+    boolean allowed = cache.isGrantTypeAllowed("client", "password")
+                           .get().allowed;
+    boolean notAllowed = cache.isGrantTypeAllowed("client", "client_credentials")
+                              .get().allowed;
+
+    // Assert
+    Assert.assertTrue(allowed);
+    Assert.assertFalse(notAllowed);
+    Assert.assertEquals(2, grantTypeLookups.get());
+    Assert.assertEquals(0, cache.stats()
+                                .getHitCount());
+    Assert.assertEquals(1, cache.stats()
+                                .getMissCount());
+  }
+
+  @Test
+  public void invalidate_SUCCESS() throws Exception {
+    // Arrange
+    ClientCache cache = cache(Duration.ofMinutes(5), null);
+    cache.getClient("client", "secret");
+    cache.isGrantTypeAllowed("client", "password");
+
+    // Act
+    cache.invalidate("client");
+    cache.getClient("client", "secret");
+    cache.isGrantTypeAllowed("client", "password");
+
+    // Assert
+    Assert.assertEquals(2, clientLookups.get());
+    Assert.assertEquals(2, grantTypeLookups.get());
+  }
+
+  private ClientCache cache(Duration timeToLive, Duration refreshAfter) {
+    return new ClientCache(clientDelegate, grantTypeDelegate, () -> now, 100, timeToLive, refreshAfter);
+  }
+
+}
@@ -0,0 +1,45 @@
+package com.etiennek.auth.core.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void index_Buckets_Are_Contiguous() throws Exception {
+    for (long value = 0; value < 1 << 20; value++) {
+      int index = LatencyHistogram.index(value);
+      Assert.assertTrue(LatencyHistogram.lowerBound(index) <= value);
+      Assert.assertTrue(value < LatencyHistogram.lowerBound(index + 1));
+    }
+    Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void snapshot_Percentiles_Within_Precision() throws Exception {
+    // Arrange
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    // Act
+    for (long micros = 1; micros <= 1000; micros++) {
+      histogram.record(micros * 1000);
+    }
+    LatencySnapshot snapshot = histogram.snapshot();
+
+    // Assert
+    Assert.assertEquals(1000, snapshot.getCount());
+    Assert.assertEquals(1_000_000, snapshot.getMaxNanos());
+    Assert.assertEquals(500_500, snapshot.getMeanNanos(), 0.001);
+    assertWithinPrecision(500_000, snapshot.getNanosAtPercentile(50));
+    assertWithinPrecision(990_000, snapshot.getNanosAtPercentile(99));
+    Assert.assertEquals(1_000_000, snapshot.getNanosAtPercentile(100));
+    Assert.assertEquals(0, new LatencyHistogram().snapshot()
+                                                 .getNanosAtPercentile(50));
+  }
+
+  private static void assertWithinPrecision(long expected, long actual) {
+    Assert.assertTrue("Expected about " + expected + " but was " + actual, actual >= expected
+        && actual <= expected + expected / LatencyHistogram.SUB_BUCKETS);
+  }
+
+}
@@ -0,0 +1,49 @@
+package com.etiennek.auth.core.resp;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+public class AccessTokenResponseTest {
+
+  @Test
+  public void writeBody_Matches_getBody() throws Exception {
+    // Arrange
+    AccessTokenResponse response = new AccessTokenResponse("access", Optional.of(Duration.ofHours(1)),
+        Optional.of("refresh"));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    // Act
+    response.writeBody(out);
+
+    // Assert
+    Assert.assertEquals("{\"access_token\":\"access\",\"token_type\":\"bearer\",\"expires_in\":3600,"
+        + "\"refresh_token\":\"refresh\"}", response.getBody());
+    Assert.assertArrayEquals(response.getBody()
+                                     .getBytes(StandardCharsets.UTF_8), out.toByteArray());
+  }
+
+  @Test
+  public void writeBody_Escapes_Tokens() throws Exception {
+    // Arrange
+    String accessToken = "quote\" backslash\\ newline\n tab\t é € 😀";
+    AccessTokenResponse response = new AccessTokenResponse(accessToken, Optional.empty(), Optional.empty());
+
+    // Act
+    Map<?, ?> parsed = new Gson().fromJson(response.getBody(), Map.class);
+
+    // Assert
+    Assert.assertEquals(accessToken, parsed.get("access_token"));
+    Assert.assertEquals("bearer", parsed.get("token_type"));
+    Assert.assertFalse(parsed.containsKey("expires_in"));
+    Assert.assertFalse(parsed.containsKey("refresh_token"));
+  }
+
+}
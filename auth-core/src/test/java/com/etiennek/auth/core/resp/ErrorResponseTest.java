@@ -0,0 +1,78 @@
+package com.etiennek.auth.core.resp;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.etiennek.auth.core.model.ErrorCode;
+
+public class ErrorResponseTest {
+
+  @Test
+  public void of_Shares_Instances() throws Exception {
+    // Act
+    ErrorResponse first = ErrorResponse.of(ErrorCode.INVALID_GRANT, "User credentials are invalid.");
+    ErrorResponse second = ErrorResponse.of(ErrorCode.INVALID_GRANT, "User credentials are invalid.");
+    ErrorResponse bearer = BearerErrorResponse.of(ErrorCode.INVALID_GRANT, "User credentials are invalid.");
+
+    // Assert
+    Assert.assertSame(first, second);
+    Assert.assertNotSame(first, ErrorResponse.of(ErrorCode.INVALID_REQUEST, "User credentials are invalid."));
+    Assert.assertSame(bearer, BearerErrorResponse.of(ErrorCode.INVALID_GRANT, "User credentials are invalid."));
+    Assert.assertEquals(new ErrorResponse(ErrorCode.INVALID_GRANT, "User credentials are invalid."), first);
+    Assert.assertEquals(new BearerErrorResponse(ErrorCode.INVALID_GRANT, "User credentials are invalid.").getBody(),
+        bearer.getBody());
+  }
+
+  @Test
+  public void of_Immutable_Headers_And_Encoded_Body() throws Exception {
+    // Arrange
+    ErrorResponse response = ErrorResponse.of(ErrorCode.INVALID_CLIENT, "Invalid client credentials.");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    // Act
+    response.writeBody(out);
+
+    // Assert
+    Assert.assertEquals(401, response.getCode());
+    Assert.assertEquals("error=invalid_client&error_description=Invalid+client+credentials.", response.getBody());
+    Assert.assertEquals(response.getBody(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    Assert.assertArrayEquals(new String[] {"Basic realm=\"Service\""}, response.getHeader()
+                                                                          .get("WWW-Authenticate"));
+    try {
+      response.getHeader()
+              .remove("WWW-Authenticate");
+      Assert.fail();
+    } catch (UnsupportedOperationException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void bearer_Description_Limited_To_Quotable_Characters() throws Exception {
+    // Act
+    ErrorResponse response = new BearerErrorResponse(ErrorCode.INVALID_REQUEST, "Bad \"token\" \\ é\r\nX-Injected: 1");
+
+    // Assert
+    Assert.assertArrayEquals(new String[] {
+        "Bearer realm=\"Service\", error=\"invalid_request\", error_description=\"Bad token  X-Injected: 1\""},
+        response.getHeader()
+                .get("WWW-Authenticate"));
+  }
+
+  @Test
+  public void of_Bounded_Per_Error_Code() throws Exception {
+    // Act
+    for (int i = 0; i < ErrorResponseCache.MAX_PER_ERROR_CODE; i++) {
+      ErrorResponse.of(ErrorCode.TEMPORARILY_UNAVAILABLE, "Message " + i);
+    }
+    ErrorResponse uncached = ErrorResponse.of(ErrorCode.TEMPORARILY_UNAVAILABLE, "One too many");
+
+    // Assert
+    Assert.assertEquals("error=temporarily_unavailable&error_description=One+too+many", uncached.getBody());
+    Assert.assertNotSame(uncached, ErrorResponse.of(ErrorCode.TEMPORARILY_UNAVAILABLE, "One too many"));
+  }
+
+}
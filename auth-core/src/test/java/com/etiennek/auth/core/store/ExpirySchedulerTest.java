@@ -0,0 +1,124 @@
+package com.etiennek.auth.core.store;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExpirySchedulerTest {
+
+  private static final LocalDateTime NOW = LocalDateTime.of(2014, 9, 24, 11, 05, 28, 382);
+
+  private LocalDateTime now;
+  private ExpiryScheduler scheduler;
+  private List<String> expired;
+
+  @Before
+  public void init() {
+    now = NOW;
+    scheduler = new ExpiryScheduler(() -> now, Duration.ofSeconds(1), false);
+    expired = new ArrayList<>();
+  }
+
+  @Test
+  public void advance_SUCCESS_Fires_Only_Once_Expired() throws Exception {
+    // Arrange
+    scheduler.schedule(NOW.plusSeconds(5), () -> expired.add("5s"));
+    scheduler.schedule(NOW.plusSeconds(100), () -> expired.add("100s"));
+    scheduler.schedule(NOW.plusDays(14), () -> expired.add("14d"));
+    scheduler.schedule(NOW.minusSeconds(1), () -> expired.add("past"));
+
+    // Act & Assert
+    scheduler.advance();
+    Assert.assertEquals(Arrays.asList("past"), expired);
+
+    now = NOW.plusSeconds(5);
+    scheduler.advance();
+    Assert.assertEquals(Arrays.asList("past"), expired);
+
+    now = NOW.plusSeconds(6);
+    scheduler.advance();
+    Assert.assertEquals(Arrays.asList("past", "5s"), expired);
+
+    now = NOW.plusSeconds(101);
+    scheduler.advance();
+    Assert.assertEquals(Arrays.asList("past", "5s", "100s"), expired);
+
+    now = NOW.plusDays(14);
+    scheduler.advance();
+    Assert.assertEquals(3, expired.size());
+    Assert.assertEquals(1, scheduler.size());
+
+    now = NOW.plusDays(14)
+             .plusSeconds(1);
+    scheduler.advance();
+    Assert.assertEquals(Arrays.asList("past", "5s", "100s", "14d"), expired);
+    Assert.assertEquals(0, scheduler.size());
+  }
+
+  @Test
+  public void advance_SUCCESS_Every_Deadline_Fires_On_Its_Tick() throws Exception {
+    // Arrange, deadlines either side of every wheel boundary up to a few turns of the second wheel
+    int count = 3 * 64 * 64 + 5;
+    int[] firedAt = new int[count];
+    for (int i = 0; i < count; i++) {
+      int seconds = i;
+      scheduler.schedule(NOW.plusSeconds(seconds), () -> firedAt[seconds] = (int) Duration.between(NOW, now)
+                                                                                          .getSeconds());
+    }
+
+    // Act
+    for (int second = 0; second <= count; second++) {
+      now = NOW.plusSeconds(second);
+      scheduler.advance();
+    }
+
+    // Assert
+    for (int i = 0; i < count; i++) {
+      Assert.assertEquals("Deadline " + i, i + 1, firedAt[i]);
+    }
+  }
+
+  @Test
+  public void cancel_SUCCESS_Never_Fires() throws Exception {
+    // Arrange
+    ExpiryScheduler.Timeout timeout = scheduler.schedule(NOW.plusSeconds(5), () -> expired.add("cancelled"));
+    scheduler.advance();
+
+    // Act
+    Assert.assertTrue(timeout.cancel());
+    now = NOW.plusSeconds(10);
+    scheduler.advance();
+
+    // Assert
+    Assert.assertTrue(expired.isEmpty());
+    Assert.assertFalse(timeout.cancel());
+    Assert.assertEquals(0, scheduler.size());
+  }
+
+  @Test
+  public void inMemoryStore_SUCCESS_Drops_Expired_Tokens_Without_Lookups() throws Exception {
+    // Arrange
+    InMemoryStore store = new InMemoryStore(() -> now, 8, scheduler);
+    store.saveAccessToken("access", "client", "user", Optional.of(NOW.plusSeconds(60)));
+    store.saveRefreshToken("refresh", "client", "user", Optional.of(NOW.plusSeconds(120)));
+    store.saveAccessToken("revoked", "client", "user", Optional.of(NOW.plusSeconds(60)));
+    store.revokeAccessToken("revoked");
+
+    // Act
+    now = NOW.plusSeconds(61);
+    scheduler.advance();
+
+    // Assert
+    Assert.assertEquals(0, store.getAccessTokenCount());
+    Assert.assertEquals(1, store.getRefreshTokenCount());
+    Assert.assertEquals(1, scheduler.size());
+  }
+
+}
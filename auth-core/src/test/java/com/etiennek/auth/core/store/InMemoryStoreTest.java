@@ -0,0 +1,104 @@
+package com.etiennek.auth.core.store;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.etiennek.auth.core.model.AuthCode;
+import com.etiennek.auth.core.model.Client;
+import com.etiennek.auth.core.model.User;
+
+public class InMemoryStoreTest {
+
+  private static final LocalDateTime NOW = LocalDateTime.of(2014, 9, 24, 11, 05, 28, 382);
+
+  private LocalDateTime now;
+  private InMemoryStore store;
+
+  @Before
+  public void init() {
+    now = NOW;
+    store = new InMemoryStore(() -> now, 8).addClient(new Client("client", "secret"), new User("1", "service",
+        null), "password", "client_credentials")
+                                           .addUser(new User("2", "user", "password"));
+  }
+
+  @Test
+  public void lookups_SUCCESS_Only_With_Matching_Secrets() throws Exception {
+    // Act & Assert
+    Assert.assertTrue(store.getClient("client", "secret")
+                           .get().client.isPresent());
+    Assert.assertFalse(store.getClient("client", "wrong")
+                            .get().client.isPresent());
+    Assert.assertFalse(store.getClient("unknown", "secret")
+                            .get().client.isPresent());
+    Assert.assertEquals("2", store.getUser("user", "password")
+                                  .get().user.get()
+                                             .getId());
+    Assert.assertFalse(store.getUser("user", "wrong")
+                            .get().user.isPresent());
+    Assert.assertEquals("1", store.getUserFromClient("client", "secret")
+                                  .get().user.get()
+                                             .getId());
+    Assert.assertTrue(store.isGrantTypeAllowed("client", "password")
+                           .get().allowed);
+    Assert.assertFalse(store.isGrantTypeAllowed("client", "refresh_token")
+                            .get().allowed);
+  }
+
+  @Test
+  public void tokens_SUCCESS_Expire_And_Revoke() throws Exception {
+    // Arrange
+    store.saveAccessToken("access", "client", "2", Optional.of(NOW.plusSeconds(60)));
+    store.saveRefreshToken("refresh", "client", "2", Optional.empty());
+    store.addAuthCode("code", new AuthCode("client", "2", NOW.plusSeconds(60)));
+
+    // Act & Assert
+    Assert.assertTrue(store.getAccessToken("access")
+                           .get().accessToken.isPresent());
+    Assert.assertTrue(store.getAuthCode("code")
+                           .get().authCode.isPresent());
+    // A code is used once
+    Assert.assertFalse(store.getAuthCode("code")
+                            .get().authCode.isPresent());
+
+    store.revokeRefreshToken("refresh");
+    Assert.assertFalse(store.getRefreshToken("refresh")
+                            .get().refreshToken.isPresent());
+
+    now = NOW.plusSeconds(61);
+    Assert.assertFalse(store.getAccessToken("access")
+                            .get().accessToken.isPresent());
+    Assert.assertEquals(0, store.getAccessTokenCount());
+  }
+
+  @Test
+  public void saveAccessToken_FAILURE_Full_Of_Live_Tokens() throws Exception {
+    // Arrange
+    store.saveAccessToken("expired", "client", "2", Optional.of(NOW.minusSeconds(1)));
+    for (int i = 0; i < 8; i++) {
+      Assert.assertFalse(store.saveAccessToken("token" + i, "client", "2", Optional.empty())
+                              .isCompletedExceptionally());
+    }
+
+    // Act
+    CompletableFuture<Void> save = store.saveAccessToken("token8", "client", "2", Optional.empty());
+
+    // Assert - The expired token made room, live ones are kept
+    Assert.assertTrue(save.isCompletedExceptionally());
+    Assert.assertEquals(8, store.getAccessTokenCount());
+    Assert.assertFalse(store.getAccessToken("expired")
+                            .get().accessToken.isPresent());
+    for (int i = 0; i < 8; i++) {
+      Assert.assertTrue(store.getAccessToken("token" + i)
+                             .get().accessToken.isPresent());
+    }
+    Assert.assertFalse(store.saveAccessToken("token0", "client", "3", Optional.empty())
+                            .isCompletedExceptionally());
+  }
+
+}
@@ -0,0 +1,169 @@
+package com.etiennek.auth.core.store;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.etiennek.auth.core.model.AccessToken;
+import com.etiennek.auth.core.model.RefreshToken;
+import com.etiennek.auth.core.model.func.SaveTokens.SaveTokensReq;
+
+public class LogTokenStoreTest {
+
+  private static final LocalDateTime NOW = LocalDateTime.of(2014, 9, 24, 11, 05, 28, 382_000_000);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private LocalDateTime now;
+  private LogTokenStore store;
+
+  @Before
+  public void init() throws Exception {
+    now = NOW;
+    store = builder().open();
+  }
+
+  @After
+  public void close() throws Exception {
+    store.close();
+  }
+
+  @Test
+  public void tokens_SUCCESS_Expire_And_Revoke() throws Exception {
+    // Arrange
+    store.saveTokens(Arrays.asList(new SaveTokensReq(Optional.of("access"), Optional.of(NOW.plusSeconds(60)),
+        Optional.of("refresh"), Optional.empty(), "client", "2")))
+         .get();
+
+    // Act
+    AccessToken accessToken = store.getAccessToken("access")
+                                   .get().accessToken.get();
+    RefreshToken refreshToken = store.getRefreshToken("refresh")
+                                     .get().refreshToken.get();
+
+    // Assert
+    Assert.assertEquals("client", accessToken.getClientId());
+    Assert.assertEquals("2", accessToken.getUserId());
+    Assert.assertEquals(NOW.plusSeconds(60), accessToken.getExpires());
+    Assert.assertEquals("2", refreshToken.getUserId());
+    Assert.assertNull(refreshToken.getExpires());
+
+    store.revokeRefreshToken("refresh")
+         .get();
+    Assert.assertFalse(store.getRefreshToken("refresh")
+                            .get().refreshToken.isPresent());
+    now = NOW.plusSeconds(61);
+    Assert.assertFalse(store.getAccessToken("access")
+                            .get().accessToken.isPresent());
+  }
+
+  @Test
+  public void open_SUCCESS_Replays_The_Log_And_Cuts_A_Torn_Record() throws Exception {
+    // Arrange
+    store.saveAccessToken("access", "client", "2", Optional.empty())
+         .get();
+    store.saveRefreshToken("refresh", "client", "2", Optional.empty())
+         .get();
+    store.revokeRefreshToken("refresh")
+         .get();
+    store.close();
+    Path segment = LogSegment.path(folder.getRoot()
+                                         .toPath(), LogTokenStore.DEFAULT_NAME, 0);
+    Files.write(segment, new byte[] {0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+    long torn = Files.size(segment);
+
+    // Act
+    store = builder().open();
+
+    // Assert
+    Assert.assertEquals("2", store.getAccessToken("access")
+                                  .get().accessToken.get()
+                                                    .getUserId());
+    Assert.assertFalse(store.getRefreshToken("refresh")
+                            .get().refreshToken.isPresent());
+    Assert.assertEquals(torn - 6, Files.size(segment));
+  }
+
+  @Test
+  public void close_SUCCESS_Completes_The_Queued_Writes() throws Exception {
+    // Arrange
+    List<CompletableFuture<Void>> saves = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      saves.add(store.saveAccessToken("access" + i, "client", "2", Optional.empty()));
+    }
+
+    // Act
+    store.close();
+
+    // Assert
+    for (CompletableFuture<Void> save : saves) {
+      Assert.assertTrue(save.isDone());
+      Assert.assertFalse(save.isCompletedExceptionally());
+    }
+    store = builder().open();
+    Assert.assertEquals(1000, store.getAccessTokenCount());
+  }
+
+  @Test
+  public void compact_SUCCESS_Drops_Superseded_Revoked_And_Expired_Tokens() throws Exception {
+    // Arrange
+    store.close();
+    store = builder().withSegmentSize(4096)
+                     .open();
+    for (int i = 0; i < 300; i++) {
+      store.saveAccessToken("access" + i, "client", "2", Optional.of(NOW.plusSeconds(i < 100 ? 1 : 60)));
+      store.saveRefreshToken("refresh" + i, "client", "2", Optional.empty());
+      if (i % 2 == 0) {
+        store.revokeRefreshToken("refresh" + i);
+      }
+    }
+    store.saveAccessToken("access299", "client", "3", Optional.empty())
+         .get();
+    now = NOW.plusSeconds(2);
+
+    // Act
+    store.compact();
+    // The compacted segment and the one the writer has open
+    int segments = folder.getRoot()
+                         .list((directory, name) -> name.endsWith(".log")).length;
+    store.close();
+    store = builder().open();
+
+    // Assert
+    Assert.assertTrue(segments <= 2);
+    Assert.assertEquals(200, store.getAccessTokenCount());
+    Assert.assertEquals(150, store.getRefreshTokenCount());
+    Assert.assertFalse(store.getAccessToken("access0")
+                            .get().accessToken.isPresent());
+    Assert.assertEquals("3", store.getAccessToken("access299")
+                                  .get().accessToken.get()
+                                                    .getUserId());
+    Assert.assertFalse(store.getRefreshToken("refresh0")
+                            .get().refreshToken.isPresent());
+    Assert.assertTrue(store.getRefreshToken("refresh1")
+                           .get().refreshToken.isPresent());
+    // The compacted segment, the one the writer had open and the one started by this open
+    Assert.assertEquals(3, folder.getRoot()
+                                 .list().length);
+  }
+
+  private LogTokenStore.Builder builder() {
+    return new LogTokenStore.Builder(folder.getRoot()
+                                           .toPath()).withClock(() -> now);
+  }
+
+}
@@ -0,0 +1,175 @@
+package com.etiennek.auth.core.store;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.etiennek.auth.core.model.AccessToken;
+import com.etiennek.auth.core.model.Client;
+import com.etiennek.auth.core.model.RefreshToken;
+
+public class MappedTokenStoreTest {
+
+  private static final LocalDateTime NOW = LocalDateTime.of(2014, 9, 24, 11, 05, 28, 382_000_000);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private LocalDateTime now;
+  private InMemoryStore clients;
+  private MappedTokenStore store;
+
+  @Before
+  public void init() throws Exception {
+    now = NOW;
+    clients = new InMemoryStore(() -> now, 8).addClient(new Client("client", "secret"));
+    store = builder().open();
+  }
+
+  @After
+  public void close() throws Exception {
+    store.close();
+  }
+
+  @Test
+  public void tokens_SUCCESS_Expire_And_Revoke() throws Exception {
+    // Arrange
+    store.saveAccessToken("access", "client", "2", Optional.of(NOW.plusSeconds(60)));
+    store.saveRefreshToken("refresh", "client", "2", Optional.empty());
+
+    // Act
+    AccessToken accessToken = store.getAccessToken("access")
+                                   .get().accessToken.get();
+    RefreshToken refreshToken = store.getRefreshToken("refresh")
+                                     .get().refreshToken.get();
+
+    // Assert
+    Assert.assertEquals("access", accessToken.getToken());
+    Assert.assertEquals("client", accessToken.getClientId());
+    Assert.assertEquals("2", accessToken.getUserId());
+    Assert.assertEquals(NOW.plusSeconds(60), accessToken.getExpires());
+    Assert.assertEquals("client", refreshToken.getClientId());
+    Assert.assertNull(refreshToken.getExpires());
+    // An access token is not a refresh token
+    Assert.assertFalse(store.getRefreshToken("access")
+                            .get().refreshToken.isPresent());
+    Assert.assertTrue(store.getClient("client", "secret")
+                           .get().client.isPresent());
+
+    store.revokeRefreshToken("refresh")
+         .get();
+    Assert.assertFalse(store.getRefreshToken("refresh")
+                            .get().refreshToken.isPresent());
+    now = NOW.plusSeconds(61);
+    Assert.assertFalse(store.getAccessToken("access")
+                            .get().accessToken.isPresent());
+  }
+
+  @Test
+  public void open_SUCCESS_Tokens_Survive_A_Restart() throws Exception {
+    // Arrange
+    store.saveAccessToken("access", "client", "2", Optional.empty());
+    store.saveRefreshToken("refresh", "client", "2", Optional.empty());
+    store.revokeRefreshToken("refresh")
+         .get();
+    store.close();
+
+    // Act
+    store = builder().open();
+
+    // Assert
+    Assert.assertEquals("2", store.getAccessToken("access")
+                                  .get().accessToken.get()
+                                                    .getUserId());
+    Assert.assertFalse(store.getRefreshToken("refresh")
+                            .get().refreshToken.isPresent());
+  }
+
+  @Test
+  public void save_SUCCESS_Moves_To_A_New_Generation_When_Full() throws Exception {
+    // Arrange
+    store.close();
+    store = builder().withIndexCapacity(16)
+                     .withMaxDataSize(4096)
+                     .open();
+
+    // Act
+    for (int i = 0; i < 1000; i++) {
+      store.saveAccessToken("access" + i, "client", "2", Optional.of(NOW.plusSeconds(i < 500 ? 1 : 60)))
+           .get();
+      if (i == 499) {
+        now = NOW.plusSeconds(2);
+      }
+    }
+    store.close();
+    store = builder().open();
+
+    // Assert
+    Assert.assertFalse(store.getAccessToken("access0")
+                            .get().accessToken.isPresent());
+    for (int i = 500; i < 1000; i++) {
+      Assert.assertTrue(store.getAccessToken("access" + i)
+                             .get().accessToken.isPresent());
+    }
+    // Only the newest generation is left
+    Assert.assertEquals(2, folder.getRoot()
+                                 .list().length);
+  }
+
+  @Test
+  public void getAccessToken_SUCCESS_Lookups_Keep_Working_Across_Generations() throws Exception {
+    // Arrange
+    store.close();
+    store = builder().withIndexCapacity(16)
+                     .withMaxDataSize(4096)
+                     .open();
+    store.saveAccessToken("access", "client", "2", Optional.empty())
+         .get();
+    AtomicBoolean saving = new AtomicBoolean(true);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread reader = new Thread(() -> {
+      try {
+        while (saving.get()) {
+          if (!store.getAccessToken("access")
+                    .get().accessToken.isPresent()) {
+            throw new AssertionError("Token not found");
+          }
+        }
+      } catch (Throwable e) {
+        failure.set(e);
+      }
+    });
+    reader.start();
+
+    // Act
+    try {
+      for (int i = 0; i < 2000; i++) {
+        store.saveAccessToken("access" + i, "client", "2", Optional.of(NOW.plusSeconds(1)))
+             .get();
+        if (i % 100 == 99) {
+          now = now.plusSeconds(2);
+        }
+      }
+    } finally {
+      saving.set(false);
+      reader.join();
+    }
+
+    // Assert
+    Assert.assertNull(failure.get());
+  }
+
+  private MappedTokenStore.Builder builder() {
+    return new MappedTokenStore.Builder(folder.getRoot()
+                                              .toPath(), clients, clients).withClock(() -> now);
+  }
+
+}
@@ -0,0 +1,26 @@
+package com.etiennek.auth.examples;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.etiennek.auth.server.TokenServer;
+
+// The example server on the standalone token server instead of Spring Boot, at http://localhost:8080/token
+public class Standalone {
+  private static final Logger LOGGER = Logger.getLogger(Standalone.class.getName());
+
+  public static void main(String[] args) throws Exception {
+    TokenServer server = new TokenServer.Builder(new ExampleServer()).withPort(8080)
+                                                                     .build()
+                                                                     .start();
+    Runtime.getRuntime()
+           .addShutdownHook(new Thread(() -> {
+             try {
+               server.close();
+             } catch (Exception e) {
+               LOGGER.log(Level.WARNING, "Could not close the token server", e);
+             }
+           }));
+  }
+
+}
@@ -0,0 +1,286 @@
+package com.etiennek.auth.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.etiennek.auth.core.Const;
+import com.etiennek.auth.core.FormBody;
+import com.etiennek.auth.core.FormRequest;
+import com.etiennek.auth.core.Response;
+
+// A keep-alive connection, driven by its event loop. Requests are read into a buffer that grows up to the largest
+// request allowed, parsed in place and copied out once complete. While a grant is running the connection stops
+// reading, so pipelined requests are answered one at a time and in order.
+class Connection {
+  private static final Logger LOGGER = Logger.getLogger(Connection.class.getName());
+  private static final int INITIAL_BUFFER_SIZE = 2048;
+  private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  private static final Response NOT_FOUND = emptyResponse(404, Collections.emptyMap());
+  private static final Response METHOD_NOT_ALLOWED = emptyResponse(405, Collections.singletonMap("Allow",
+      new String[] {"POST"}));
+
+  private final TokenServer server;
+  private final EventLoop loop;
+  private final SocketChannel channel;
+  private final SelectionKey key;
+
+  private final int initialBufferSize;
+  private byte[] in;
+  private ByteBuffer inBuffer;
+  private int inStart;
+  private int inEnd;
+  private boolean continueSent;
+
+  private boolean pending;
+  private boolean processing;
+  private ByteBuffer out;
+  private boolean closeAfterWrite;
+  private boolean closed;
+  private long lastActive = System.nanoTime();
+  private String remoteAddress;
+
+  Connection(TokenServer server, EventLoop loop, SocketChannel channel, SelectionKey key) {
+    this.server = server;
+    this.loop = loop;
+    this.channel = channel;
+    this.key = key;
+    this.initialBufferSize = Math.min(INITIAL_BUFFER_SIZE, server.getMaxRequestSize());
+    this.in = new byte[initialBufferSize];
+    this.inBuffer = ByteBuffer.wrap(in);
+  }
+
+  void onReadable() {
+    lastActive = System.nanoTime();
+    try {
+      if (inEnd == in.length) {
+        makeRoom();
+      }
+      inBuffer.limit(in.length)
+              .position(inEnd);
+      int read = channel.read(inBuffer);
+      if (read < 0) {
+        close();
+        return;
+      }
+      inEnd += read;
+      process();
+    } catch (IOException e) {
+      LOGGER.log(Level.FINE, "Could not read from connection", e);
+      close();
+    }
+  }
+
+  void onWritable() {
+    lastActive = System.nanoTime();
+    try {
+      channel.write(out);
+      if (!out.hasRemaining()) {
+        out = null;
+        responded();
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.FINE, "Could not write to connection", e);
+      close();
+    }
+  }
+
+  // Serves every complete request in the buffer, one at a time. A response written straight away continues the loop
+  // instead of calling back into it, so a long pipeline does not grow the stack.
+  private void process() throws IOException {
+    if (processing) {
+      return;
+    }
+    processing = true;
+    try {
+      processRequests();
+    } finally {
+      processing = false;
+    }
+  }
+
+  private void processRequests() throws IOException {
+    while (!pending && !closed) {
+      while (inStart < inEnd && (in[inStart] == '\r' || in[inStart] == '\n')) {
+        inStart++;
+      }
+      HttpRequest request;
+      try {
+        request = HttpRequest.parse(in, inStart, inEnd, server.getMaxHeaderSize());
+        if (request == null) {
+          return;
+        }
+        check(request);
+      } catch (HttpException e) {
+        pending = true;
+        key.interestOps(0);
+        respond(emptyResponse(e.getStatus(), Collections.emptyMap()), false);
+        return;
+      }
+
+      int length = request.getHeadLength() + (int) request.getContentLength();
+      if (inEnd - inStart < length) {
+        if (request.isExpectContinue() && !continueSent) {
+          continueSent = true;
+          channel.write(ByteBuffer.wrap(CONTINUE));
+        }
+        return;
+      }
+      request.detach();
+      inStart += length;
+      continueSent = false;
+      if (inStart == inEnd) {
+        inStart = 0;
+        inEnd = 0;
+      }
+      dispatch(request);
+    }
+  }
+
+  private void check(HttpRequest request) {
+    if (request.isChunked()) {
+      throw new HttpException(411, "Chunked requests are not supported.");
+    }
+    if (request.getContentLength() > server.getMaxBodySize()) {
+      throw new HttpException(413, "Request body is too large.");
+    }
+  }
+
+  private void dispatch(HttpRequest request) {
+    pending = true;
+    key.interestOps(0);
+    boolean keepAlive = request.isKeepAlive();
+    if (!request.targetMatches(server.getPathBytes())) {
+      respond(NOT_FOUND, keepAlive);
+      return;
+    }
+    if (!request.isPost()) {
+      respond(METHOD_NOT_ALLOWED, keepAlive);
+      return;
+    }
+
+    int bodyLength = (int) request.getContentLength();
+    String contentType = request.get("Content-Type");
+    if (contentType == null || !contentType.startsWith(Const.MEDIA_X_WWW_FORM_URLENCODED)) {
+      bodyLength = 0;
+    }
+    FormRequest formRequest = new FormRequest(request.getMethod(), request, FormBody.parse(request.getBytes(),
+        request.getBodyOffset(), bodyLength)).withRemoteAddress(remoteAddress());
+
+    CompletableFuture<Response> future = server.getServer()
+                                               .grant(formRequest);
+    if (future.isDone()) {
+      respond(future.getNow(null), keepAlive);
+    } else {
+      future.whenComplete((response, e) -> loop.execute(() -> respond(response, keepAlive)));
+    }
+  }
+
+  // Writes the response with one gathering write, only falling back to a copy if the socket did not take all of it
+  private void respond(Response response, boolean keepAlive) {
+    if (closed) {
+      return;
+    }
+    if (response == null) {
+      response = emptyResponse(500, Collections.emptyMap());
+      keepAlive = false;
+    }
+    closeAfterWrite = !keepAlive;
+    try {
+      ByteBuffer[] buffers = loop.getEncoder()
+                                 .encode(response, keepAlive);
+      channel.write(buffers);
+      if (buffers[0].hasRemaining() || buffers[1].hasRemaining()) {
+        out = ByteBuffer.allocate(buffers[0].remaining() + buffers[1].remaining());
+        out.put(buffers[0])
+           .put(buffers[1])
+           .flip();
+        key.interestOps(SelectionKey.OP_WRITE);
+        return;
+      }
+      responded();
+    } catch (IOException e) {
+      LOGGER.log(Level.FINE, "Could not write to connection", e);
+      close();
+    } catch (RuntimeException e) {
+      // Also reached from a task, when the grant completed on another thread
+      LOGGER.log(Level.SEVERE, "Could not write response", e);
+      close();
+    }
+  }
+
+  private void responded() throws IOException {
+    lastActive = System.nanoTime();
+    if (closeAfterWrite) {
+      close();
+      return;
+    }
+    pending = false;
+    key.interestOps(SelectionKey.OP_READ);
+    if (inStart == inEnd && in.length > initialBufferSize) {
+      in = new byte[initialBufferSize];
+      inBuffer = ByteBuffer.wrap(in);
+      inStart = 0;
+      inEnd = 0;
+    }
+    process();
+  }
+
+  // Moves the unread bytes to the front of the buffer and grows it if that was not enough. A request that does not
+  // fit the largest buffer has already been turned away by the parser, so it never grows past getMaxRequestSize.
+  private void makeRoom() {
+    if (inStart > 0) {
+      System.arraycopy(in, inStart, in, 0, inEnd - inStart);
+      inEnd -= inStart;
+      inStart = 0;
+    } else {
+      in = Arrays.copyOf(in, Math.min(in.length * 2, server.getMaxRequestSize()));
+      inBuffer = ByteBuffer.wrap(in);
+    }
+  }
+
+  private String remoteAddress() {
+    if (remoteAddress == null) {
+      try {
+        SocketAddress address = channel.getRemoteAddress();
+        remoteAddress = address instanceof InetSocketAddress ? ((InetSocketAddress) address).getAddress()
+                                                                                            .getHostAddress()
+            : String.valueOf(address);
+      } catch (IOException e) {
+        remoteAddress = "unknown";
+      }
+    }
+    return remoteAddress;
+  }
+
+  // A connection waiting on a grant is not idle, however long the grant takes
+  boolean isIdleSince(long nanos) {
+    return !pending && lastActive - nanos < 0;
+  }
+
+  void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    key.cancel();
+    EventLoop.closeQuietly(channel);
+  }
+
+  private static Response emptyResponse(int code, Map<String, String[]> header) {
+    return new Response(code, Collections.unmodifiableMap(new LinkedHashMap<>(header)), "");
+  }
+
+}
@@ -0,0 +1,152 @@
+package com.etiennek.auth.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// One selector and the thread that runs it. Every connection belongs to a single loop and is only ever touched on
+// its thread; other threads, the acceptor and the threads grants complete on, hand work over through execute().
+class EventLoop implements Executor, Runnable {
+  private static final Logger LOGGER = Logger.getLogger(EventLoop.class.getName());
+  private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+  private final TokenServer server;
+  private final Selector selector;
+  private final Thread thread;
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final ResponseEncoder encoder = new ResponseEncoder();
+  private volatile boolean running = true;
+  private long lastSweep = System.nanoTime();
+
+  EventLoop(TokenServer server, String name) throws IOException {
+    this.server = server;
+    this.selector = Selector.open();
+    this.thread = new Thread(this, name);
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  void register(SocketChannel channel) {
+    execute(() -> {
+      try {
+        channel.configureBlocking(false);
+        channel.socket()
+               .setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(server, this, channel, key));
+      } catch (IOException e) {
+        LOGGER.log(Level.FINE, "Could not register connection", e);
+        closeQuietly(channel);
+      }
+    });
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    tasks.add(task);
+    if (Thread.currentThread() != thread) {
+      selector.wakeup();
+    }
+  }
+
+  ResponseEncoder getEncoder() {
+    return encoder;
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        selector.select(SWEEP_INTERVAL_MILLIS);
+        Iterator<SelectionKey> selected = selector.selectedKeys()
+                                                  .iterator();
+        while (selected.hasNext()) {
+          SelectionKey key = selected.next();
+          selected.remove();
+          Connection connection = (Connection) key.attachment();
+          // A bug in one connection, or a Response that fails to write itself, must not take the loop down with
+          // every other connection on it
+          try {
+            if (key.isValid() && key.isWritable()) {
+              connection.onWritable();
+            }
+            if (key.isValid() && key.isReadable()) {
+              connection.onReadable();
+            }
+          } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Connection failed", e);
+            connection.close();
+          }
+        }
+        runTasks();
+        sweep();
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      if (running) {
+        LOGGER.log(Level.SEVERE, "Event loop failed", e);
+      }
+    } finally {
+      for (SelectionKey key : selector.keys()) {
+        closeQuietly(key.channel());
+      }
+      closeQuietly(selector);
+    }
+  }
+
+  private void runTasks() {
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        LOGGER.log(Level.SEVERE, "Event loop task failed", e);
+      }
+    }
+  }
+
+  // Closes connections that have been idle for longer than the idle timeout, checked about once a second
+  private void sweep() {
+    long now = System.nanoTime();
+    if (now - lastSweep < TimeUnit.MILLISECONDS.toNanos(SWEEP_INTERVAL_MILLIS)) {
+      return;
+    }
+    lastSweep = now;
+    long idleTimeout = server.getIdleTimeoutNanos();
+    for (SelectionKey key : selector.keys()) {
+      Connection connection = (Connection) key.attachment();
+      if (connection != null && connection.isIdleSince(now - idleTimeout)) {
+        connection.close();
+      }
+    }
+  }
+
+  void close() {
+    running = false;
+    selector.wakeup();
+  }
+
+  void join() throws InterruptedException {
+    thread.join();
+  }
+
+  static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      LOGGER.log(Level.FINE, "Could not close", e);
+    }
+  }
+
+}
@@ -0,0 +1,19 @@
+package com.etiennek.auth.server;
+
+// A request that can not be served, answered with the status and then closed. It carries no stack trace, a
+// malformed request is the client's doing and not worth the cost of one.
+class HttpException extends RuntimeException {
+  private static final long serialVersionUID = 4622918722913468730L;
+
+  private final int status;
+
+  HttpException(int status, String message) {
+    super(message, null, false, false);
+    this.status = status;
+  }
+
+  int getStatus() {
+    return status;
+  }
+
+}
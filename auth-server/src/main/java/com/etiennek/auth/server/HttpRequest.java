@@ -0,0 +1,321 @@
+package com.etiennek.auth.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.etiennek.auth.core.Headers;
+
+// The head of an HTTP/1.1 request, parsed where it was read. Header names and values are kept as offsets into the
+// bytes and only turned into Strings when they are asked for. Once the whole request has arrived it is copied out
+// of the connection's buffer with detach(), after which the buffer can be reused while the grant is running.
+class HttpRequest implements Headers {
+  static final int MAX_HEADERS = 64;
+
+  private static final byte[] POST = "POST".getBytes(StandardCharsets.US_ASCII);
+
+  private byte[] bytes;
+  private int base;
+  // Offsets below are relative to base
+  private final int headLength;
+  private int methodEnd;
+  private int targetStart;
+  private int targetEnd;
+  private boolean http10;
+  // Name start, name end, value start and value end of each header
+  private int[] headers = new int[8 * 4];
+  private int headerCount;
+
+  private long contentLength;
+  private boolean hasContentLength;
+  private boolean chunked;
+  private boolean connectionClose;
+  private boolean connectionKeepAlive;
+  private boolean expectContinue;
+  private Map<String, String[]> map;
+
+  private HttpRequest(byte[] bytes, int base, int headLength) {
+    this.bytes = bytes;
+    this.base = base;
+    this.headLength = headLength;
+  }
+
+  // The request whose head starts at start, or null if the head has not fully arrived yet
+  static HttpRequest parse(byte[] bytes, int start, int end, int maxHeaderSize) {
+    int headEnd = headEnd(bytes, start, Math.min(end, start + maxHeaderSize));
+    if (headEnd < 0) {
+      if (end - start >= maxHeaderSize) {
+        throw new HttpException(431, "Request header is too large.");
+      }
+      return null;
+    }
+    HttpRequest ret = new HttpRequest(bytes, start, headEnd - start);
+    ret.parseHead();
+    return ret;
+  }
+
+  // Offset just past the empty line that ends the head, or -1 if there is none yet
+  private static int headEnd(byte[] bytes, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (bytes[i] == '\n') {
+        if (i + 1 < end && bytes[i + 1] == '\n') {
+          return i + 2;
+        }
+        if (i + 2 < end && bytes[i + 1] == '\r' && bytes[i + 2] == '\n') {
+          return i + 3;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private void parseHead() {
+    int end = base + headLength;
+    int lineEnd = lineEnd(base, end);
+    parseRequestLine(base, trimCr(base, lineEnd));
+    int pos = lineEnd + 1;
+    while (pos < end) {
+      lineEnd = lineEnd(pos, end);
+      int contentEnd = trimCr(pos, lineEnd);
+      if (contentEnd == pos) {
+        break;
+      }
+      parseHeader(pos, contentEnd);
+      pos = lineEnd + 1;
+    }
+  }
+
+  private void parseRequestLine(int start, int end) {
+    int space = indexOf(' ', start, end);
+    int secondSpace = space < 0 ? -1 : indexOf(' ', space + 1, end);
+    if (space <= start || secondSpace <= space + 1) {
+      throw new HttpException(400, "Malformed request line.");
+    }
+    methodEnd = space - base;
+    targetStart = space + 1 - base;
+    targetEnd = secondSpace - base;
+    if (equalsAscii(secondSpace + 1, end, "HTTP/1.0")) {
+      http10 = true;
+    } else if (!equalsAscii(secondSpace + 1, end, "HTTP/1.1")) {
+      throw new HttpException(400, "Unsupported HTTP version.");
+    }
+  }
+
+  private void parseHeader(int start, int end) {
+    byte first = bytes[start];
+    if (first == ' ' || first == '\t') {
+      throw new HttpException(400, "Folded header lines are not supported.");
+    }
+    int colon = indexOf(':', start, end);
+    if (colon <= start) {
+      throw new HttpException(400, "Malformed header line.");
+    }
+    for (int i = start; i < colon; i++) {
+      if (bytes[i] <= ' ') {
+        throw new HttpException(400, "Malformed header name.");
+      }
+    }
+    int valueStart = colon + 1;
+    while (valueStart < end && (bytes[valueStart] == ' ' || bytes[valueStart] == '\t')) {
+      valueStart++;
+    }
+    int valueEnd = end;
+    while (valueEnd > valueStart && (bytes[valueEnd - 1] == ' ' || bytes[valueEnd - 1] == '\t')) {
+      valueEnd--;
+    }
+
+    if (headerCount == MAX_HEADERS) {
+      throw new HttpException(431, "Too many request headers.");
+    }
+    if (headerCount * 4 == headers.length) {
+      headers = Arrays.copyOf(headers, headers.length * 2);
+    }
+    int i = headerCount++ * 4;
+    headers[i] = start - base;
+    headers[i + 1] = colon - base;
+    headers[i + 2] = valueStart - base;
+    headers[i + 3] = valueEnd - base;
+
+    // The few headers that decide how the connection reads the body and whether it stays open
+    if (equalsIgnoreCase(start, colon, "content-length")) {
+      long length = parseLength(valueStart, valueEnd);
+      if (hasContentLength && contentLength != length) {
+        throw new HttpException(400, "Conflicting Content-Length headers.");
+      }
+      contentLength = length;
+      hasContentLength = true;
+    } else if (equalsIgnoreCase(start, colon, "transfer-encoding")) {
+      chunked = true;
+    } else if (equalsIgnoreCase(start, colon, "connection")) {
+      connectionClose |= containsIgnoreCase(valueStart, valueEnd, "close");
+      connectionKeepAlive |= containsIgnoreCase(valueStart, valueEnd, "keep-alive");
+    } else if (equalsIgnoreCase(start, colon, "expect")) {
+      expectContinue = equalsIgnoreCase(valueStart, valueEnd, "100-continue");
+    }
+  }
+
+  private long parseLength(int start, int end) {
+    if (start == end || end - start > 18) {
+      throw new HttpException(400, "Malformed Content-Length header.");
+    }
+    long ret = 0;
+    for (int i = start; i < end; i++) {
+      byte b = bytes[i];
+      if (b < '0' || b > '9') {
+        throw new HttpException(400, "Malformed Content-Length header.");
+      }
+      ret = ret * 10 + (b - '0');
+    }
+    return ret;
+  }
+
+  // Copies the head and the body of the request out of the connection's buffer
+  void detach() {
+    int length = headLength + (int) contentLength;
+    bytes = Arrays.copyOfRange(bytes, base, base + length);
+    base = 0;
+  }
+
+  boolean isPost() {
+    return methodEnd == POST.length && equalsAscii(base, base + methodEnd, "POST");
+  }
+
+  String getMethod() {
+    return isPost() ? "POST" : new String(bytes, base, methodEnd, StandardCharsets.US_ASCII);
+  }
+
+  // Whether the target is the path, with or without a query string
+  boolean targetMatches(byte[] path) {
+    int length = targetEnd - targetStart;
+    if (length < path.length || (length > path.length && bytes[base + targetStart + path.length] != '?')) {
+      return false;
+    }
+    for (int i = 0; i < path.length; i++) {
+      if (bytes[base + targetStart + i] != path[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  int getHeadLength() {
+    return headLength;
+  }
+
+  long getContentLength() {
+    return contentLength;
+  }
+
+  boolean isChunked() {
+    return chunked;
+  }
+
+  boolean isExpectContinue() {
+    return expectContinue;
+  }
+
+  // HTTP/1.1 connections stay open unless the client asks otherwise, HTTP/1.0 ones only when it asks for it
+  boolean isKeepAlive() {
+    return http10 ? connectionKeepAlive && !connectionClose : !connectionClose;
+  }
+
+  byte[] getBytes() {
+    return bytes;
+  }
+
+  int getBodyOffset() {
+    return base + headLength;
+  }
+
+  @Override
+  public String get(String name) {
+    for (int i = 0; i < headerCount * 4; i += 4) {
+      if (equalsIgnoreCase(base + headers[i], base + headers[i + 1], name)) {
+        return value(i);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Map<String, String[]> toMap() {
+    if (map == null) {
+      Map<String, String[]> ret = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+      for (int i = 0; i < headerCount * 4; i += 4) {
+        String name = new String(bytes, base + headers[i], headers[i + 1] - headers[i], StandardCharsets.ISO_8859_1);
+        String[] values = ret.get(name);
+        if (values == null) {
+          values = new String[] {value(i)};
+        } else {
+          values = Arrays.copyOf(values, values.length + 1);
+          values[values.length - 1] = value(i);
+        }
+        ret.put(name, values);
+      }
+      map = Collections.unmodifiableMap(ret);
+    }
+    return map;
+  }
+
+  private String value(int i) {
+    return new String(bytes, base + headers[i + 2], headers[i + 3] - headers[i + 2], StandardCharsets.ISO_8859_1);
+  }
+
+  private int lineEnd(int start, int end) {
+    int ret = indexOf('\n', start, end);
+    return ret < 0 ? end : ret;
+  }
+
+  private int trimCr(int start, int lineEnd) {
+    return lineEnd > start && bytes[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+  }
+
+  private int indexOf(char c, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (bytes[i] == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private boolean equalsAscii(int start, int end, String s) {
+    if (end - start != s.length()) {
+      return false;
+    }
+    for (int i = 0; i < s.length(); i++) {
+      if (bytes[start + i] != s.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean equalsIgnoreCase(int start, int end, String s) {
+    if (end - start != s.length()) {
+      return false;
+    }
+    for (int i = 0; i < s.length(); i++) {
+      if (toLower(bytes[start + i]) != toLower(s.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean containsIgnoreCase(int start, int end, String s) {
+    for (int i = start; i <= end - s.length(); i++) {
+      if (equalsIgnoreCase(i, i + s.length(), s)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int toLower(int c) {
+    return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+  }
+
+}
@@ -0,0 +1,133 @@
+package com.etiennek.auth.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.etiennek.auth.core.Response;
+
+// Encodes a Response into a head and a body buffer that are written together with one gathering write. There is
+// one encoder per event loop and its buffers are reused for every response the loop writes, so they are only
+// valid until the next call to encode.
+class ResponseEncoder {
+  private static final int MAX_POOLED_BUFFER = 64 * 1024;
+  private static final byte[] CRLF = {'\r', '\n'};
+
+  private static class BodyBuffer extends ByteArrayOutputStream {
+    BodyBuffer() {
+      super(512);
+    }
+
+    // The backing array, valid up to size()
+    byte[] array() {
+      return buf;
+    }
+  }
+
+  private byte[] head = new byte[512];
+  private int headLength;
+  private BodyBuffer body = new BodyBuffer();
+  private final ByteBuffer[] buffers = new ByteBuffer[2];
+
+  // The head and the body of the response, ready for GatheringByteChannel.write
+  ByteBuffer[] encode(Response response, boolean keepAlive) throws IOException {
+    if (body.array().length > MAX_POOLED_BUFFER) {
+      body = new BodyBuffer();
+    }
+    body.reset();
+    response.writeBody(body);
+
+    headLength = 0;
+    appendAscii("HTTP/1.1 ");
+    appendAscii(Integer.toString(response.getCode()));
+    append(' ');
+    appendAscii(reason(response.getCode()));
+    append(CRLF);
+    for (Map.Entry<String, String[]> entry : response.getHeader()
+                                                     .entrySet()) {
+      if (entry.getValue() == null) {
+        continue;
+      }
+      for (String value : entry.getValue()) {
+        appendAscii(entry.getKey());
+        appendAscii(": ");
+        appendAscii(value);
+        append(CRLF);
+      }
+    }
+    appendAscii("Content-Length: ");
+    appendAscii(Integer.toString(body.size()));
+    append(CRLF);
+    if (!keepAlive) {
+      appendAscii("Connection: close");
+      append(CRLF);
+    }
+    append(CRLF);
+
+    buffers[0] = ByteBuffer.wrap(head, 0, headLength);
+    buffers[1] = ByteBuffer.wrap(body.array(), 0, body.size());
+    return buffers;
+  }
+
+  private void appendAscii(String s) {
+    ensureCapacity(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      // Header values are ISO-8859-1, anything else can not be sent as is
+      head[headLength++] = c < 256 ? (byte) c : (byte) '?';
+    }
+  }
+
+  private void append(char c) {
+    ensureCapacity(1);
+    head[headLength++] = (byte) c;
+  }
+
+  private void append(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, head, headLength, bytes.length);
+    headLength += bytes.length;
+  }
+
+  private void ensureCapacity(int length) {
+    if (headLength + length > head.length) {
+      head = Arrays.copyOf(head, Math.max(head.length * 2, headLength + length));
+    }
+  }
+
+  static String reason(int code) {
+    switch (code) {
+      case 100:
+        return "Continue";
+      case 200:
+        return "OK";
+      case 400:
+        return "Bad Request";
+      case 401:
+        return "Unauthorized";
+      case 403:
+        return "Forbidden";
+      case 404:
+        return "Not Found";
+      case 405:
+        return "Method Not Allowed";
+      case 411:
+        return "Length Required";
+      case 413:
+        return "Payload Too Large";
+      case 429:
+        return "Too Many Requests";
+      case 431:
+        return "Request Header Fields Too Large";
+      case 500:
+        return "Internal Server Error";
+      case 503:
+        return "Service Unavailable";
+      default:
+        return "Unknown";
+    }
+  }
+
+}
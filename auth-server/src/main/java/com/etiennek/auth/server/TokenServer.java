@@ -0,0 +1,223 @@
+package com.etiennek.auth.server;
+
+import static com.etiennek.auth.core.Util.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.etiennek.auth.core.OAuth2Server;
+
+// Serves the token endpoint of an OAuth2Server over plain java.nio, without a servlet container. One thread accepts
+// connections and deals them out to a fixed number of event loops, by default one per core, which parse requests
+// straight into FormRequests and write the responses themselves. Only POST to the token path is served, with
+// HTTP/1.1 keep-alive and a Content-Length body; chunked bodies are refused with 411.
+public class TokenServer implements Closeable {
+  private static final Logger LOGGER = Logger.getLogger(TokenServer.class.getName());
+
+  public static final String DEFAULT_PATH = "/token";
+  public static final int DEFAULT_MAX_HEADER_SIZE = 8 * 1024;
+  public static final int DEFAULT_MAX_BODY_SIZE = 16 * 1024;
+  public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(30);
+
+  private final OAuth2Server server;
+  private final InetSocketAddress address;
+  private final byte[] pathBytes;
+  private final int eventLoopCount;
+  private final int maxHeaderSize;
+  private final int maxBodySize;
+  private final long idleTimeoutNanos;
+
+  private ServerSocketChannel serverChannel;
+  private EventLoop[] eventLoops;
+  private Thread acceptor;
+  private volatile boolean running;
+
+  private TokenServer(Builder builder) {
+    this.server = builder.server;
+    this.address = builder.host == null ? new InetSocketAddress(builder.port) : new InetSocketAddress(builder.host,
+        builder.port);
+    this.pathBytes = builder.path.getBytes(StandardCharsets.US_ASCII);
+    this.eventLoopCount = builder.eventLoops;
+    this.maxHeaderSize = builder.maxHeaderSize;
+    this.maxBodySize = builder.maxBodySize;
+    this.idleTimeoutNanos = builder.idleTimeout.toNanos();
+  }
+
+  public synchronized TokenServer start() throws IOException {
+    if (running) {
+      throw new IllegalStateException("Server is already running.");
+    }
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+    serverChannel.bind(address, 1024);
+
+    eventLoops = new EventLoop[eventLoopCount];
+    for (int i = 0; i < eventLoops.length; i++) {
+      eventLoops[i] = new EventLoop(this, "oauth2-server-loop-" + i);
+    }
+    running = true;
+    for (EventLoop eventLoop : eventLoops) {
+      eventLoop.start();
+    }
+    acceptor = new Thread(this::accept, "oauth2-server-acceptor");
+    acceptor.start();
+    return this;
+  }
+
+  // Blocking accepts, dealt out round robin so every loop gets a fair share of the connections
+  private void accept() {
+    int next = 0;
+    while (running) {
+      try {
+        SocketChannel channel = serverChannel.accept();
+        eventLoops[next].register(channel);
+        next = (next + 1) % eventLoops.length;
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException e) {
+        if (running) {
+          LOGGER.log(Level.WARNING, "Could not accept connection", e);
+        }
+      }
+    }
+  }
+
+  // The port the server listens on, the one picked by the system if it was started on port 0
+  public int getPort() {
+    return serverChannel.socket()
+                        .getLocalPort();
+  }
+
+  public OAuth2Server getServer() {
+    return server;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!running) {
+      return;
+    }
+    running = false;
+    serverChannel.close();
+    for (EventLoop eventLoop : eventLoops) {
+      eventLoop.close();
+    }
+    try {
+      acceptor.join();
+      for (EventLoop eventLoop : eventLoops) {
+        eventLoop.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread()
+            .interrupt();
+    }
+  }
+
+  byte[] getPathBytes() {
+    return pathBytes;
+  }
+
+  int getMaxHeaderSize() {
+    return maxHeaderSize;
+  }
+
+  int getMaxBodySize() {
+    return maxBodySize;
+  }
+
+  int getMaxRequestSize() {
+    return maxHeaderSize + maxBodySize;
+  }
+
+  long getIdleTimeoutNanos() {
+    return idleTimeoutNanos;
+  }
+
+  public static class Builder {
+    private final OAuth2Server server;
+    private String host;
+    private int port = 8080;
+    private String path = DEFAULT_PATH;
+    private int eventLoops = Runtime.getRuntime()
+                                    .availableProcessors();
+    private int maxHeaderSize = DEFAULT_MAX_HEADER_SIZE;
+    private int maxBodySize = DEFAULT_MAX_BODY_SIZE;
+    private Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    public Builder(OAuth2Server server) {
+      this.server = checkNotNull(server, "No OAuth2Server supplied to TokenServer Builder");
+    }
+
+    // The address to listen on, every address if not set
+    public Builder withHost(String host) {
+      this.host = host;
+      return this;
+    }
+
+    // 0 lets the system pick a free port, see TokenServer.getPort
+    public Builder withPort(int port) {
+      if (port < 0 || port > 65535) {
+        throw new IllegalArgumentException("Invalid port " + port + ".");
+      }
+      this.port = port;
+      return this;
+    }
+
+    public Builder withPath(String path) {
+      if (path == null || !path.startsWith("/")) {
+        throw new IllegalArgumentException("Path must start with '/'.");
+      }
+      this.path = path;
+      return this;
+    }
+
+    public Builder withEventLoops(int eventLoops) {
+      if (eventLoops < 1) {
+        throw new IllegalArgumentException("At least one event loop is needed.");
+      }
+      this.eventLoops = eventLoops;
+      return this;
+    }
+
+    // Larger request heads are refused with 431
+    public Builder withMaxHeaderSize(int maxHeaderSize) {
+      if (maxHeaderSize < 256) {
+        throw new IllegalArgumentException("Max header size must be at least 256 bytes.");
+      }
+      this.maxHeaderSize = maxHeaderSize;
+      return this;
+    }
+
+    // Larger request bodies are refused with 413
+    public Builder withMaxBodySize(int maxBodySize) {
+      if (maxBodySize < 0) {
+        throw new IllegalArgumentException("Max body size can not be negative.");
+      }
+      this.maxBodySize = maxBodySize;
+      return this;
+    }
+
+    // Keep-alive connections that send nothing for this long are closed
+    public Builder withIdleTimeout(Duration idleTimeout) {
+      if (idleTimeout == null || idleTimeout.isNegative() || idleTimeout.isZero()) {
+        throw new IllegalArgumentException("Idle timeout must be positive.");
+      }
+      this.idleTimeout = idleTimeout;
+      return this;
+    }
+
+    public TokenServer build() {
+      return new TokenServer(this);
+    }
+  }
+
+}
@@ -0,0 +1,244 @@
+package com.etiennek.auth.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.etiennek.auth.core.OAuth2Server;
+import com.etiennek.auth.core.FormRequest;
+import com.etiennek.auth.core.OAuth2ServerConfiguration;
+import com.etiennek.auth.core.Response;
+import com.etiennek.auth.core.model.Client;
+import com.etiennek.auth.core.model.RequiredFunctions;
+import com.etiennek.auth.core.model.User;
+import com.etiennek.auth.core.model.func.GetUser.GetUserRes;
+
+public class TokenServerTest {
+  private static final String BODY = "grant_type=password&username=user1&password=pass1";
+
+  private TokenServer tokenServer;
+  private Socket socket;
+  private volatile boolean asyncClientLookup;
+  private volatile boolean failingResponse;
+
+  @Before
+  public void init() throws IOException {
+    OAuth2ServerConfiguration configuration = new OAuth2ServerConfiguration.Builder(new RequiredFunctions() {
+      @Override
+      public CompletableFuture<GetAccessTokenRes> getAccessToken(String bearerToken) {
+        return CompletableFuture.completedFuture(new GetAccessTokenRes(Optional.empty()));
+      }
+
+      @Override
+      public CompletableFuture<GetClientRes> getClient(String clientId, String clientSecret) {
+        GetClientRes res = new GetClientRes(Optional.of(new Client(clientId, clientSecret)));
+        if (asyncClientLookup) {
+          return CompletableFuture.supplyAsync(() -> res);
+        }
+        return CompletableFuture.completedFuture(res);
+      }
+
+      @Override
+      public CompletableFuture<IsGrantTypeAllowedRes> isGrantTypeAllowed(String clientId, String grantType) {
+        return CompletableFuture.completedFuture(new IsGrantTypeAllowedRes(true));
+      }
+
+      @Override
+      public CompletableFuture<Void> saveAccessToken(String accessToken, String clientId, String userId,
+          Optional<LocalDateTime> expires) {
+        return CompletableFuture.completedFuture(null);
+      }
+    }).withPasswordGrantTypeSupport((username, password) -> CompletableFuture.completedFuture(
+        new GetUserRes(Optional.of(new User("1", username, password)))))
+      .build();
+    OAuth2Server server = new OAuth2Server(configuration) {
+      @Override
+      public CompletableFuture<Response> grant(FormRequest request) {
+        if (failingResponse) {
+          return CompletableFuture.completedFuture(new Response(200, Collections.emptyMap(), "") {
+            @Override
+            public void writeBody(OutputStream out) {
+              throw new IllegalStateException("Response body failed");
+            }
+          });
+        }
+        return super.grant(request);
+      }
+    };
+
+    tokenServer = new TokenServer.Builder(server).withHost("127.0.0.1")
+                                                 .withPort(0)
+                                                 .withEventLoops(2)
+                                                 .withMaxBodySize(256)
+                                                 .build()
+                                                 .start();
+    socket = new Socket("127.0.0.1", tokenServer.getPort());
+    socket.setSoTimeout(5000);
+  }
+
+  @After
+  public void shutdown() throws IOException {
+    socket.close();
+    tokenServer.close();
+  }
+
+  @Test
+  public void grant_SUCCESS_Keep_Alive() throws Exception {
+    // Act
+    send(request("/token", BODY));
+    String first = readResponse();
+    asyncClientLookup = true;
+    send(request("/token?x=1", BODY));
+    String second = readResponse();
+
+    // Assert
+    assertStatus(200, first);
+    Assert.assertTrue(first.contains("\"access_token\""));
+    assertStatus(200, second);
+    Assert.assertTrue(second.contains("\"access_token\""));
+  }
+
+  @Test
+  public void grant_SUCCESS_Pipelined_Requests_Answered_In_Order() throws Exception {
+    // Arrange
+    asyncClientLookup = true;
+
+    // Act
+    send(request("/token", BODY) + request("/other", BODY) + request("/token", "grant_type=unknown"));
+
+    // Assert
+    assertStatus(200, readResponse());
+    assertStatus(404, readResponse());
+    assertStatus(400, readResponse());
+  }
+
+  @Test
+  public void grant_SUCCESS_Body_Split_Across_Reads() throws Exception {
+    // Act
+    String request = request("/token", BODY);
+    send(request.substring(0, 20));
+    Thread.sleep(50);
+    send(request.substring(20, request.length() - 5));
+    Thread.sleep(50);
+    send(request.substring(request.length() - 5));
+
+    // Assert
+    assertStatus(200, readResponse());
+  }
+
+  @Test
+  public void grant_FAILURE_Method_Not_Allowed() throws Exception {
+    // Act
+    send("GET /token HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+    // Assert
+    String response = readResponse();
+    assertStatus(405, response);
+    Assert.assertTrue(response.contains("Allow: POST"));
+  }
+
+  @Test
+  public void grant_FAILURE_Body_Too_Large_Closes_Connection() throws Exception {
+    // Act
+    StringBuilder body = new StringBuilder(BODY);
+    while (body.length() <= 256) {
+      body.append("&padding=x");
+    }
+    send(request("/token", body.toString()));
+
+    // Assert
+    String response = readResponse();
+    assertStatus(413, response);
+    Assert.assertTrue(response.contains("Connection: close"));
+    Assert.assertEquals(-1, socket.getInputStream()
+                                  .read());
+  }
+
+  @Test
+  public void grant_FAILURE_Chunked_Body() throws Exception {
+    // Act
+    send("POST /token HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n");
+
+    // Assert
+    assertStatus(411, readResponse());
+  }
+
+  @Test
+  public void grant_FAILURE_Response_Fails_Only_Its_Connection() throws Exception {
+    // Arrange
+    failingResponse = true;
+
+    // Act
+    send(request("/token", BODY));
+    int read = socket.getInputStream()
+                     .read();
+    failingResponse = false;
+
+    // Assert
+    Assert.assertEquals(-1, read);
+    // Both loops still serve new connections
+    for (int i = 0; i < 2; i++) {
+      socket.close();
+      socket = new Socket("127.0.0.1", tokenServer.getPort());
+      socket.setSoTimeout(5000);
+      send(request("/token", BODY));
+      assertStatus(200, readResponse());
+    }
+  }
+
+  private static String request(String target, String body) {
+    String credentials = Base64.getEncoder()
+                               .encodeToString("client1:secret1".getBytes(StandardCharsets.UTF_8));
+    return "POST " + target + " HTTP/1.1\r\n" + "Host: localhost\r\n" + "Authorization: Basic " + credentials
+        + "\r\n" + "Content-Type: application/x-www-form-urlencoded\r\n" + "Content-Length: " + body.length()
+        + "\r\n\r\n" + body;
+  }
+
+  private void send(String data) throws IOException {
+    OutputStream out = socket.getOutputStream();
+    out.write(data.getBytes(StandardCharsets.US_ASCII));
+    out.flush();
+  }
+
+  // The head and the body of the next response, read up to its Content-Length
+  private String readResponse() throws IOException {
+    InputStream in = socket.getInputStream();
+    ByteArrayOutputStream head = new ByteArrayOutputStream();
+    while (!head.toString("ISO-8859-1")
+                .endsWith("\r\n\r\n")) {
+      int b = in.read();
+      Assert.assertNotEquals("Connection closed before the response head", -1, b);
+      head.write(b);
+    }
+    String headString = head.toString("ISO-8859-1");
+    int index = headString.indexOf("Content-Length: ");
+    Assert.assertTrue(index >= 0);
+    int length = Integer.parseInt(headString.substring(index + 16, headString.indexOf('\r', index)));
+    byte[] body = new byte[length];
+    int read = 0;
+    while (read < length) {
+      int count = in.read(body, read, length - read);
+      Assert.assertNotEquals(-1, count);
+      read += count;
+    }
+    return headString + new String(body, StandardCharsets.UTF_8);
+  }
+
+  private static void assertStatus(int expected, String response) {
+    Assert.assertTrue(response, response.startsWith("HTTP/1.1 " + expected + " "));
+  }
+
+}
@@ -1,5 +1,6 @@
 package com.etiennek.auth.servlet;
 
+import java.io.ByteArrayOutputStream;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
@@ -10,12 +11,32 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.etiennek.auth.core.Const;
+import com.etiennek.auth.core.FormBody;
+import com.etiennek.auth.core.FormRequest;
 import com.etiennek.auth.core.OAuth2Server;
 import com.etiennek.auth.core.Response;
 
 public abstract class BaseServlet extends HttpServlet {
   private static final long serialVersionUID = -1500041205026141751L;
 
+  public static final int DEFAULT_MAX_BODY_SIZE = 16 * 1024;
+
+  // Sent once a body grows past the maximum. The rest of it is never read, so the connection can't be reused.
+  static final Response TOO_LARGE = new Response(413, Collections.singletonMap("Connection", new String[] {"close"}),
+      "");
+
+  static class BodyBuffer extends ByteArrayOutputStream {
+    BodyBuffer() {
+      super(512);
+    }
+
+    // The backing array, valid up to size()
+    byte[] array() {
+      return buf;
+    }
+  }
+
   private final OAuth2Server server;
 
   public BaseServlet(OAuth2Server server) {
@@ -30,8 +51,13 @@ public abstract class BaseServlet extends HttpServlet {
     try {
       setHeader(response, httpResponse);
       httpResponse.setStatus(response.getCode());
-      httpResponse.getWriter()
-                  .write(response.getBody());
+
+      // Encoded first so it is written with a known length in one go. Not pooled in a ThreadLocal, which would pin
+      // the webapp's classloader to the container's threads across redeploys.
+      BodyBuffer buffer = new BodyBuffer();
+      response.writeBody(buffer);
+      httpResponse.setContentLength(buffer.size());
+      buffer.writeTo(httpResponse.getOutputStream());
     } catch (Exception e) {
       throw new RuntimeException(e);
     } finally {
@@ -39,6 +65,16 @@ public abstract class BaseServlet extends HttpServlet {
     }
   }
 
+  // A request whose form body is parsed from the raw bytes rather than by the container
+  static FormRequest formRequest(HttpServletRequest req, byte[] body, int length) {
+    String contentType = req.getContentType();
+    if (contentType == null || !contentType.startsWith(Const.MEDIA_X_WWW_FORM_URLENCODED)) {
+      length = 0;
+    }
+    return new FormRequest(req.getMethod(), new ServletHeaders(req), FormBody.parse(body, 0, length)).withRemoteAddress(
+        req.getRemoteAddr());
+  }
+
   static Map<String, String[]> header(HttpServletRequest req) {
     Map<String, String[]> ret = new LinkedHashMap<>();
     Enumeration<String> headerNames = req.getHeaderNames();
@@ -50,7 +86,7 @@ public abstract class BaseServlet extends HttpServlet {
     return ret;
   }
 
-  private static void setHeader(Response response, HttpServletResponse httpResponse) {
+  static void setHeader(Response response, HttpServletResponse httpResponse) {
     for (String key : response.getHeader()
                               .keySet()) {
       String[] valueArr = response.getHeader()
@@ -0,0 +1,135 @@
+package com.etiennek.auth.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.etiennek.auth.core.OAuth2Server;
+import com.etiennek.auth.core.Response;
+
+// TokenServlet using Servlet 3.1 non-blocking I/O: the form body is read with a ReadListener and the response is
+// written with a WriteListener, so no container thread ever waits on the client's connection. A body is refused with
+// 413 as soon as it grows past maxBodySize, and the connection is closed rather than the rest of the body drained.
+public class NonBlockingTokenServlet extends BaseServlet {
+  private static final long serialVersionUID = -2946436962302442513L;
+
+  private static final Logger log = Logger.getLogger(NonBlockingTokenServlet.class.getName());
+
+  private final int maxBodySize;
+
+  public NonBlockingTokenServlet(OAuth2Server server) {
+    this(server, DEFAULT_MAX_BODY_SIZE);
+  }
+
+  public NonBlockingTokenServlet(OAuth2Server server, int maxBodySize) {
+    super(server);
+    this.maxBodySize = maxBodySize;
+  }
+
+  @Override
+  protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+    AsyncContext context = req.startAsync();
+    ServletInputStream in = req.getInputStream();
+    in.setReadListener(new BodyReader(req, resp, context, in));
+  }
+
+  private class BodyReader implements ReadListener {
+    private final HttpServletRequest req;
+    private final HttpServletResponse resp;
+    private final AsyncContext context;
+    private final ServletInputStream in;
+    private final BodyBuffer body = new BodyBuffer();
+    private final byte[] chunk = new byte[4096];
+    private boolean tooLarge;
+
+    BodyReader(HttpServletRequest req, HttpServletResponse resp, AsyncContext context, ServletInputStream in) {
+      this.req = req;
+      this.resp = resp;
+      this.context = context;
+      this.in = in;
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+      int read;
+      while (!tooLarge && in.isReady() && (read = in.read(chunk)) != -1) {
+        if (body.size() + read > maxBodySize) {
+          // Nothing more is read, so the client's connection can't be reused
+          tooLarge = true;
+          body.reset();
+          write(TOO_LARGE, resp, context);
+          return;
+        }
+        body.write(chunk, 0, read);
+      }
+    }
+
+    @Override
+    public void onAllDataRead() throws IOException {
+      if (tooLarge) {
+        return;
+      }
+
+      getServer().grant(formRequest(req, body.array(), body.size()))
+                 .thenAccept((response) -> write(response, resp, context));
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      log.log(Level.FINE, "Reading the request body failed", t);
+      if (!tooLarge) {
+        context.complete();
+      }
+    }
+  }
+
+  private static void write(Response response, HttpServletResponse resp, AsyncContext context) {
+    try {
+      ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+      response.writeBody(body);
+      byte[] bytes = body.toByteArray();
+
+      setHeader(response, resp);
+      resp.setStatus(response.getCode());
+      resp.setContentLength(bytes.length);
+
+      ServletOutputStream out = resp.getOutputStream();
+      out.setWriteListener(new WriteListener() {
+        private boolean written;
+
+        @Override
+        public void onWritePossible() throws IOException {
+          // The container accepts each write without blocking as long as isReady() said so beforehand
+          while (out.isReady()) {
+            if (written) {
+              context.complete();
+              return;
+            }
+            out.write(bytes);
+            written = true;
+          }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          log.log(Level.FINE, "Writing the response failed", t);
+          context.complete();
+        }
+      });
+    } catch (Exception e) {
+      context.complete();
+      throw new RuntimeException(e);
+    }
+  }
+
+}
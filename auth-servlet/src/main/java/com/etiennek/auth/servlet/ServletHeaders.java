@@ -0,0 +1,32 @@
+package com.etiennek.auth.servlet;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.etiennek.auth.core.Headers;
+
+// Headers read straight from the container's request, which already looks them up case-insensitively
+class ServletHeaders implements Headers {
+  private final HttpServletRequest req;
+  private Map<String, String[]> map;
+
+  ServletHeaders(HttpServletRequest req) {
+    this.req = req;
+  }
+
+  @Override
+  public String get(String name) {
+    return req.getHeader(name);
+  }
+
+  @Override
+  public Map<String, String[]> toMap() {
+    if (map == null) {
+      map = Headers.of(BaseServlet.header(req))
+                   .toMap();
+    }
+    return map;
+  }
+
+}
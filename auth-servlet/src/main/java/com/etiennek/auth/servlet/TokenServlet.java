@@ -1,26 +1,47 @@
 package com.etiennek.auth.servlet;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import com.etiennek.auth.core.FormRequest;
 import com.etiennek.auth.core.OAuth2Server;
 
 public class TokenServlet extends BaseServlet {
   private static final long serialVersionUID = 7569068162393846152L;
 
+  private final int maxBodySize;
+
   public TokenServlet(OAuth2Server server) {
+    this(server, DEFAULT_MAX_BODY_SIZE);
+  }
+
+  public TokenServlet(OAuth2Server server, int maxBodySize) {
     super(server);
+    this.maxBodySize = maxBodySize;
   }
 
   @Override
   protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
     AsyncContext context = req.startAsync();
-    getServer().grant(new FormRequest(req.getMethod(), header(req), req.getParameterMap()))
+
+    // The raw body is read here instead of having the container decode every parameter
+    BodyBuffer body = new BodyBuffer();
+    byte[] chunk = new byte[1024];
+    InputStream in = req.getInputStream();
+    int read;
+    while ((read = in.read(chunk)) != -1) {
+      if (body.size() + read > maxBodySize) {
+        handleResponse(TOO_LARGE, resp, context);
+        return;
+      }
+      body.write(chunk, 0, read);
+    }
+
+    getServer().grant(formRequest(req, body.array(), body.size()))
                .thenAccept((response) -> handleResponse(response, resp, context));
   }
 
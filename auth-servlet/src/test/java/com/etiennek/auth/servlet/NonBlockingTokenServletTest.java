@@ -0,0 +1,206 @@
+package com.etiennek.auth.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.etiennek.auth.core.Const;
+import com.etiennek.auth.core.FormRequest;
+import com.etiennek.auth.core.OAuth2Server;
+import com.etiennek.auth.core.OAuth2ServerConfiguration;
+import com.etiennek.auth.core.Response;
+import com.etiennek.auth.core.store.InMemoryStore;
+
+public class NonBlockingTokenServletTest {
+  private static final String BODY = "grant_type=password&username=user1&password=pass1";
+
+  private FormRequest granted;
+  private NonBlockingTokenServlet servlet;
+  private List<String> calls;
+  private Map<String, Object> requestAnswers;
+  private HttpServletRequest req;
+  private HttpServletResponse resp;
+  private ByteArrayOutputStream written;
+
+  @Before
+  public void init() throws IOException {
+    granted = null;
+    InMemoryStore store = new InMemoryStore();
+    OAuth2Server server = new OAuth2Server(new OAuth2ServerConfiguration.Builder(store).build()) {
+      @Override
+      public CompletableFuture<Response> grant(FormRequest request) {
+        granted = request;
+        return CompletableFuture.completedFuture(new Response(200, Collections.emptyMap(), "granted"));
+      }
+    };
+    servlet = new NonBlockingTokenServlet(server, 64);
+
+    calls = new ArrayList<>();
+    requestAnswers = new HashMap<>();
+    requestAnswers.put("startAsync", fake(AsyncContext.class, Collections.emptyMap()));
+    requestAnswers.put("getMethod", Const.METHOD_POST);
+    requestAnswers.put("getContentType", Const.MEDIA_X_WWW_FORM_URLENCODED);
+    req = fake(HttpServletRequest.class, requestAnswers);
+
+    written = new ByteArrayOutputStream();
+    resp = fake(HttpServletResponse.class, Collections.singletonMap("getOutputStream", new Output(written)));
+  }
+
+  @Test
+  public void doPost_SUCCESS_Body_Read_Then_Granted() throws Exception {
+    // Arrange
+    Input in = new Input(BODY, 16);
+    requestAnswers.put("getInputStream", in);
+
+    // Act
+    servlet.doPost(req, resp);
+    in.listener.onDataAvailable();
+    in.listener.onAllDataRead();
+
+    // Assert
+    Assert.assertEquals("user1", granted.getBodyParameter("username"));
+    Assert.assertEquals("pass1", granted.getBodyParameter("password"));
+    Assert.assertTrue(calls.contains("setStatus[200]"));
+    Assert.assertEquals("granted", new String(written.toByteArray(), StandardCharsets.UTF_8));
+    Assert.assertTrue(calls.contains("complete"));
+  }
+
+  @Test
+  public void doPost_FAILURE_Body_Too_Large() throws Exception {
+    // Arrange
+    StringBuilder body = new StringBuilder(BODY);
+    while (body.length() <= 4 * 64) {
+      body.append("&scope=ignored");
+    }
+    Input in = new Input(body.toString(), 16);
+    requestAnswers.put("getInputStream", in);
+
+    // Act
+    servlet.doPost(req, resp);
+    in.listener.onDataAvailable();
+
+    // Assert - Nothing past the maximum is read and the connection is not reused
+    Assert.assertNull(granted);
+    Assert.assertTrue(in.position <= 64 + 16);
+    Assert.assertFalse(in.isFinished());
+    Assert.assertTrue(calls.contains("setStatus[413]"));
+    Assert.assertTrue(calls.contains("setHeader[Connection, close]"));
+    Assert.assertTrue(calls.contains("complete"));
+  }
+
+  // Records every call in calls, as the method name followed by its arguments if it has any, and answers it from
+  // answers by method name, or else with null, false or 0
+  private <T> T fake(Class<T> type, Map<String, Object> answers) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return type.getSimpleName();
+      }
+      calls.add(method.getName() + (args == null ? "" : Arrays.toString(args)));
+      if (answers.containsKey(method.getName())) {
+        return answers.get(method.getName());
+      }
+      Class<?> returnType = method.getReturnType();
+      return returnType.isPrimitive() && returnType != void.class ? Array.get(Array.newInstance(returnType, 1), 0)
+          : null;
+    }));
+  }
+
+  // A body that is always ready, handed out at most chunkSize bytes per read
+  private static class Input extends ServletInputStream {
+    private final byte[] body;
+    private final int chunkSize;
+    int position;
+    ReadListener listener;
+
+    Input(String body, int chunkSize) {
+      this.body = body.getBytes(StandardCharsets.UTF_8);
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public boolean isFinished() {
+      return position == body.length;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setReadListener(ReadListener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public int read() {
+      return isFinished() ? -1 : body[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (isFinished()) {
+        return -1;
+      }
+      int ret = Math.min(Math.min(len, chunkSize), body.length - position);
+      System.arraycopy(body, position, b, off, ret);
+      position += ret;
+      return ret;
+    }
+  }
+
+  // Always ready, so the write listener is told it may write as soon as it is set
+  private static class Output extends ServletOutputStream {
+    private final ByteArrayOutputStream out;
+
+    Output(ByteArrayOutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener listener) {
+      try {
+        listener.onWritePossible();
+      } catch (IOException e) {
+        listener.onError(e);
+      }
+    }
+
+    @Override
+    public void write(int b) {
+      out.write(b);
+    }
+  }
+
+}